@@ -0,0 +1,84 @@
+package com.ef.batch.mapper;
+
+import com.ef.domain.UserLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.batch.item.file.mapping.BeanWrapperFieldSetMapper;
+import org.springframework.batch.item.file.mapping.DefaultLineMapper;
+import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link UserLogLineMapper} against the DelimitedLineTokenizer + BeanWrapperFieldSetMapper it replaced,
+ * including the trimming the processor of the file .log Loader Step used to do after it.
+ * <p>Run it with: gradle jmh -PjmhArgs="UserLogLineMapperBenchmark -prof gc"</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserLogLineMapperBenchmark {
+
+    private static final String[] LINES = {
+            "2017-01-01 00:00:11.763|192.168.234.82|\"GET / HTTP/1.1\"|200|\"swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0\"",
+            "2017-01-01 00:00:21.164|192.168.234.82|\"GET / HTTP/1.1\"|200|\"swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0\"",
+            "2017-01-01 00:00:23.003|192.168.169.194|\"GET / HTTP/1.1\"|200|\"Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/54.0.2840.71 Safari/537.36 Edge/14.14393\"",
+            "2017-01-01 00:00:40.554|192.168.234.82|\"GET / HTTP/1.1\"|200|\"swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0\"",
+            "2017-01-01 00:00:54.583|192.168.169.194|\"GET / HTTP/1.1\"|200|\"Mozilla/5.0 (Windows NT 6.1; WOW64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/53.0.2785.116 Safari/537.36\"",
+            "2017-01-01 00:00:54.588|192.168.247.138|\"GET / HTTP/1.1\"|200|\"Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:56.0) Gecko/20100101 Firefox/56.0\"",
+            "2017-01-01 00:00:59.129|192.168.77.101|\"GET / HTTP/1.1\"|200|\"Mozilla/5.0 (iPhone; CPU iPhone OS 11_0_3 like Mac OS X) AppleWebKit/604.1.38 (KHTML, like Gecko) Version/11.0 Mobile/15A432 Safari/604.1\"",
+            "2017-01-01 00:01:02.490|192.168.101.107|\"GET / HTTP/1.1\"|200|\"Mozilla/5.0 (Linux; Android 7.0; SM-G930V Build/NRD90M) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/59.0.3071.125 Mobile Safari/537.36\""
+    };
+
+    private LineMapper<UserLog> delimitedLineMapper;
+    private LineMapper<UserLog> userLogLineMapper;
+
+    @Setup
+    public void setUp() throws Exception {
+        DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer();
+        tokenizer.setDelimiter("|");
+        tokenizer.setNames("date", "ip", "request", "status", "userAgent");
+
+        BeanWrapperFieldSetMapper<UserLog> fieldSetMapper = new BeanWrapperFieldSetMapper<>();
+        fieldSetMapper.setTargetType(UserLog.class);
+        fieldSetMapper.afterPropertiesSet();
+
+        DefaultLineMapper<UserLog> lineMapper = new DefaultLineMapper<>();
+        lineMapper.setLineTokenizer(tokenizer);
+        lineMapper.setFieldSetMapper(fieldSetMapper);
+
+        delimitedLineMapper = lineMapper;
+        userLogLineMapper = new UserLogLineMapper();
+    }
+
+    @Benchmark
+    public void delimitedLineTokenizer(Blackhole blackhole) throws Exception {
+        for (int i = 0; i < LINES.length; i++) {
+            UserLog item = delimitedLineMapper.mapLine(LINES[i], i);
+            item.setIp(item.getIp().trim());
+            item.setRequest(item.getRequest().trim());
+            item.setUserAgent(item.getUserAgent().trim());
+            blackhole.consume(item);
+        }
+    }
+
+    @Benchmark
+    public void userLogLineMapper(Blackhole blackhole) throws Exception {
+        for (int i = 0; i < LINES.length; i++) {
+            blackhole.consume(userLogLineMapper.mapLine(LINES[i], i));
+        }
+    }
+}
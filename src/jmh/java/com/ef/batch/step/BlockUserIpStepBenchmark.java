@@ -0,0 +1,103 @@
+package com.ef.batch.step;
+
+import com.ef.domain.BlockedUser;
+import com.ef.domain.DetectionRule;
+import com.ef.domain.UserLog;
+import com.ef.parser.LogDates;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.database.JdbcCursorItemReader;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the query of {@link BlockUserIpStep} summing the requests of each IP address from USER_LOG_ROLLUP,
+ * against an {@link EmbeddedDatabase} loaded with a day of log by the writer of {@link FileLoaderStep}.
+ * <p>Rules are hourly and start half a minute past the hour, so the edges of the period are counted from USER_LOG too.
+ * With several rules they go one hour after the other and are checked by the same query.</p>
+ * <p>Run it with: gradle jmh -PjmhArgs="BlockUserIpStepBenchmark"</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockUserIpStepBenchmark {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @Param({"100000"})
+    private int lines;
+
+    @Param({"1", "4"})
+    private int rules;
+
+    private BlockUserIpStep blockUserIpStep;
+    private String rulesParameter;
+
+    @Setup
+    public void setUp(EmbeddedDatabase database) throws Exception {
+        List<UserLog> userLogs = LogLines.userLogs(lines, 1000, DAY, 0);
+        ItemWriter<UserLog> writer = new FileLoaderStep(database.getDataSource(), 10_000).writer();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database.getDataSource()));
+        for (int from = 0; from < userLogs.size(); from += 1000) {
+            List<UserLog> chunk = userLogs.subList(from, Math.min(from + 1000, userLogs.size()));
+            for (int i = 0; i < chunk.size(); i++) {
+                chunk.get(i).setId(from + i + 1);
+            }
+            transactionTemplate.execute(status -> {
+                try {
+                    writer.write(chunk);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                return null;
+            });
+        }
+
+        List<DetectionRule> detectionRules = new ArrayList<>();
+        for (int i = 0; i < rules; i++) {
+            String startDate = LogDates.format(LogLines.START + 12 * HOUR + i * HOUR + 30_000).replace(' ', '.');
+            // a busy IP address makes about 50 requests per hour
+            detectionRules.add(DetectionRule.parse(startDate + ",hourly,40"));
+        }
+        rulesParameter = DetectionRule.format(detectionRules);
+        blockUserIpStep = new BlockUserIpStep(database.getDataSource());
+    }
+
+    @Benchmark
+    public int aggregate(Blackhole blackhole) throws Exception {
+        JdbcCursorItemReader<BlockedUser> reader = blockUserIpStep.reader(rulesParameter);
+        reader.setSaveState(false);
+        reader.open(new ExecutionContext());
+        try {
+            int blocked = 0;
+            BlockedUser blockedUser;
+            while ((blockedUser = reader.read()) != null) {
+                blackhole.consume(blockedUser);
+                blocked++;
+            }
+            return blocked;
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.ef.batch.step;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import com.ef.config.Configurations;
+import com.zaxxer.hikari.HikariDataSource;
+import liquibase.integration.spring.SpringLiquibase;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import javax.sql.DataSource;
+
+/**
+ * Embedded MariaDB for the benchmarks of our steps, so they run the same SQL as production (INET6_ATON, ON DUPLICATE KEY UPDATE...)
+ * without a MySQL server or a network connection. The server binaries come with MariaDB4j.
+ * <p>It is started once per fork, gets our schema from the Liquibase changelog and is stopped when the fork ends.</p>
+ */
+@State(Scope.Benchmark)
+public class EmbeddedDatabase {
+
+    private DB db;
+    private HikariDataSource dataSource;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder();
+        // any free port
+        config.setPort(0);
+        if ("root".equals(System.getProperty("user.name"))) {
+            // mysqld refuses to run as root unless it is told to
+            config.addArg("--user=root");
+        }
+        db = DB.newEmbeddedDB(config.build());
+        db.start();
+
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:mysql://localhost:" + config.getPort() + "/ip_blocker?createDatabaseIfNotExist=true&useSSL=false");
+        dataSource.setUsername("root");
+
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(dataSource);
+        liquibase.setChangeLog(Configurations.CHANGELOG);
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        dataSource.close();
+        db.stop();
+    }
+
+    /**
+     * @return data source connected to the embedded database
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+}
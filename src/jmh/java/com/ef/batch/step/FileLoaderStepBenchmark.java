@@ -0,0 +1,93 @@
+package com.ef.batch.step;
+
+import com.ef.domain.UserLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the processor and the writer of {@link FileLoaderStep} with a chunk of application.job.chunkSize lines.
+ * <p>The processor filters malformed lines (one of every hundred here) and gives the others their id.
+ * The writer inserts the chunk into USER_LOG and upserts USER_LOG_ROLLUP in one transaction, as a chunk of our step does,
+ * against an {@link EmbeddedDatabase}. USER_LOG grows with every chunk written, as it does while loading a log.</p>
+ * <p>Run it with: gradle jmh -PjmhArgs="FileLoaderStepBenchmark -prof gc"</p>
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileLoaderStepBenchmark {
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final int DICTIONARY_CACHE_SIZE = 10_000;
+
+    private List<UserLog> chunk;
+    private ItemProcessor<UserLog, UserLog> processor;
+    private long id;
+
+    @Setup
+    public void setUp() throws Exception {
+        // a minute of a busy log
+        chunk = LogLines.userLogs(CHUNK_SIZE, 200, 60_000, 100);
+        processor = new FileLoaderStep(null, DICTIONARY_CACHE_SIZE).processor(null, null, null);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void process(Blackhole blackhole) throws Exception {
+        for (UserLog item : chunk) {
+            blackhole.consume(processor.process(item));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void write(Writer writer) {
+        for (UserLog item : writer.items) {
+            item.setId(++id);
+        }
+        writer.transactionTemplate.execute(status -> {
+            try {
+                writer.writer.write(writer.items);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Writer of our step against the embedded database, and a chunk already processed.
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+
+        private List<UserLog> items;
+        private ItemWriter<UserLog> writer;
+        private TransactionTemplate transactionTemplate;
+
+        @Setup
+        public void setUp(EmbeddedDatabase database) throws Exception {
+            items = LogLines.userLogs(CHUNK_SIZE, 200, 60_000, 0);
+            writer = new FileLoaderStep(database.getDataSource(), DICTIONARY_CACHE_SIZE).writer();
+            transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database.getDataSource()));
+        }
+    }
+}
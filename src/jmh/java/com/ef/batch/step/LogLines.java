@@ -0,0 +1,53 @@
+package com.ef.batch.step;
+
+import com.ef.batch.mapper.UserLogLineMapper;
+import com.ef.domain.UserLog;
+import com.ef.parser.IpAddresses;
+import com.ef.parser.LogDates;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Lines of a synthetic log for our benchmarks, in chronological order and mapped as our reader maps them.
+ * A tenth of the lines come from a few busy IP addresses, the rest are spread over many of them.
+ */
+final class LogLines {
+
+    static final long START = LogDates.parseMillis("2017-01-01 00:00:00.000");
+
+    private static final int BUSY_IPS = 8;
+    private static final String[] REQUESTS = {"\"GET / HTTP/1.1\"|200", "\"POST / HTTP/1.1\"|200", "\"GET / HTTP/1.1\"|404"};
+    private static final String USER_AGENT = "|\"Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/54.0.2840.71 Safari/537.36\"";
+
+    private LogLines() {
+    }
+
+    /**
+     * @param lines       number of lines
+     * @param ips         number of distinct IP addresses
+     * @param duration    millis between the first and the last line
+     * @param malformedOf one line of every malformedOf cannot be parsed, 0 for none
+     * @return the lines mapped by {@link UserLogLineMapper}
+     */
+    static List<UserLog> userLogs(int lines, int ips, long duration, int malformedOf) throws Exception {
+        Random random = new Random(42);
+        UserLogLineMapper lineMapper = new UserLogLineMapper();
+        List<UserLog> userLogs = new ArrayList<>(lines);
+
+        for (int i = 0; i < lines; i++) {
+            String line;
+            if (malformedOf > 0 && i % malformedOf == malformedOf - 1) {
+                line = "garbage line";
+            } else {
+                long timestamp = START + duration * i / lines;
+                int ip = random.nextInt(10) == 0 ? random.nextInt(BUSY_IPS) : BUSY_IPS + random.nextInt(ips - BUSY_IPS);
+                line = LogDates.format(timestamp) + String.format(".%03d|", timestamp % 1000)
+                        + IpAddresses.toString(0xC0A80000 + ip) + '|' + REQUESTS[i % REQUESTS.length] + USER_AGENT;
+            }
+            userLogs.add(lineMapper.mapLine(line, i + 1));
+        }
+        return userLogs;
+    }
+}
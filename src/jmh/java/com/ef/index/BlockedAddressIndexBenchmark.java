@@ -0,0 +1,76 @@
+package com.ef.index;
+
+import com.ef.parser.IpAddresses;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a lookup in {@link BlockedAddressIndex} against a HashSet of the blocked IP addresses as BLOCKED_USER holds them.
+ * Half of the addresses looked up are blocked.
+ * <p>Run it with: gradle jmh -PjmhArgs="BlockedAddressIndexBenchmark -prof gc", gc.alloc.rate.norm shows the index allocates nothing.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockedAddressIndexBenchmark {
+
+    private static final int LOOKUPS = 1 << 12;
+
+    @Param({"1000", "100000"})
+    private int blocked;
+
+    private BlockedAddressIndex index;
+    private Set<String> ipSet;
+    private int[] addresses;
+    private String[] ips;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<String> blockedIps = new ArrayList<>();
+        int[] blockedAddresses = new int[blocked];
+        for (int i = 0; i < blocked; i++) {
+            blockedAddresses[i] = random.nextInt();
+            blockedIps.add(IpAddresses.toString(blockedAddresses[i]));
+        }
+        index = BlockedAddressIndex.of(blockedIps);
+        ipSet = new HashSet<>(blockedIps);
+
+        addresses = new int[LOOKUPS];
+        ips = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            addresses[i] = i % 2 == 0 ? blockedAddresses[random.nextInt(blocked)] : random.nextInt();
+            ips[i] = IpAddresses.toString(addresses[i]);
+        }
+    }
+
+    @Benchmark
+    public boolean indexLookup() {
+        return index.isBlocked(addresses[next++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public boolean hashSetLookup() {
+        return ipSet.contains(ips[next++ & (LOOKUPS - 1)]);
+    }
+}
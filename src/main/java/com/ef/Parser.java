@@ -1,10 +1,22 @@
 package com.ef;
 
+import com.ef.batch.decider.LoaderModeDecider;
+import com.ef.config.SpringRegistry;
+import com.ef.config.StartupReport;
+import com.ef.domain.DetectionRule;
 import com.ef.domain.ParserDTO;
+import com.ef.engine.DetectionEngine;
+import com.ef.parser.LogFiles;
 import com.ef.parser.ParserInvoker;
+import com.ef.server.ParserServer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.BatchStatus;
+import org.springframework.core.env.Environment;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -13,10 +25,29 @@ import java.util.regex.Pattern;
  * It parses web server access log file, loads the log to MySQL and checks if a given IP makes more than a certain number of requests for the given duration.
  * <p>
  * It expects the following execution arguments (not in the same order):
- * * --accesslog location of log file
+ * * --accesslog location of log file, it can be compressed with gzip or zstd. It can also be a directory or a glob,
+ * ex: /var/log/web/access-*.log.gz, then every file is loaded by its own partition
  * * --startDate start date time
- * * --duration time period. It can be "hourly" or "daily"
+ * * --duration time period. It can be "hourly", "daily" or an amount followed by s, m, h, d or w, ex: 15m or 6h
  * * --threshold number of requests threshold
+ * * --rules (optional) several rules checked at once instead of startDate, duration and threshold,
+ * separated by ';', each one as startDate,duration,threshold
+ * * --rulesFile (optional) file with one rule per line, as in --rules
+ * * --engine (optional) "batch" (default) loads the log to MySQL, "memory" counts requests in memory without loading the log,
+ * "sliding" blocks IP addresses exceeding the threshold in any period of the given duration (startDate is ignored),
+ * "approximate" blocks the same IP addresses as "memory" with a fixed amount of memory, reading the log twice,
+ * "segment" blocks the same IP addresses as "memory" from a columnar copy of the log kept on local disk,
+ * "pipeline" blocks the same IP addresses as "memory" reading, parsing and counting the log on threads of their own,
+ * "offheap" blocks the same IP addresses as "batch" counting them outside of the heap, spilling the counters to disk when they do not fit
+ * * --loader (optional) how the batch engine loads the log, "chunk" (default), "partitioned", "bulk", "pipelined", "incremental" or "files"
+ * (the one used for a directory or a glob)
+ * * --seek (optional) "true" reads only the lines of the log around the windows of the rules, for logs written in time order.
+ * Plain logs are read from the first line of the window on, and the batch engine only loads the requests within a window
+ * * --snapshot (optional) file where the CIDR index of every IP address in BLOCKED_USER is written after the run
+ * * --restart (optional) "true" restarts the last run of the same log if it failed, loading it from the last chunk committed
+ * (for a directory or a glob, only the files that did not complete)
+ * * --server (optional) port of the loopback address where our ParserServer takes runs over HTTP, the other arguments are then
+ * given with each run
  * </p>
  * <p>
  * ex:
@@ -30,6 +61,7 @@ public class Parser {
 
 
     public static void main(String... args) {
+        StartupReport.mainStarted();
 
         try {
 
@@ -45,11 +77,56 @@ public class Parser {
                 argsMap.put(split[0].trim(), split[1].trim());
             }
 
-            String fileUrl = argsMap.get("--accesslog");
-            String startDate = argsMap.get("--startDate");
-            String duration = argsMap.get("--duration");
-            int threshold;
+            if (argsMap.containsKey("--server")) {
+                Environment env = SpringRegistry.getContext().getEnvironment();
+                new ParserServer(new ParserInvoker(), Integer.valueOf(argsMap.get("--server")),
+                        Integer.valueOf(env.getProperty("application.server.threads")),
+                        Integer.valueOf(env.getProperty("application.server.queueCapacity"))).start();
+                return;
+            }
+
+            ParserDTO parserDTO = toParserDTO(argsMap);
+
+            ParserInvoker parserInvoker = new ParserInvoker();
+            BatchStatus batchStatus = parserInvoker.invoke(parserDTO);
+
+            log.info("Batch status : " + batchStatus);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+    }
 
+    /**
+     * It builds the parameters of a run from its arguments.
+     *
+     * @param argsMap arguments by name, ex: "--accesslog"
+     * @return parameters for our ParserInvoker
+     * @throws IOException if the rules file or the log could not be read
+     * @throws NumberFormatException if the threshold is not a number
+     * @throws IllegalArgumentException if the rules are not well formed or too long for the batch engine,
+     *                                  duration is missing without them,
+     *                                  the loader cannot read a compressed log,
+     *                                  a directory or a glob, or the engine or loader cannot seek
+     */
+    public static ParserDTO toParserDTO(Map<String, String> argsMap) throws IOException {
+        String fileUrl = argsMap.get("--accesslog");
+        String startDate = argsMap.get("--startDate");
+        String duration = argsMap.get("--duration");
+        String rules = argsMap.get("--rules");
+        if (argsMap.containsKey("--rulesFile")) {
+            rules = new String(Files.readAllBytes(Paths.get(argsMap.get("--rulesFile"))), StandardCharsets.UTF_8);
+        }
+        int threshold = 0;
+        // a restarted run takes the rules of the run it restarts
+        boolean restart = Boolean.parseBoolean(argsMap.get("--restart"));
+
+        if (rules == null && !restart) {
+            // the sliding engine ignores startDate, every engine needs the duration of the window
+            if (duration == null) {
+                throw new IllegalArgumentException("--duration is required without --rules or --rulesFile");
+            }
             try {
 
                 threshold = Integer.valueOf(argsMap.get("--threshold"));
@@ -57,18 +134,58 @@ public class Parser {
             } catch (NumberFormatException e) {
                 throw new NumberFormatException("threshold must be a number");
             }
+        }
 
-            ParserDTO parserDTO = new ParserDTO(fileUrl, startDate, duration, threshold);
+        ParserDTO parserDTO = new ParserDTO(fileUrl, startDate, duration, threshold);
 
-            ParserInvoker parserInvoker = new ParserInvoker();
-            BatchStatus batchStatus = parserInvoker.invoke(parserDTO);
+        if (rules != null) {
+            parserDTO.setRules(DetectionRule.parseAll(rules));
+        }
 
-            log.info("Batch status : " + batchStatus);
+        if (argsMap.containsKey("--engine")) {
+            parserDTO.setEngine(argsMap.get("--engine"));
+        }
+        if (argsMap.containsKey("--loader")) {
+            parserDTO.setLoader(argsMap.get("--loader"));
+        }
+        if (argsMap.containsKey("--snapshot")) {
+            parserDTO.setSnapshot(argsMap.get("--snapshot"));
+        }
+        parserDTO.setRestart(restart);
+        parserDTO.setSeek(Boolean.parseBoolean(argsMap.get("--seek")));
 
-        } catch (Exception e) {
-            e.printStackTrace();
+        if (parserDTO.isBatchEngine() && !restart && DetectionRule.format(parserDTO.getRules()).length() > ParserInvoker.MAX_RULES_LENGTH) {
+            // the job repository would fail to store them, or truncate them and restart with fewer rules
+            throw new IllegalArgumentException("the rules of the batch engine must take at most " + ParserInvoker.MAX_RULES_LENGTH
+                    + " characters as startDate,duration,threshold;..., split them into several runs");
+        }
+        if (restart && !parserDTO.isBatchEngine()) {
+            throw new IllegalArgumentException("--restart only restarts runs of the batch engine");
+        }
+
+        if (parserDTO.isSeek() && !parserDTO.isBatchEngine() && !DetectionEngine.SEEKING.contains(parserDTO.getEngine())) {
+            throw new IllegalArgumentException("--seek works with the " + ParserDTO.BATCH_ENGINE + " engine and the engines " + DetectionEngine.SEEKING);
+        }
+        if (parserDTO.isSeek() && parserDTO.isBatchEngine() && LoaderModeDecider.INCREMENTAL.equals(parserDTO.getLoader())) {
+            // it loads whatever was appended since the last run, not a window
+            throw new IllegalArgumentException("--seek cannot be used with --loader=incremental");
+        }
+
+        String loader = parserDTO.getLoader();
+        if (parserDTO.isBatchEngine() && fileUrl != null && LogFiles.isMultiple(fileUrl)) {
+            if (argsMap.containsKey("--loader") && !LoaderModeDecider.FILES.equals(loader) && !LoaderModeDecider.CHUNK.equals(loader)) {
+                throw new IllegalArgumentException("--loader=" + loader + " cannot read a directory or a glob, use files");
+            }
+            // every file is loaded by its own partition
+            parserDTO.setLoader(LoaderModeDecider.FILES);
+        } else if (parserDTO.isBatchEngine() && fileUrl != null
+                && (LoaderModeDecider.PARTITIONED.equals(loader) || LoaderModeDecider.INCREMENTAL.equals(loader))
+                && Files.isRegularFile(Paths.get(fileUrl)) && LogFiles.isCompressed(Paths.get(fileUrl))) {
+            // both of them work with byte offsets of the lines in the file
+            throw new IllegalArgumentException("--loader=" + loader + " cannot read a compressed log, use chunk, bulk or pipelined");
         }
 
+        return parserDTO;
     }
 
 }
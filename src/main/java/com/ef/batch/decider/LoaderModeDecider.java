@@ -0,0 +1,63 @@
+package com.ef.batch.decider;
+
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * It decides which step loads the .log file into USER_LOG, based on the "loader" job parameter.
+ * The status it returns is the loader mode itself, so ParserJob routes the flow with it.
+ */
+@Component
+public class LoaderModeDecider implements JobExecutionDecider {
+
+    /**
+     * One chunk oriented step reading the whole file (default)
+     */
+    public static final String CHUNK = "chunk";
+
+    /**
+     * The file is split into byte ranges loaded concurrently by several worker steps
+     */
+    public static final String PARTITIONED = "partitioned";
+
+    /**
+     * Like CHUNK but each (bigger) chunk is inserted with LOAD DATA LOCAL INFILE instead of batched INSERT statements
+     */
+    public static final String BULK = "bulk";
+
+    /**
+     * Like CHUNK but chunks are written by several writer threads while the next ones are being read
+     */
+    public static final String PIPELINED = "pipelined";
+
+    /**
+     * Only the lines appended since the last run are loaded, USER_LOG keeps the rows of previous runs
+     */
+    public static final String INCREMENTAL = "incremental";
+
+    /**
+     * Every file of a directory or glob is loaded by its own worker step, several files at the same time
+     */
+    public static final String FILES = "files";
+
+    /**
+     * Loaders whose failed runs can be restarted from their last chunk committed. The pipelined loader commits its chunks
+     * apart from the step, and the incremental one already goes on from where its last run got to.
+     */
+    public static final List<String> RESTARTABLE = Collections.unmodifiableList(Arrays.asList(CHUNK, PARTITIONED, BULK, FILES));
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public FlowExecutionStatus decide(JobExecution jobExecution, StepExecution stepExecution) {
+        return new FlowExecutionStatus(jobExecution.getJobParameters().getString("loader", CHUNK));
+    }
+}
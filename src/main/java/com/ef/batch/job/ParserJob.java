@@ -1,13 +1,22 @@
 package com.ef.batch.job;
 
+import com.ef.batch.decider.LoaderModeDecider;
+import com.ef.batch.listener.BlockedUserCollector;
 import com.ef.batch.listener.JobCompletionNotificationListener;
+import com.ef.batch.listener.StepMetricsListener;
 import com.ef.batch.step.BlockUserIpStep;
 import com.ef.batch.step.EmptyUserLogTableStep;
 import com.ef.batch.step.FileLoaderStep;
+import com.ef.batch.step.IncrementalFileLoaderStep;
+import com.ef.batch.step.MultiFileLoaderStep;
+import com.ef.batch.step.PartitionedBlockUserIpStep;
+import com.ef.batch.step.PartitionedFileLoaderStep;
 import com.ef.domain.BlockedUser;
 import com.ef.domain.UserLog;
+import org.springframework.batch.core.ItemReadListener;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
@@ -22,6 +31,10 @@ import org.springframework.context.annotation.PropertySource;
 import org.springframework.core.env.Environment;
 import org.springframework.transaction.PlatformTransactionManager;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * <p>Spring batch job in charge of parsing a .log file for analyzing it.
  * In this the goal is to read a web server access log file, loads the log
@@ -36,36 +49,74 @@ import org.springframework.transaction.PlatformTransactionManager;
 @PropertySource("classpath:/application.properties")
 public class ParserJob {
 
+    /**
+     * Names of the steps loading our .log file into USER_LOG, their write count is the number of rows inserted.
+     * The workers of the partitioned step are left out, it adds up their counts.
+     */
+    public static final String FILE_LOADER_STEP = "file .log Loader Step";
+    public static final String BULK_FILE_LOADER_STEP = "bulk file .log Loader Step";
+    public static final String PIPELINED_FILE_LOADER_STEP = "pipelined file .log Loader Step";
+    public static final String INCREMENTAL_FILE_LOADER_STEP = "incremental file .log Loader Step";
+    public static final String PARTITIONED_FILE_LOADER_STEP = "partitioned file .log Loader Step";
+    public static final String MULTI_FILE_LOADER_STEP = "multi file .log Loader Step";
+    public static final List<String> LOADER_STEPS = Collections.unmodifiableList(Arrays.asList(FILE_LOADER_STEP, BULK_FILE_LOADER_STEP,
+            PIPELINED_FILE_LOADER_STEP, INCREMENTAL_FILE_LOADER_STEP, PARTITIONED_FILE_LOADER_STEP, MULTI_FILE_LOADER_STEP));
+
     private Environment env;
     private EmptyUserLogTableStep emptyUserLogTableStep;
     private FileLoaderStep fileLoaderStep;
     private StepBuilderFactory stepBuilderFactory;
     private BlockUserIpStep blockUserIpStep;
     private JobCompletionNotificationListener listener;
+    private LoaderModeDecider loaderModeDecider;
+    private PartitionedFileLoaderStep partitionedFileLoaderStep;
+    private IncrementalFileLoaderStep incrementalFileLoaderStep;
+    private MultiFileLoaderStep multiFileLoaderStep;
+    private PartitionedBlockUserIpStep partitionedBlockUserIpStep;
+    private BlockedUserCollector blockedUserCollector;
+    private StepMetricsListener stepMetricsListener;
 
 
     /**
      * Injecting our dependencies
      *
-     * @param env                       to read configuration properties
-     * @param emptyUserLogTableStep     step in charge of emptying our USER_LOG table
-     * @param fileLoaderStep            step in charge of loading our .log file and writing it to our USER_LOG table
-     * @param stepBuilderFactory        Convenient factory for a {@link StepBuilder} which sets the {@link JobRepository} and {@link PlatformTransactionManager} automatically.
-     * @param blockUserIpStep           step in charge blocking IP addresses that exceed the threshold parameter passed
-     * @param listener                  If the job was run successfully, it will print the results of all the rows inserted and what IP was blocked
+     * @param env                        to read configuration properties
+     * @param emptyUserLogTableStep      step in charge of emptying our USER_LOG table
+     * @param fileLoaderStep             step in charge of loading our .log file and writing it to our USER_LOG table
+     * @param stepBuilderFactory         Convenient factory for a {@link StepBuilder} which sets the {@link JobRepository} and {@link PlatformTransactionManager} automatically.
+     * @param blockUserIpStep            step in charge blocking IP addresses that exceed the threshold parameter passed
+     * @param listener                   If the job was run successfully, it will print the results of all the rows inserted and what IP was blocked
+     * @param loaderModeDecider          decides which step loads our .log file, based on the "loader" job parameter
+     * @param partitionedFileLoaderStep  step in charge of loading our .log file with several workers at the same time
+     * @param incrementalFileLoaderStep  step in charge of loading only the lines appended to our .log file since the last run
+     * @param multiFileLoaderStep        step in charge of loading every file of a directory or glob, one worker for each file
+     * @param partitionedBlockUserIpStep step in charge of blocking IP addresses with several workers at the same time
+     * @param blockedUserCollector       keeps the IP addresses blocked by each execution for the one who launched it
+     * @param stepMetricsListener        records the throughput and latencies of our loader and block IP addresses steps
      */
     @Autowired
-    public ParserJob(Environment env, EmptyUserLogTableStep emptyUserLogTableStep, FileLoaderStep fileLoaderStep, StepBuilderFactory stepBuilderFactory, BlockUserIpStep blockUserIpStep, JobCompletionNotificationListener listener) {
+    public ParserJob(Environment env, EmptyUserLogTableStep emptyUserLogTableStep, FileLoaderStep fileLoaderStep, StepBuilderFactory stepBuilderFactory, BlockUserIpStep blockUserIpStep, JobCompletionNotificationListener listener,
+                     LoaderModeDecider loaderModeDecider, PartitionedFileLoaderStep partitionedFileLoaderStep, IncrementalFileLoaderStep incrementalFileLoaderStep,
+                     MultiFileLoaderStep multiFileLoaderStep, PartitionedBlockUserIpStep partitionedBlockUserIpStep,
+                     BlockedUserCollector blockedUserCollector, StepMetricsListener stepMetricsListener) {
         this.env = env;
         this.emptyUserLogTableStep = emptyUserLogTableStep;
         this.fileLoaderStep = fileLoaderStep;
         this.stepBuilderFactory = stepBuilderFactory;
         this.blockUserIpStep = blockUserIpStep;
         this.listener = listener;
+        this.loaderModeDecider = loaderModeDecider;
+        this.partitionedFileLoaderStep = partitionedFileLoaderStep;
+        this.incrementalFileLoaderStep = incrementalFileLoaderStep;
+        this.multiFileLoaderStep = multiFileLoaderStep;
+        this.partitionedBlockUserIpStep = partitionedBlockUserIpStep;
+        this.blockedUserCollector = blockedUserCollector;
+        this.stepMetricsListener = stepMetricsListener;
     }
 
     /**
      * Constructing our spring batch job setting the order or "flow" in which it will run each step.
+     * The step loading our .log file is chosen by our LoaderModeDecider, all of them are followed by our block IP addresses Step.
      *
      * @param jobBuilderFactory injected Convenient factory for a {@link JobBuilder} which sets the {@link JobRepository} automatically.
      * @return our Spring batch Job fully loaded
@@ -74,60 +125,216 @@ public class ParserJob {
      */
     @Bean("ParserJob")
     public Job job(JobBuilderFactory jobBuilderFactory) {
+        Step blockUserStep = blockUserStep();
+
         return jobBuilderFactory.get("Parser Job")
                 .incrementer(new RunIdIncrementer())
                 .listener(listener)
                 .start(emptyUserLogTableStep())
-                .next(fileLogLoaderStep())
-                .next(blockUserStep())
+                .next(loaderModeDecider)
+                .on(LoaderModeDecider.PARTITIONED).to(partitionedFileLogLoaderStep()).next(blockUserStep)
+                .from(loaderModeDecider)
+                .on(LoaderModeDecider.BULK).to(bulkFileLogLoaderStep()).next(blockUserStep)
+                .from(loaderModeDecider)
+                .on(LoaderModeDecider.PIPELINED).to(pipelinedFileLogLoaderStep()).next(blockUserStep)
+                .from(loaderModeDecider)
+                .on(LoaderModeDecider.INCREMENTAL).to(incrementalFileLogLoaderStep()).next(blockUserStep)
+                .from(loaderModeDecider)
+                .on(LoaderModeDecider.FILES).to(multiFileLogLoaderStep()).next(blockUserStep)
+                .from(loaderModeDecider)
+                .on("*").to(fileLogLoaderStep()).next(blockUserStep)
+                .end()
                 .build();
     }
 
     /**
-     * Constructing empty USER_LOG table Step
+     * Constructing empty USER_LOG table Step. It is not run again when a failed run is restarted.
      *
      * @return our empty USER_LOG table Step
      * @see StepBuilderFactory
      * @see EmptyUserLogTableStep
      */
     private Step emptyUserLogTableStep() {
+        // a restarted run keeps the rows it loaded before failing
         return stepBuilderFactory.get("empty USER_LOG table Step")
                 .tasklet(emptyUserLogTableStep)
-                .allowStartIfComplete(true)
                 .build();
     }
 
     /**
-     * Constructing file .log Loader Step
+     * Constructing file .log Loader Step. Like every loader step it is not run again once completed:
+     * a failed run that is restarted goes on from the last chunk it committed.
      *
      * @return our file .log Loader Step
      * @see StepBuilderFactory
      * @see FileLoaderStep
      */
     private Step fileLogLoaderStep() {
-        return stepBuilderFactory.get("file .log Loader Step")
+        return stepBuilderFactory.get(FILE_LOADER_STEP)
                 .<UserLog, UserLog>chunk(Integer.valueOf(env.getProperty("application.job.chunkSize")))
-                .reader(fileLoaderStep.reader(null))
-                .processor(fileLoaderStep.processor())
+                .reader(fileLoaderStep.reader(null, null, null))
+                .processor(fileLoaderStep.processor(null, null, null))
                 .writer(fileLoaderStep.writer())
-                .allowStartIfComplete(true)
+                .listener((ItemReadListener<Object>) stepMetricsListener)
+                .listener((StepExecutionListener) stepMetricsListener)
+                .build();
+    }
+
+    /**
+     * Constructing bulk file .log Loader Step. Same as our file .log Loader Step but it writes with LOAD DATA LOCAL INFILE,
+     * using its own (bigger) chunk size.
+     *
+     * @return our bulk file .log Loader Step
+     * @see StepBuilderFactory
+     * @see FileLoaderStep
+     */
+    private Step bulkFileLogLoaderStep() {
+        return stepBuilderFactory.get(BULK_FILE_LOADER_STEP)
+                .<UserLog, UserLog>chunk(Integer.valueOf(env.getProperty("application.job.bulkChunkSize")))
+                .reader(fileLoaderStep.reader(null, null, null))
+                .processor(fileLoaderStep.processor(null, null, null))
+                .writer(fileLoaderStep.bulkWriter())
+                .listener((ItemReadListener<Object>) stepMetricsListener)
+                .listener((StepExecutionListener) stepMetricsListener)
+                .build();
+    }
+
+    /**
+     * Constructing pipelined file .log Loader Step. Same as our file .log Loader Step but chunks are written in the background
+     * by several writer threads, so reading the file and writing to the database overlap.
+     *
+     * @return our pipelined file .log Loader Step
+     * @see StepBuilderFactory
+     * @see FileLoaderStep
+     */
+    private Step pipelinedFileLogLoaderStep() {
+        return stepBuilderFactory.get(PIPELINED_FILE_LOADER_STEP)
+                .<UserLog, UserLog>chunk(Integer.valueOf(env.getProperty("application.job.chunkSize")))
+                .reader(fileLoaderStep.reader(null, null, null))
+                .processor(fileLoaderStep.processor(null, null, null))
+                .writer(fileLoaderStep.pipelinedWriter(0, 0))
+                .listener((ItemReadListener<Object>) stepMetricsListener)
+                .listener((StepExecutionListener) stepMetricsListener)
+                .build();
+    }
+
+    /**
+     * Constructing incremental file .log Loader Step. It loads the lines appended to our .log file since the last run,
+     * our tracker finds where to resume and stores the offset reached with every chunk.
+     *
+     * @return our incremental file .log Loader Step
+     * @see IncrementalFileLoaderStep
+     */
+    private Step incrementalFileLogLoaderStep() {
+        return stepBuilderFactory.get(INCREMENTAL_FILE_LOADER_STEP)
+                .<UserLog, UserLog>chunk(Integer.valueOf(env.getProperty("application.job.chunkSize")))
+                .reader(incrementalFileLoaderStep.reader(null, null, null))
+                .processor(fileLoaderStep.processor(null, null, null))
+                .writer(fileLoaderStep.writer())
+                .listener(incrementalFileLoaderStep.tracker(null))
+                .stream(incrementalFileLoaderStep.tracker(null))
+                .listener((ItemReadListener<Object>) stepMetricsListener)
+                .listener((StepExecutionListener) stepMetricsListener)
                 .build();
     }
 
+    /**
+     * Constructing partitioned file .log Loader Step. It splits the file and runs one worker step for each part at the same time.
+     *
+     * @return our partitioned file .log Loader Step
+     * @see PartitionedFileLoaderStep
+     */
+    private Step partitionedFileLogLoaderStep() {
+        Step workerStep = stepBuilderFactory.get("file .log Loader Worker Step")
+                .<UserLog, UserLog>chunk(Integer.valueOf(env.getProperty("application.job.chunkSize")))
+                .reader(partitionedFileLoaderStep.reader(null, null, null))
+                .processor(fileLoaderStep.processor(null, null, null))
+                .writer(fileLoaderStep.writer())
+                .listener((ItemReadListener<Object>) stepMetricsListener)
+                .listener((StepExecutionListener) stepMetricsListener)
+                .build();
+
+        return stepBuilderFactory.get(PARTITIONED_FILE_LOADER_STEP)
+                .partitioner(workerStep.getName(), partitionedFileLoaderStep.partitioner(null, null, null))
+                .step(workerStep)
+                .gridSize(partitionedFileLoaderStep.getPartitions())
+                .taskExecutor(partitionedFileLoaderStep.taskExecutor())
+                .build();
+    }
 
     /**
-     * Constructing our block IP addresses Step
+     * Constructing multi file .log Loader Step. It runs one worker step for each file of a directory or glob.
+     * Neither the workers nor the step run again when they completed, so restarting a failed run only loads the files that failed,
+     * each one from its last chunk committed.
+     *
+     * @return our multi file .log Loader Step
+     * @see MultiFileLoaderStep
+     */
+    private Step multiFileLogLoaderStep() {
+        Step workerStep = stepBuilderFactory.get("file .log Loader File Step")
+                .<UserLog, UserLog>chunk(Integer.valueOf(env.getProperty("application.job.chunkSize")))
+                .reader(multiFileLoaderStep.reader(null, null, null))
+                .processor(fileLoaderStep.processor(null, null, null))
+                .writer(fileLoaderStep.writer())
+                .listener((ItemReadListener<Object>) stepMetricsListener)
+                .listener((StepExecutionListener) stepMetricsListener)
+                .build();
+
+        return stepBuilderFactory.get(MULTI_FILE_LOADER_STEP)
+                .partitioner(workerStep.getName(), multiFileLoaderStep.partitioner(null))
+                .step(workerStep)
+                .taskExecutor(multiFileLoaderStep.taskExecutor())
+                .build();
+    }
+
+    /**
+     * Constructing our block IP addresses Step. With application.job.blockPartitions above 1 it is partitioned instead,
+     * see {@link #partitionedBlockUserStep()}.
      *
      * @return our block IP addresses Step
      * @see BlockUserIpStep
      */
     private Step blockUserStep() {
+        if (partitionedBlockUserIpStep.getPartitions() > 1) {
+            return partitionedBlockUserStep();
+        }
         return stepBuilderFactory.get("block IP addresses Step")
                 .<BlockedUser, BlockedUser>chunk(Integer.valueOf(env.getProperty("application.job.chunkSize")))
-                .reader(blockUserIpStep.reader(null, null, 0))
+                .reader(blockUserIpStep.reader(null))
                 .processor(blockUserIpStep.processor())
                 .writer(blockUserIpStep.writer())
+                .listener(blockedUserCollector)
+                .listener((ItemReadListener<Object>) stepMetricsListener)
+                .listener((StepExecutionListener) stepMetricsListener)
                 .allowStartIfComplete(true)
                 .build();
     }
+
+    /**
+     * Constructing partitioned block IP addresses Step. It splits the IP addresses into buckets by their hash
+     * and runs one worker step for each bucket at the same time.
+     * Neither the workers nor the step run again when they completed, so restarting a failed run only blocks the buckets that failed
+     * and the IP addresses already blocked are not inserted twice.
+     *
+     * @return our partitioned block IP addresses Step
+     * @see PartitionedBlockUserIpStep
+     */
+    private Step partitionedBlockUserStep() {
+        Step workerStep = stepBuilderFactory.get("block IP addresses Worker Step")
+                .<BlockedUser, BlockedUser>chunk(Integer.valueOf(env.getProperty("application.job.chunkSize")))
+                .reader(partitionedBlockUserIpStep.reader(null, null, null))
+                .processor(blockUserIpStep.processor())
+                .writer(blockUserIpStep.writer())
+                .listener(blockedUserCollector)
+                .listener((ItemReadListener<Object>) stepMetricsListener)
+                .listener((StepExecutionListener) stepMetricsListener)
+                .build();
+
+        return stepBuilderFactory.get("partitioned block IP addresses Step")
+                .partitioner(workerStep.getName(), partitionedBlockUserIpStep.partitioner())
+                .step(workerStep)
+                .gridSize(partitionedBlockUserIpStep.getPartitions())
+                .taskExecutor(partitionedBlockUserIpStep.taskExecutor())
+                .build();
+    }
 }
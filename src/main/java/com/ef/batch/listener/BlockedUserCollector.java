@@ -0,0 +1,54 @@
+package com.ef.batch.listener;
+
+import com.ef.domain.BlockedUser;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * It keeps the IP addresses written to BLOCKED_USER by each job execution, so the one who launched the job gets them back
+ * without querying the table, where other executions may be writing at the same time.
+ *
+ * @see com.ef.parser.ParserInvoker
+ */
+@Component
+public class BlockedUserCollector implements ItemWriteListener<BlockedUser> {
+
+    private final Map<Long, List<BlockedUser>> blockedUsersByExecution = new ConcurrentHashMap<>();
+
+    @Override
+    public void beforeWrite(List<? extends BlockedUser> items) {
+    }
+
+    /**
+     * It keeps the items written, under the job execution of the step writing them.
+     *
+     * @param items rows written to BLOCKED_USER
+     */
+    @Override
+    public void afterWrite(List<? extends BlockedUser> items) {
+        Long jobExecutionId = StepSynchronizationManager.getContext().getStepExecution().getJobExecutionId();
+        blockedUsersByExecution.computeIfAbsent(jobExecutionId, id -> Collections.synchronizedList(new ArrayList<>())).addAll(items);
+    }
+
+    @Override
+    public void onWriteError(Exception exception, List<? extends BlockedUser> items) {
+    }
+
+    /**
+     * It hands over the IP addresses blocked by a job execution and forgets them.
+     *
+     * @param jobExecutionId id of the job execution
+     * @return the rows written to BLOCKED_USER, empty if there is none
+     */
+    public List<BlockedUser> remove(long jobExecutionId) {
+        List<BlockedUser> blockedUsers = blockedUsersByExecution.remove(jobExecutionId);
+        return blockedUsers == null ? Collections.emptyList() : new ArrayList<>(blockedUsers);
+    }
+}
@@ -1,11 +1,13 @@
 package com.ef.batch.listener;
 
+import com.ef.batch.job.ParserJob;
+import com.ef.metrics.StepMetrics;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.listener.JobExecutionListenerSupport;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
 /**
@@ -17,30 +19,40 @@ import org.springframework.stereotype.Component;
 @Slf4j
 public class JobCompletionNotificationListener extends JobExecutionListenerSupport {
 
-    private final JdbcTemplate jdbcTemplate;
+    private final StepMetricsListener stepMetricsListener;
 
     /**
      * Injecting our dependencies
      *
-     * @param jdbcTemplate It simplifies the use of JDBC and helps to avoid common errors.
-     * @see JdbcTemplate
+     * @param stepMetricsListener records the throughput and latencies of the steps of each job execution
+     * @see StepMetricsListener
      */
     @Autowired
-    public JobCompletionNotificationListener(JdbcTemplate jdbcTemplate) {
-        this.jdbcTemplate = jdbcTemplate;
+    public JobCompletionNotificationListener(StepMetricsListener stepMetricsListener) {
+        this.stepMetricsListener = stepMetricsListener;
     }
 
     /**
-     * It counts all the rows inserted in USER_LOG and logs the number.
+     * It logs the metrics of each step and the number of rows inserted in USER_LOG.
+     * That number is the write count of the step loading our .log file, USER_LOG is not counted again.
      *
      * @param jobExecution Batch domain object representing the execution of a job.
      */
     @Override
     public void afterJob(JobExecution jobExecution) {
+        for (StepMetrics metrics : stepMetricsListener.remove(jobExecution.getId())) {
+            log.info("STEP " + metrics.summary());
+        }
+
         if (jobExecution.getStatus() == BatchStatus.COMPLETED) {
             log.info("!!! JOB FINISHED! Time to verify the results");
 
-            Integer usersLogCount = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM USER_LOG", Integer.class);
+            int usersLogCount = 0;
+            for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+                if (ParserJob.LOADER_STEPS.contains(stepExecution.getStepName())) {
+                    usersLogCount += stepExecution.getWriteCount();
+                }
+            }
 
             log.info("ROWS INSERTED IN USER_LOG TABLE: " + usersLogCount);
             log.info("You can see the list of blocked users in BLOCKED_USER table");
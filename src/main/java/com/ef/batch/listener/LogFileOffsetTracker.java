@@ -0,0 +1,179 @@
+package com.ef.batch.listener;
+
+import com.ef.batch.partition.LogFilePartitioner;
+import com.ef.batch.reader.ByteRangeItemReader;
+import com.ef.domain.LogFileOffset;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * <p>It keeps track in LOG_FILE_OFFSET of the bytes of a log file already loaded into USER_LOG, for the incremental loader.</p>
+ * <p>Before the step, it compares the file with the fingerprint stored (file key and hash of the first line). If it is the same file,
+ * the step resumes at the offset stored, otherwise the log was rotated (or never loaded) so USER_LOG is emptied and the step starts over.
+ * The range to load is put in the step execution context as {@link LogFilePartitioner#START_OFFSET} and
+ * {@link LogFilePartitioner#END_OFFSET}, the end being the last line break so a line being appended is left for the next run.</p>
+ * <p>As an {@link ItemStream} it stores the position of the reader on every chunk, in the same transaction as the chunk,
+ * so the offset stored always matches the rows committed.</p>
+ */
+@Slf4j
+public class LogFileOffsetTracker implements StepExecutionListener, ItemStream {
+
+    private static final int FIRST_LINE_MAX_BYTES = 4096;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Path path;
+    private final ByteRangeItemReader<?> reader;
+
+    /**
+     * @param jdbcTemplate to read and write LOG_FILE_OFFSET, it must use the data source of the step transactions
+     * @param path         log file loaded
+     * @param reader       reader of the step, its position is the offset stored
+     */
+    public LogFileOffsetTracker(JdbcTemplate jdbcTemplate, Path path, ByteRangeItemReader<?> reader) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.path = path;
+        this.reader = reader;
+    }
+
+    /**
+     * It decides where the step starts reading, emptying USER_LOG if the file is not the one it holds.
+     *
+     * @param stepExecution our step execution
+     */
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        try {
+            LogFileOffset current = fingerprint();
+            LogFileOffset stored = find(current.getFileUrl());
+            long size = Files.size(path);
+
+            long startOffset;
+            if (stored != null && stored.getFileKey().equals(current.getFileKey())
+                    && stored.getFirstLineHash().equals(current.getFirstLineHash()) && stored.getByteOffset() <= size) {
+                startOffset = stored.getByteOffset();
+                log.info("RESUMING " + path + " AT BYTE " + startOffset);
+            } else {
+                log.info((stored == null ? "NEW LOG FILE " : "LOG FILE ROTATED ") + path + ", EMPTY TABLE USER_LOG");
+                jdbcTemplate.execute("TRUNCATE TABLE USER_LOG");
+                jdbcTemplate.execute("TRUNCATE TABLE USER_LOG_ROLLUP");
+                jdbcTemplate.update("DELETE FROM LOG_FILE_OFFSET");
+                jdbcTemplate.update("INSERT INTO LOG_FILE_OFFSET (file_url, file_key, first_line_hash, byte_offset) VALUES (?, ?, ?, 0)",
+                        current.getFileUrl(), current.getFileKey(), current.getFirstLineHash());
+                startOffset = 0;
+            }
+
+            ExecutionContext context = stepExecution.getExecutionContext();
+            context.putLong(LogFilePartitioner.START_OFFSET, startOffset);
+            context.putLong(LogFilePartitioner.END_OFFSET, Math.max(startOffset, lastLineEnd(size)));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read file " + path, e);
+        }
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        return null;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+    }
+
+    /**
+     * It stores the position of our reader, called by the step right before committing each chunk.
+     *
+     * @param executionContext step execution context
+     */
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        jdbcTemplate.update("UPDATE LOG_FILE_OFFSET SET byte_offset = ? WHERE file_url = ?", reader.getPosition(), path.toString());
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+    }
+
+    private LogFileOffset find(String fileUrl) {
+        List<LogFileOffset> offsets = jdbcTemplate.query("SELECT file_url, file_key, first_line_hash, byte_offset FROM LOG_FILE_OFFSET WHERE file_url = ?",
+                new BeanPropertyRowMapper<>(LogFileOffset.class), fileUrl);
+        return offsets.isEmpty() ? null : offsets.get(0);
+    }
+
+    /**
+     * @return the fingerprint of our file, its byte offset is not set
+     */
+    private LogFileOffset fingerprint() throws IOException {
+        Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+
+        LogFileOffset fingerprint = new LogFileOffset();
+        fingerprint.setFileUrl(path.toString());
+        // file systems without file keys rely on the first line only
+        fingerprint.setFileKey(fileKey == null ? "" : fileKey.toString());
+        fingerprint.setFirstLineHash(firstLineHash());
+        return fingerprint;
+    }
+
+    private String firstLineHash() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(FIRST_LINE_MAX_BYTES);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                // reads the first bytes of the file
+            }
+        }
+        buffer.flip();
+        int length = 0;
+        while (length < buffer.limit() && buffer.get(length) != '\n') {
+            length++;
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(buffer.array(), 0, length);
+            return String.format("%040x", new BigInteger(1, digest.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return offset of the byte following the last line break of the file, 0 if there is none
+     */
+    private long lastLineEnd(long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(FIRST_LINE_MAX_BYTES);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long end = size;
+            while (end > 0) {
+                long start = Math.max(0, end - buffer.capacity());
+                buffer.clear();
+                buffer.limit((int) (end - start));
+                channel.read(buffer, start);
+                for (int i = buffer.position() - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        return start + i + 1;
+                    }
+                }
+                end = start;
+            }
+        }
+        return 0;
+    }
+}
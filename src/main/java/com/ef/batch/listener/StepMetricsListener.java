@@ -0,0 +1,204 @@
+package com.ef.batch.listener;
+
+import com.ef.domain.UserLog;
+import com.ef.metrics.StepMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.ItemReadListener;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.stereotype.Component;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>It records the {@link StepMetrics} of the steps it listens to: items and bytes read, parse errors (malformed lines),
+ * latency of each chunk and of each write to the database.</p>
+ * <p>The metrics of the last execution of each step are exposed over JMX as com.ef:type=StepMetrics,name="step name"
+ * while it runs, and the ones of a job execution are handed to {@link JobCompletionNotificationListener} for its summary.
+ * Workers of a partitioned step share the metrics of their step name.</p>
+ */
+@Component
+@Slf4j
+public class StepMetricsListener implements StepExecutionListener, ChunkListener, ItemReadListener<Object>, ItemWriteListener<Object> {
+
+    private final Map<Long, Map<String, StepMetrics>> metricsByExecution = new ConcurrentHashMap<>();
+    // metrics and start of the chunk and of the write running on each thread
+    private final ThreadLocal<Timing> timing = new ThreadLocal<>();
+
+    /**
+     * It starts (or joins, for the workers of a partitioned step) the metrics of the step and registers them over JMX.
+     *
+     * @param stepExecution execution of the step
+     */
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        Map<String, StepMetrics> steps = metricsByExecution.computeIfAbsent(stepExecution.getJobExecutionId(),
+                id -> Collections.synchronizedMap(new LinkedHashMap<>()));
+        String stepName = stepNameOf(stepExecution);
+        StepMetrics metrics;
+        synchronized (steps) {
+            metrics = steps.get(stepName);
+            if (metrics == null) {
+                metrics = new StepMetrics(stepName);
+                steps.put(stepName, metrics);
+                register(metrics);
+            }
+        }
+        metrics.started();
+        timing.set(new Timing(metrics));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        Timing current = timing.get();
+        if (current != null) {
+            current.metrics.ended();
+            timing.remove();
+        }
+        return null;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        Timing current = timing.get();
+        if (current != null) {
+            current.chunkStart = System.nanoTime();
+        }
+    }
+
+    /**
+     * It records the time taken by the chunk, it is called once the chunk is committed.
+     *
+     * @param context context of the chunk
+     */
+    @Override
+    public void afterChunk(ChunkContext context) {
+        Timing current = timing.get();
+        if (current != null) {
+            current.metrics.chunk((System.nanoTime() - current.chunkStart) / 1000);
+        }
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+    }
+
+    @Override
+    public void beforeRead() {
+    }
+
+    /**
+     * It counts the item and its bytes, and whether it is a line that could not be parsed.
+     *
+     * @param item item read
+     */
+    @Override
+    public void afterRead(Object item) {
+        Timing current = timing.get();
+        if (current == null) {
+            return;
+        }
+        if (item instanceof UserLog) {
+            UserLog userLog = (UserLog) item;
+            current.metrics.read(userLog.getLength(), userLog.isMalformed());
+        } else {
+            current.metrics.read(0, false);
+        }
+    }
+
+    @Override
+    public void onReadError(Exception ex) {
+    }
+
+    @Override
+    public void beforeWrite(List<?> items) {
+        Timing current = timing.get();
+        if (current != null) {
+            current.writeStart = System.nanoTime();
+        }
+    }
+
+    /**
+     * It records the items written and the time taken by the writer.
+     *
+     * @param items items written
+     */
+    @Override
+    public void afterWrite(List<?> items) {
+        Timing current = timing.get();
+        if (current != null) {
+            current.metrics.written(items.size(), (System.nanoTime() - current.writeStart) / 1000);
+        }
+    }
+
+    @Override
+    public void onWriteError(Exception exception, List<?> items) {
+    }
+
+    /**
+     * It hands over the metrics of the steps of a job execution and forgets them, they are still exposed over JMX
+     * until the same step runs again.
+     *
+     * @param jobExecutionId id of the job execution
+     * @return metrics of each step, in the order they started
+     */
+    public List<StepMetrics> remove(long jobExecutionId) {
+        Map<String, StepMetrics> steps = metricsByExecution.remove(jobExecutionId);
+        if (steps == null) {
+            return Collections.emptyList();
+        }
+        synchronized (steps) {
+            return new ArrayList<>(steps.values());
+        }
+    }
+
+    /**
+     * @return name of the step, without the partition for the workers of a partitioned step (named step:partition)
+     */
+    private static String stepNameOf(StepExecution stepExecution) {
+        String stepName = stepExecution.getStepName();
+        int partition = stepName.indexOf(':');
+        return partition < 0 ? stepName : stepName.substring(0, partition);
+    }
+
+    private static void register(StepMetrics metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.ef:type=StepMetrics,name=" + ObjectName.quote(metrics.getStepName()));
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(metrics, name);
+        } catch (JMException e) {
+            // metrics are not worth failing the step
+            log.warn("STEP METRICS NOT REGISTERED OVER JMX: " + e.getMessage());
+        }
+    }
+
+    private static final class Timing {
+
+        private final StepMetrics metrics;
+        private long chunkStart;
+        private long writeStart;
+
+        private Timing(StepMetrics metrics) {
+            this.metrics = metrics;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.ef.batch.mapper;
+
+import com.ef.domain.BlockedUser;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * <p>Row mapper turning a row of the query of the IP addresses to block into a BlockedUser. It replaces a BeanPropertyRowMapper:
+ * columns are read by their position in the query (requests, ip, blockedDate, comment), no metadata lookup nor reflection involved.</p>
+ *
+ * @see com.ef.batch.step.BlockUserIpStep
+ */
+public class BlockedUserRowMapper implements RowMapper<BlockedUser> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BlockedUser mapRow(ResultSet rs, int rowNum) throws SQLException {
+        BlockedUser blockedUser = new BlockedUser();
+        blockedUser.setRequests(rs.getInt(1));
+        blockedUser.setIp(rs.getString(2));
+        blockedUser.setBlockedDate(rs.getTimestamp(3));
+        blockedUser.setComment(rs.getString(4));
+        return blockedUser;
+    }
+}
@@ -0,0 +1,35 @@
+package com.ef.batch.partition;
+
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>It splits the IP addresses into buckets by the hash of their address (CRC32 of the VARBINARY stored in USER_LOG),
+ * so each worker of the partitioned block IP addresses step queries its own share of them.
+ * Every address falls into exactly one bucket, so no address is counted twice and none is missed.</p>
+ * <p>Each partition gets in its execution context the keys {@link #BUCKET} and {@link #BUCKETS}.</p>
+ */
+public class IpBucketPartitioner implements Partitioner {
+
+    public static final String BUCKET = "bucket";
+    public static final String BUCKETS = "buckets";
+
+    /**
+     * {@inheritDoc}
+     * <p>There is one partition for each bucket, gridSize of them.</p>
+     */
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+        for (int bucket = 0; bucket < gridSize; bucket++) {
+            ExecutionContext context = new ExecutionContext();
+            context.putInt(BUCKET, bucket);
+            context.putInt(BUCKETS, gridSize);
+            partitions.put("bucket" + bucket, context);
+        }
+        return partitions;
+    }
+}
@@ -0,0 +1,113 @@
+package com.ef.batch.partition;
+
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>It splits a log file into byte ranges of about the same size, one for each partition.
+ * Every range starts at the beginning of a line and ends right after a line break, so no line is split between two partitions.</p>
+ * <p>Each partition gets in its execution context the keys {@link #START_OFFSET} (inclusive) and {@link #END_OFFSET} (exclusive).</p>
+ * <p>It can also split only a byte range of the file, ex: the lines of the window of a rule found with a LogTimeIndex.</p>
+ */
+public class LogFilePartitioner implements Partitioner {
+
+    public static final String START_OFFSET = "startOffset";
+    public static final String END_OFFSET = "endOffset";
+
+    private static final int SCAN_SIZE = 4096;
+
+    private final Path path;
+    private final long from;
+    private final long to;
+
+    /**
+     * @param path log file to split
+     */
+    public LogFilePartitioner(Path path) {
+        this(path, 0, -1);
+    }
+
+    /**
+     * @param path log file to split
+     * @param from offset of the first line of the range to split (inclusive)
+     * @param to   offset following the last line of the range to split (exclusive), -1 to split the whole file
+     */
+    public LogFilePartitioner(Path path, long from, long to) {
+        this.path = path;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = to < 0 ? channel.size() : to;
+            long start = from;
+
+            for (int i = 1; i <= gridSize && start < size; i++) {
+                long end = i == gridSize ? size : nextLineStart(channel, Math.max(start, from + (size - from) * i / gridSize), size);
+                if (end > start) {
+                    partitions.put("partition" + partitions.size(), range(start, end));
+                    start = end;
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not split file " + path, e);
+        }
+
+        if (partitions.isEmpty()) {
+            // empty file or range, one partition that reads nothing
+            partitions.put("partition0", range(from, from));
+        }
+        return partitions;
+    }
+
+    /**
+     * It looks for the first line starting at or after the given offset.
+     *
+     * @return offset of the first byte of that line, or the file size if there is none
+     */
+    private static long nextLineStart(FileChannel channel, long offset, long size) throws IOException {
+        if (offset == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_SIZE);
+        // the line starts at offset if the previous byte is a line break
+        long position = offset - 1;
+
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static ExecutionContext range(long start, long end) {
+        ExecutionContext context = new ExecutionContext();
+        context.putLong(START_OFFSET, start);
+        context.putLong(END_OFFSET, end);
+        return context;
+    }
+}
@@ -0,0 +1,47 @@
+package com.ef.batch.partition;
+
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>It makes one partition for each file of a log given as a directory or a glob, so every file is loaded by its own worker.</p>
+ * <p>Each partition gets in its execution context the keys {@link #FILE} and {@link LogFilePartitioner#START_OFFSET}.
+ * The start offset is where the ids of the rows of the file start: every file gets 2^40 of them, so no two files
+ * give the same id, whatever the order in which they are loaded.</p>
+ */
+public class LogFilesPartitioner implements Partitioner {
+
+    public static final String FILE = "file";
+
+    private static final int IDS_PER_FILE_SHIFT = 40;
+
+    private final List<Path> files;
+
+    /**
+     * @param files files of the log
+     */
+    public LogFilesPartitioner(List<Path> files) {
+        this.files = files;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>The grid size is ignored, there is always one partition for each file.</p>
+     */
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            ExecutionContext context = new ExecutionContext();
+            context.putString(FILE, files.get(i).toString());
+            context.putLong(LogFilePartitioner.START_OFFSET, (long) i << IDS_PER_FILE_SHIFT);
+            partitions.put("file" + i, context);
+        }
+        return partitions;
+    }
+}
@@ -0,0 +1,87 @@
+package com.ef.batch.processor;
+
+import com.ef.domain.DetectionWindow;
+import com.ef.domain.UserLog;
+import com.ef.parser.LogDates;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.util.ClassUtils;
+
+import java.util.List;
+
+/**
+ * <p>Processor of the steps loading our .log file into USER_LOG. It filters the lines that could not be parsed
+ * and, with seek, the requests out of the windows of the rules, and gives each request left an id.</p>
+ * <p>The last id given is saved in the execution context with every commit, so a restarted step goes on with the next id
+ * and never gives one of the rows already committed.</p>
+ * <p>It is not thread safe, each step (or partition) gets its own instance.</p>
+ */
+public class UserLogProcessor extends ItemStreamSupport implements ItemProcessor<UserLog, UserLog> {
+
+    private static final String ID = "id";
+
+    private final long firstId;
+    private final List<DetectionWindow> windows;
+    private long id;
+
+    /**
+     * @param firstId ids start after it
+     * @param windows windows of the rules whose requests are loaded, null to load every request
+     */
+    public UserLogProcessor(long firstId, List<DetectionWindow> windows) {
+        this.firstId = firstId;
+        this.windows = windows;
+        this.id = firstId;
+        setName(ClassUtils.getShortName(UserLogProcessor.class));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UserLog process(UserLog item) {
+        // lines that could not be parsed are filtered, they show up in the filter count of the step
+        if (item.isMalformed()) {
+            return null;
+        }
+        if (windows != null && !isWithin(LogDates.roundToSecond(item.getTimestamp()))) {
+            return null;
+        }
+        // setting it an id so that when inserted we have each log identified
+        // and to know really easy how many rows were inserted
+        // (fields come already trimmed from our line mapper)
+        item.setId(++id);
+
+        return item;
+    }
+
+    /**
+     * It goes on from the last id saved by the execution restarted, if there is one.
+     *
+     * @param executionContext context of our step
+     */
+    @Override
+    public void open(ExecutionContext executionContext) {
+        id = executionContext.getLong(getExecutionContextKey(ID), firstId);
+    }
+
+    /**
+     * It saves the last id given, the one of the last row of the chunk being committed.
+     *
+     * @param executionContext context of our step
+     */
+    @Override
+    public void update(ExecutionContext executionContext) {
+        executionContext.putLong(getExecutionContextKey(ID), id);
+    }
+
+    private boolean isWithin(long millis) {
+        for (DetectionWindow window : windows) {
+            if (window.contains(millis)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
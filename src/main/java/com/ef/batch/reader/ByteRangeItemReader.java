@@ -0,0 +1,171 @@
+package com.ef.batch.reader;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * <p>Item reader that reads the lines of a file found between two byte offsets and maps each one of them with a {@link LineMapper}.</p>
+ * <p>The start offset must be the first byte of a line and the end offset the byte following a line break (or the file size),
+ * as computed by {@link com.ef.batch.partition.LogFilePartitioner}, so several readers can read disjoint ranges of the same file concurrently.</p>
+ * <p>The offset following the last line read is saved in the execution context with every commit. On restart the reader
+ * goes straight to it, the lines read before are neither read nor mapped again.</p>
+ *
+ * @param <T> type of the items mapped from each line
+ */
+public class ByteRangeItemReader<T> extends AbstractItemCountingItemStreamItemReader<T> {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String POSITION = "position";
+
+    private final Path path;
+    private final long startOffset;
+    private final long endOffset;
+    private final LineMapper<T> lineMapper;
+
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private byte[] line = new byte[256];
+    // offset of the first byte not consumed yet
+    private long position;
+    // offset saved by the execution restarted, -1 if it is not a restart
+    private long restartPosition = -1;
+
+    /**
+     * @param path        file to read
+     * @param startOffset offset of the first byte of the range (inclusive)
+     * @param endOffset   offset of the last byte of the range (exclusive)
+     * @param lineMapper  maps each line to an item
+     */
+    public ByteRangeItemReader(Path path, long startOffset, long endOffset, LineMapper<T> lineMapper) {
+        Assert.isTrue(startOffset <= endOffset, "startOffset must not be greater than endOffset");
+        this.path = path;
+        this.startOffset = startOffset;
+        this.endOffset = endOffset;
+        this.lineMapper = lineMapper;
+        setName(ClassUtils.getShortName(ByteRangeItemReader.class));
+    }
+
+    /**
+     * @return offset of the byte following the last line read
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * It opens the file, at the offset saved by the execution restarted if there is one.
+     *
+     * @param executionContext context of our step
+     */
+    @Override
+    public void open(ExecutionContext executionContext) {
+        String key = getExecutionContextKey(POSITION);
+        restartPosition = isSaveState() && executionContext.containsKey(key) ? executionContext.getLong(key) : -1;
+        super.open(executionContext);
+    }
+
+    /**
+     * It saves the item count and the offset following the last line read.
+     *
+     * @param executionContext context of our step
+     */
+    @Override
+    public void update(ExecutionContext executionContext) {
+        super.update(executionContext);
+        if (isSaveState()) {
+            executionContext.putLong(getExecutionContextKey(POSITION), position);
+        }
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        position = restartPosition >= 0 ? restartPosition : startOffset;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        channel.position(position);
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.flip();
+    }
+
+    @Override
+    protected void jumpToItem(int itemIndex) throws Exception {
+        // a restart already starts at the offset of the item, only the item count is restored
+        if (restartPosition < 0) {
+            super.jumpToItem(itemIndex);
+        }
+    }
+
+    @Override
+    protected T doRead() throws Exception {
+        int length = readLine();
+        if (length < 0) {
+            return null;
+        }
+        return lineMapper.mapLine(new String(line, 0, length, StandardCharsets.UTF_8), getCurrentItemCount());
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * It copies the next line, without its line break, into our line buffer.
+     *
+     * @return length of the line or -1 if there are no more lines in the range or the file ended before it
+     */
+    private int readLine() throws IOException {
+        if (position >= endOffset) {
+            return -1;
+        }
+
+        int length = 0;
+        while (position < endOffset) {
+            if (!buffer.hasRemaining() && !fill()) {
+                // the file ended before the range, ex: it was truncated meanwhile, its last line may lack its line break
+                if (length == 0) {
+                    return -1;
+                }
+                break;
+            }
+            byte b = buffer.get();
+            position++;
+            if (b == '\n') {
+                break;
+            }
+            if (length == line.length) {
+                line = Arrays.copyOf(line, length << 1);
+            }
+            line[length++] = b;
+        }
+
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return length;
+    }
+
+    private boolean fill() throws IOException {
+        buffer.clear();
+        long remaining = endOffset - position;
+        if (remaining < buffer.capacity()) {
+            buffer.limit((int) remaining);
+        }
+        int read = channel.read(buffer);
+        buffer.flip();
+        return read > 0;
+    }
+}
@@ -0,0 +1,32 @@
+package com.ef.batch.reader;
+
+import com.ef.parser.LogFiles;
+import org.springframework.core.io.PathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+
+/**
+ * Resource of a log file that gives the decompressed content of gzip and zstd logs, so a FlatFileItemReader reads them
+ * as they are stored, without decompressing them to disk first.
+ *
+ * @see LogFiles
+ */
+public class LogFileResource extends PathResource {
+
+    /**
+     * @param path location of the log file, compressed or not
+     */
+    public LogFileResource(String path) {
+        super(path);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return LogFiles.open(Paths.get(getPath()));
+    }
+}
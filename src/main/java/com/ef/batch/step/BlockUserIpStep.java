@@ -1,6 +1,11 @@
 package com.ef.batch.step;
 
+import com.ef.batch.mapper.BlockedUserRowMapper;
+import com.ef.batch.partition.IpBucketPartitioner;
 import com.ef.domain.BlockedUser;
+import com.ef.domain.DetectionRule;
+import com.ef.domain.DetectionWindow;
+import com.ef.parser.LogDates;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.item.ItemProcessor;
@@ -11,10 +16,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.util.Assert;
 
 import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Configuration for our step responsible of blocking IP addresses that exceeded the threshold within a specific time.
@@ -25,6 +31,8 @@ import javax.sql.DataSource;
 @Slf4j
 public class BlockUserIpStep {
 
+    private static final long MINUTE = 60_000;
+
     private DataSource dataSource;
 
     /**
@@ -41,29 +49,70 @@ public class BlockUserIpStep {
 
     /**
      * Bean Reader, it's the first part of our step. It queries all IP that exceeded the threshold within a specific time.
+     * <p>Requests are summed from USER_LOG_ROLLUP, one row per IP and minute, so the cost of the query depends on the length
+     * of the period and not on the number of lines loaded. Minutes only partly within the period (a startDate that is not
+     * a whole minute and the last second, included by BETWEEN) are counted from USER_LOG through its (DATE, IP) index.</p>
+     * <p>Every rule is checked by the same query: the rules are joined as a derived table and requests are grouped by rule and IP,
+     * so there is one row for each IP blocked by each rule.</p>
      *
-     * @param startDate this is the start date time of our period
-     * @param duration  duration can be "HOUR" meaning that it will query for rows between startDate param and exactly 1 hour later.
-     *                  It can also be "DAY" meaning it will query for rows between startDate param and exactly 1 day later.
-     * @param threshold value used as our threshold
+     * @param rules rules to check separated by ';', each one as startDate,duration,threshold. Duration can be "HOUR" meaning
+     *              that it will query for rows between startDate param and exactly 1 hour later.
+     *              It can also be "DAY" meaning it will query for rows between startDate param and exactly 1 day later,
+     *              or an amount followed by s, m, h, d or w, ex: "15m" or "6h"
      * @return our Item reader fully constructed
      * @see JdbcCursorItemReader
      * @see BlockedUser
+     * @see DetectionRule
      */
     @Bean("blockedListLoaderStepReader")
     @StepScope
-    public JdbcCursorItemReader<BlockedUser> reader(@Value("#{jobParameters['startDate']}") String startDate,
-                                                    @Value("#{jobParameters['duration']}") String duration,
-                                                    @Value("#{jobParameters['threshold']}") long threshold) {
+    public JdbcCursorItemReader<BlockedUser> reader(@Value("#{jobParameters['rules']}") String rules) {
+        return newReader(rules, 0, 1);
+    }
+
+    /**
+     * It creates the reader of the IP addresses to block whose hash falls into a bucket, see {@link #reader(String)}.
+     *
+     * @param rules   rules to check separated by ';', each one as startDate,duration,threshold
+     * @param bucket  bucket of the IP addresses read, from 0 to buckets - 1
+     * @param buckets number of buckets, 1 to read every IP address
+     * @return our Item reader fully constructed
+     * @see IpBucketPartitioner
+     */
+    JdbcCursorItemReader<BlockedUser> newReader(String rules, int bucket, int buckets) {
+
+        List<DetectionRule> detectionRules = DetectionRule.parseAll(rules);
+
+        // one row per rule: id, threshold, comment, startDate, whole minutes of the period [firstMinute, lastMinute) and its end
+        String ruleRow = "SELECT ? AS rule_id, ? AS threshold, ? AS comment, CAST(? AS DATETIME) AS start_date," +
+                " CAST(? AS DATETIME) AS first_minute, CAST(? AS DATETIME) AS last_minute, CAST(? AS DATETIME) AS end_date";
+        String rulesTable = String.join(" UNION ALL ", Collections.nCopies(detectionRules.size(), ruleRow));
+
+        // the bucket is a number of our own, not a parameter of the user
+        String minutesOfBucket = buckets == 1 ? "" : " WHERE CRC32(minutes.ip) % " + buckets + " = " + bucket;
+        String userLogOfBucket = buckets == 1 ? "" : " WHERE CRC32(user_log.ip) % " + buckets + " = " + bucket;
 
         // template query for our search of IPs to block
-        String templateQuery = "SELECT count(*) AS requests, ip, " +
+        // IP is stored as VARBINARY, both the rollup and the edges of the period are resolved with their (DATE/BUCKET, IP) index only
+        String templateQuery = "SELECT sum(requests) AS requests, INET6_NTOA(ip) AS ip, " +
                 "current_timestamp AS blockedDate, " +
-                " ? AS comment" +
-                " FROM USER_LOG " +
-                " WHERE date BETWEEN ? AND adddate(date_format(?, ?), INTERVAL 1 " + duration + ")" +
-                " GROUP BY ip " +
-                " HAVING requests >= ?";
+                " max(comment) AS comment" +
+                " FROM (" +
+                "   SELECT rules.rule_id, rules.threshold, rules.comment, minutes.ip, minutes.requests" +
+                "   FROM (" + rulesTable + ") rules" +
+                "   JOIN USER_LOG_ROLLUP minutes ON minutes.bucket >= rules.first_minute AND minutes.bucket < rules.last_minute" +
+                minutesOfBucket +
+                "   UNION ALL" +
+                "   SELECT rules.rule_id, max(rules.threshold), max(rules.comment), user_log.ip, count(*)" +
+                "   FROM (" + rulesTable + ") rules" +
+                "   JOIN USER_LOG user_log ON user_log.date >= rules.start_date AND user_log.date < rules.first_minute" +
+                "     OR user_log.date BETWEEN rules.last_minute AND rules.end_date" +
+                userLogOfBucket +
+                "   GROUP BY rules.rule_id, user_log.ip" +
+                " ) period" +
+                " GROUP BY rule_id, ip " +
+                " HAVING requests >= max(threshold)" +
+                " ORDER BY rule_id";
 
 
         JdbcCursorItemReader<BlockedUser> databaseReader = new JdbcCursorItemReader<>();
@@ -71,13 +120,32 @@ public class BlockUserIpStep {
         databaseReader.setDataSource(dataSource);
         databaseReader.setSql(templateQuery);
         databaseReader.setPreparedStatementSetter(ps -> {
-            ps.setString(1, "blocked because it exceeded the threshold of " + threshold + " requests in 1 " + duration);
-            ps.setString(2, startDate);
-            ps.setString(3, startDate);
-            ps.setString(4, "%Y-%m-%d.%H:%i:%s");
-            ps.setLong(5, threshold);
+            int index = 1;
+            // the rules derived table is in the query twice
+            for (int copy = 0; copy < 2; copy++) {
+                for (int i = 0; i < detectionRules.size(); i++) {
+                    DetectionRule rule = detectionRules.get(i);
+                    DetectionWindow window = rule.window();
+
+                    // whole minutes of the period, [firstMinute, lastMinute)
+                    long firstMinute = Math.floorDiv(window.getStart() + MINUTE - 1, MINUTE) * MINUTE;
+                    long lastMinute = Math.floorDiv(window.getEnd(), MINUTE) * MINUTE;
+                    if (lastMinute < firstMinute) {
+                        // period within a single minute, counted from USER_LOG only
+                        firstMinute = lastMinute = window.getStart();
+                    }
+
+                    ps.setInt(index++, i);
+                    ps.setLong(index++, rule.getThreshold());
+                    ps.setString(index++, rule.comment(detectionRules.size() > 1));
+                    ps.setString(index++, LogDates.format(window.getStart()));
+                    ps.setString(index++, LogDates.format(firstMinute));
+                    ps.setString(index++, LogDates.format(lastMinute));
+                    ps.setString(index++, LogDates.format(window.getEnd()));
+                }
+            }
         });
-        databaseReader.setRowMapper(new BeanPropertyRowMapper<>(BlockedUser.class));
+        databaseReader.setRowMapper(new BlockedUserRowMapper());
 
         return databaseReader;
     }
@@ -109,6 +177,23 @@ public class BlockUserIpStep {
     @Bean("blockedListLoaderStepWriter")
     @StepScope
     public JdbcBatchItemWriter<BlockedUser> writer() {
+        return newBlockedUserWriter();
+    }
+
+    /**
+     * Bean writer used outside of our step, by the detection engines that do not run ParserJob.
+     * It inserts into BLOCKED_USER exactly like our step writer does.
+     *
+     * @return our Writer
+     * @see JdbcBatchItemWriter
+     * @see com.ef.engine.DetectionEngine
+     */
+    @Bean("blockedUserWriter")
+    public JdbcBatchItemWriter<BlockedUser> blockedUserWriter() {
+        return newBlockedUserWriter();
+    }
+
+    private JdbcBatchItemWriter<BlockedUser> newBlockedUserWriter() {
         JdbcBatchItemWriter<BlockedUser> writer = new JdbcBatchItemWriter<>();
         writer.setItemSqlParameterSourceProvider(new BeanPropertyItemSqlParameterSourceProvider<>());
         writer.setSql("INSERT INTO BLOCKED_USER (requests, ip, blocked_date, comment) VALUES (:requests, :ip, :blockedDate,:comment)");
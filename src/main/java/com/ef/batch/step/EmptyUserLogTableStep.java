@@ -1,6 +1,7 @@
 package com.ef.batch.step;
 
 
+import com.ef.batch.decider.LoaderModeDecider;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.StepContribution;
 import org.springframework.batch.core.StepExecution;
@@ -14,6 +15,7 @@ import org.springframework.util.Assert;
 
 /**
  * This step is responsible of emptying USER_LOG table. There we truncate our table so that when loading our log file it will be a lot much faster.
+ * The incremental loader keeps the rows of previous runs, so USER_LOG is not emptied here in that mode.
  *
  * @author yinfante
  */
@@ -36,7 +38,8 @@ public class EmptyUserLogTableStep implements Tasklet {
     }
 
     /**
-     * Executes a TRUNCATE statement against USER_LOG
+     * Executes a TRUNCATE statement against USER_LOG and USER_LOG_ROLLUP, unless the loader is incremental.
+     * LOG_FILE_OFFSET is emptied as well since USER_LOG no longer holds the lines it tracks.
      *
      * @param contribution Represents a contribution to a {@link StepExecution}, buffering changes until
      *                     they can be applied at a chunk boundary.
@@ -48,8 +51,15 @@ public class EmptyUserLogTableStep implements Tasklet {
     @Override
     public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
 
+        if (LoaderModeDecider.INCREMENTAL.equals(chunkContext.getStepContext().getJobParameters().get("loader"))) {
+            // the incremental loader empties it only when the log was rotated
+            return RepeatStatus.FINISHED;
+        }
+
         log.info("EMPTY TABLE USER_LOG ");
         jdbcTemplate.execute("TRUNCATE TABLE USER_LOG");
+        jdbcTemplate.execute("TRUNCATE TABLE USER_LOG_ROLLUP");
+        jdbcTemplate.update("DELETE FROM LOG_FILE_OFFSET");
 
         return RepeatStatus.FINISHED;
     }
@@ -1,23 +1,45 @@
 package com.ef.batch.step;
 
+import com.ef.batch.mapper.UserLogLineMapper;
+import com.ef.batch.processor.UserLogProcessor;
+import com.ef.batch.reader.ByteRangeItemReader;
+import com.ef.batch.reader.LogFileResource;
+import com.ef.batch.writer.LoadDataItemWriter;
+import com.ef.batch.writer.PipelinedItemWriter;
+import com.ef.batch.writer.UserLogDictionary;
+import com.ef.batch.writer.UserLogDictionaryItemWriter;
+import com.ef.batch.writer.UserLogRollupItemWriter;
+import com.ef.domain.DetectionRule;
+import com.ef.domain.DetectionWindow;
 import com.ef.domain.UserLog;
+import com.ef.parser.LogFiles;
+import com.ef.parser.LogTimeIndex;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.BeanPropertyItemSqlParameterSourceProvider;
 import org.springframework.batch.item.database.JdbcBatchItemWriter;
 import org.springframework.batch.item.file.FlatFileItemReader;
-import org.springframework.batch.item.file.mapping.BeanWrapperFieldSetMapper;
-import org.springframework.batch.item.file.mapping.DefaultLineMapper;
-import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.batch.item.support.CompositeItemWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.PathResource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.util.Assert;
 
 import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * <p> Configuration for our step responsible of loading a .log file of users' accesses to a web server.
@@ -31,93 +53,179 @@ import javax.sql.DataSource;
 public class FileLoaderStep {
 
     private DataSource dataSource;
+    // shared by the writers of every step and run, so their caches of ids outlive a step
+    private UserLogDictionary requests;
+    private UserLogDictionary userAgents;
 
     /**
      * Injecting dependencies
      *
-     * @param dataSource our Data source connection
+     * @param dataSource          our Data source connection
+     * @param dictionaryCacheSize ids of requests and of user agents kept in memory by the writers, application.job.dictionaryCacheSize
      * @see DataSource
+     * @see UserLogDictionary
      */
     @Autowired
-    public FileLoaderStep(DataSource dataSource) {
+    public FileLoaderStep(DataSource dataSource, @Value("${application.job.dictionaryCacheSize}") int dictionaryCacheSize) {
         Assert.isNull(this.dataSource, "Data source was not initialized");
         this.dataSource = dataSource;
+        this.requests = new UserLogDictionary(dataSource, "USER_LOG_REQUEST", dictionaryCacheSize);
+        this.userAgents = new UserLogDictionary(dataSource, "USER_LOG_USER_AGENT", dictionaryCacheSize);
     }
 
-    private final String delimiter = "|";
-
     /**
      * Bean Reader, it's the first part of the step. It reads our log file based on a file url passed when executing.
+     * With seek it only reads the lines of a plain log around the windows of our rules.
      *
      * @param fileUrl file url of our .log file passed at execution time
+     * @param rules   rules of the execution, see DetectionRule
+     * @param seek    "true" to read only the lines around the windows of the rules
      * @return our item reader implementation to read our .log file
      * @see org.springframework.batch.item.ItemReader
-     * @see FlatFileItemReader
+     * @see #readerOf(String, String, String, LineMapper)
      */
     @Bean("fileLoaderStepReader")
     @StepScope
-    public FlatFileItemReader<UserLog> reader(@Value("#{jobParameters['fileUrl']}") String fileUrl) {
+    public AbstractItemCountingItemStreamItemReader<UserLog> reader(@Value("#{jobParameters['fileUrl']}") String fileUrl,
+                                                                   @Value("#{jobParameters['rules']}") String rules,
+                                                                   @Value("#{jobParameters['seek']}") String seek) {
+        return readerOf(fileUrl, rules, seek, lineMapper());
+    }
 
-        FlatFileItemReader<UserLog> reader = new FlatFileItemReader<>();
+    /**
+     * It creates the reader of a log file, which saves how far it got with every commit so a restarted step goes on from there.
+     * <p>A plain log is read by byte offsets: on restart the reader goes straight to the line following the last one committed,
+     * and with seek it only reads the lines around the windows of the rules. A compressed log is decompressed as it is read,
+     * so on restart it is decompressed again from its start, skipping the lines already committed without mapping them.</p>
+     *
+     * @param file       log file
+     * @param rules      rules of the execution, see DetectionRule
+     * @param seek       "true" to read only the lines around the windows of the rules
+     * @param lineMapper maps each line to a UserLog
+     * @return reader of the log
+     * @see ByteRangeItemReader
+     * @see FlatFileItemReader
+     * @see LogTimeIndex
+     */
+    static AbstractItemCountingItemStreamItemReader<UserLog> readerOf(String file, String rules, String seek,
+                                                                      LineMapper<UserLog> lineMapper) {
+        Path path = Paths.get(file);
+        try {
+            if (LogFiles.isCompressed(path)) {
+                FlatFileItemReader<UserLog> reader = new FlatFileItemReader<>();
+                reader.setResource(new LogFileResource(file));
+                reader.setLineMapper(lineMapper);
+                return reader;
+            }
+            if (!Boolean.parseBoolean(seek)) {
+                return new ByteRangeItemReader<>(path, 0, Files.size(path), lineMapper);
+            }
+            long[] span = DetectionRule.span(DetectionRule.parseAll(rules));
+            long[] range = LogTimeIndex.of(path).range(span[0], span[1]);
+            log.info("LOADING BYTES " + range[0] + " TO " + range[1] + " OF " + file);
+            return new ByteRangeItemReader<>(path, range[0], range[1], lineMapper);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-        reader.setResource(new PathResource(fileUrl));
-        reader.setLineMapper(new DefaultLineMapper<UserLog>() {{
-            setLineTokenizer(new DelimitedLineTokenizer() {{
-                setDelimiter(delimiter);
-                // setting columns' names
-                setNames("date", "ip", "request", "status", "userAgent");
-            }});
-            setFieldSetMapper(new BeanWrapperFieldSetMapper<UserLog>() {{
-                setTargetType(UserLog.class);
-            }});
-        }});
-        return reader;
+    /**
+     * It creates the line mapper turning each line of our .log file into a UserLog.
+     *
+     * @return our line mapper
+     * @see UserLogLineMapper
+     */
+    public LineMapper<UserLog> lineMapper() {
+        return new UserLogLineMapper();
     }
 
     /**
      * Bean processor of our step. It is the second part executed when step is run.
      *
-     * @return Our item processor
+     * @param startOffset when run by a worker of the partitioned step, offset of the first byte of its range.
+     *                    Ids start after it, a line takes at least one byte so workers never give the same id.
+     * @param rules       rules of the execution, see DetectionRule
+     * @param seek        "true" to filter the requests out of the windows of the rules, instead of leaving them to the query
+     *                    of our block IP addresses Step
+     * @return Our item processor, on restart it goes on from the last id committed
      * @see ItemProcessor
-     * @see UserLog
+     * @see UserLogProcessor
      */
     @Bean("fileLoaderStepProcessor")
     @StepScope
-    public ItemProcessor<UserLog, UserLog> processor() {
-        return new ItemProcessor<UserLog, UserLog>() {
-
-            private int id;
-
-            @Override
-            public UserLog process(UserLog item) throws Exception {
-                // setting it an id so that when inserted we have each log identified
-                // and to know really easy how many rows were inserted
-                item.setId(++id);
-                // trimming each field in case it came with spaces
-                item.setIp(item.getIp().trim());
-                item.setRequest(item.getRequest().trim());
-                item.setStatus(item.getStatus().trim());
-                item.setUserAgent(item.getUserAgent().trim());
-
-                return item;
-            }
-        };
+    public UserLogProcessor processor(@Value("#{stepExecutionContext['startOffset']}") Long startOffset,
+                                      @Value("#{jobParameters['rules']}") String rules,
+                                      @Value("#{jobParameters['seek']}") String seek) {
+        // with seek only the requests within the window of a rule are loaded
+        List<DetectionWindow> windows = Boolean.parseBoolean(seek)
+                ? DetectionRule.parseAll(rules).stream().map(DetectionRule::window).collect(Collectors.toList())
+                : null;
+        return new UserLogProcessor(startOffset == null ? 0 : startOffset, windows);
     }
 
     /**
      * Bean writer of our step. This is the last part executed when step is run.
-     * After data has been read and processed here we are ready to insert it into our USER_LOG table.
+     * After data has been read and processed here we are ready to insert it into our USER_LOG table,
+     * and to add its requests to our USER_LOG_ROLLUP table in the same transaction.
+     * Requests and user agents are inserted as the ids of their rows in USER_LOG_REQUEST and USER_LOG_USER_AGENT.
      *
      * @return our Writer
+     * @see UserLogDictionaryItemWriter
      * @see JdbcBatchItemWriter
+     * @see UserLogRollupItemWriter
      */
     @Bean("fileLoaderStepWriter")
     @StepScope
-    public JdbcBatchItemWriter<UserLog> writer() {
+    public CompositeItemWriter<UserLog> writer() {
+        return newWriter();
+    }
+
+    /**
+     * Bean writer of the bulk version of our step. It inserts each chunk into our USER_LOG table with a single LOAD DATA LOCAL INFILE,
+     * the rows are streamed from memory so no temporary file is written. USER_LOG_ROLLUP is updated as in our step writer.
+     *
+     * @return our bulk Writer
+     * @see LoadDataItemWriter
+     * @see UserLogRollupItemWriter
+     */
+    @Bean("fileLoaderStepBulkWriter")
+    @StepScope
+    public CompositeItemWriter<UserLog> bulkWriter() {
+        return withDictionariesAndRollup(new LoadDataItemWriter(dataSource));
+    }
+
+    /**
+     * Bean writer of the pipelined version of our step. Chunks are written by a pool of writer threads, each one with its own
+     * connection and transaction, while the step keeps reading the next chunks.
+     * Number of writer threads is application.job.writerThreads and up to application.job.writerQueueCapacity chunks can wait for them.
+     *
+     * @param writers       number of writer threads
+     * @param queueCapacity number of chunks waiting for a writer thread before reading blocks
+     * @return our pipelined Writer
+     * @see PipelinedItemWriter
+     */
+    @Bean("fileLoaderStepPipelinedWriter")
+    @StepScope
+    public PipelinedItemWriter<UserLog> pipelinedWriter(@Value("${application.job.writerThreads}") int writers,
+                                                        @Value("${application.job.writerQueueCapacity}") int queueCapacity) {
+        // writer threads are not bound to our step, so they get a plain writer instead of the step scoped one
+        return new PipelinedItemWriter<>(newWriter(), new DataSourceTransactionManager(dataSource), writers, queueCapacity);
+    }
+
+    private CompositeItemWriter<UserLog> newWriter() {
         JdbcBatchItemWriter<UserLog> writer = new JdbcBatchItemWriter<>();
         writer.setItemSqlParameterSourceProvider(new BeanPropertyItemSqlParameterSourceProvider<>());
-        writer.setSql("INSERT INTO USER_LOG (id, date, ip, request, status, user_agent) VALUES (:id, :date, :ip, :request, :status, :userAgent)");
+        writer.setSql("INSERT INTO USER_LOG (id, date, ip, request_id, status, user_agent_id)" +
+                " VALUES (:id, :date, INET6_ATON(:ip), :requestId, :status, :userAgentId)");
         writer.setDataSource(dataSource);
+        writer.afterPropertiesSet();
+        return withDictionariesAndRollup(writer);
+    }
+
+    private CompositeItemWriter<UserLog> withDictionariesAndRollup(ItemWriter<UserLog> userLogWriter) {
+        CompositeItemWriter<UserLog> writer = new CompositeItemWriter<>();
+        writer.setDelegates(Arrays.asList(new UserLogDictionaryItemWriter(requests, userAgents), userLogWriter,
+                new UserLogRollupItemWriter(dataSource)));
         return writer;
     }
 }
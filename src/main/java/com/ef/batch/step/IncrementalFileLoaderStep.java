@@ -0,0 +1,71 @@
+package com.ef.batch.step;
+
+import com.ef.batch.listener.LogFileOffsetTracker;
+import com.ef.batch.reader.ByteRangeItemReader;
+import com.ef.domain.UserLog;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Paths;
+
+/**
+ * <p>Configuration for the incremental version of our step responsible of loading a .log file.
+ * USER_LOG is not emptied on every run: only the lines appended to the file since the last run are loaded,
+ * starting at the byte offset stored in LOG_FILE_OFFSET. When the file was rotated it starts over.</p>
+ * <p>It uses the processor and writer of {@link FileLoaderStep}. Ids start after the offset the step resumes at,
+ * a line takes at least one byte so they never clash with the ids of previous runs.</p>
+ *
+ * @see LogFileOffsetTracker
+ */
+@Configuration
+public class IncrementalFileLoaderStep {
+
+    private JdbcTemplate jdbcTemplate;
+    private FileLoaderStep fileLoaderStep;
+
+    /**
+     * Injecting dependencies
+     *
+     * @param jdbcTemplate   to read and write LOG_FILE_OFFSET
+     * @param fileLoaderStep to share the line mapper of our sequential step
+     */
+    @Autowired
+    public IncrementalFileLoaderStep(JdbcTemplate jdbcTemplate, FileLoaderStep fileLoaderStep) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fileLoaderStep = fileLoaderStep;
+    }
+
+    /**
+     * Bean Reader of our step. It reads the lines between the offset stored and the last complete line of the file.
+     *
+     * @param fileUrl     file url of our .log file passed at execution time
+     * @param startOffset offset the step resumes at, set by our tracker
+     * @param endOffset   byte following the last complete line, set by our tracker
+     * @return our item reader implementation to read the new lines of our .log file
+     * @see ByteRangeItemReader
+     */
+    @Bean("incrementalFileLoaderStepReader")
+    @StepScope
+    public ByteRangeItemReader<UserLog> reader(@Value("#{jobParameters['fileUrl']}") String fileUrl,
+                                               @Value("#{stepExecutionContext['startOffset']}") Long startOffset,
+                                               @Value("#{stepExecutionContext['endOffset']}") Long endOffset) {
+        return new ByteRangeItemReader<>(Paths.get(fileUrl), startOffset, endOffset, fileLoaderStep.lineMapper());
+    }
+
+    /**
+     * Bean tracker of our step. It finds where the step resumes and stores how far it got on every chunk.
+     *
+     * @param fileUrl file url of our .log file passed at execution time
+     * @return our tracker
+     * @see LogFileOffsetTracker
+     */
+    @Bean("incrementalFileLoaderStepTracker")
+    @StepScope
+    public LogFileOffsetTracker tracker(@Value("#{jobParameters['fileUrl']}") String fileUrl) {
+        return new LogFileOffsetTracker(jdbcTemplate, Paths.get(fileUrl), reader(null, null, null));
+    }
+}
@@ -0,0 +1,103 @@
+package com.ef.batch.step;
+
+import com.ef.batch.partition.LogFilesPartitioner;
+import com.ef.domain.UserLog;
+import com.ef.parser.LogFiles;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * <p>Configuration for the version of our step loading a log given as a directory or a glob, ex: one log per web server and hour.
+ * Each file is a partition read, processed and written into USER_LOG by its own worker step, so the detection step
+ * sees every file as a single log. Files can be compressed, see {@link LogFiles}.</p>
+ * <p>Up to application.job.fileConcurrency files are loaded at the same time, each worker holds one connection while
+ * writing its chunk. Workers are restartable on their own: restarting a failed run loads again only the files
+ * that failed, from the last chunk committed.</p>
+ * <p>Workers use the processor and writer of {@link FileLoaderStep}.</p>
+ */
+@Configuration
+@PropertySource("classpath:/application.properties")
+@Slf4j
+public class MultiFileLoaderStep {
+
+    private Environment env;
+    private FileLoaderStep fileLoaderStep;
+
+    /**
+     * Injecting dependencies
+     *
+     * @param env            to read configuration properties
+     * @param fileLoaderStep to share the line mapper of our sequential step
+     */
+    @Autowired
+    public MultiFileLoaderStep(Environment env, FileLoaderStep fileLoaderStep) {
+        this.env = env;
+        this.fileLoaderStep = fileLoaderStep;
+    }
+
+    /**
+     * Bean partitioner, it makes one partition for each file of our log.
+     *
+     * @param fileUrl directory or glob of our .log files passed at execution time
+     * @return our partitioner
+     * @see LogFilesPartitioner
+     */
+    @Bean("multiFileLoaderStepPartitioner")
+    @StepScope
+    public Partitioner partitioner(@Value("#{jobParameters['fileUrl']}") String fileUrl) {
+        try {
+            List<Path> files = LogFiles.resolve(fileUrl);
+            log.info(files.size() + " FILES FOUND IN " + fileUrl);
+            return new LogFilesPartitioner(files);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Bean Reader of each worker. It reads the file assigned to the worker by our partitioner,
+     * on restart it goes on after the last line committed. With seek it only reads the lines of a plain file
+     * around the windows of our rules.
+     *
+     * @param file  file of the partition
+     * @param rules rules of the execution, see DetectionRule
+     * @param seek  "true" to read only the lines around the windows of the rules
+     * @return our item reader implementation to read one of our .log files
+     * @see FileLoaderStep#readerOf(String, String, String, org.springframework.batch.item.file.LineMapper)
+     */
+    @Bean("multiFileLoaderStepReader")
+    @StepScope
+    public AbstractItemCountingItemStreamItemReader<UserLog> reader(@Value("#{stepExecutionContext['file']}") String file,
+                                                                   @Value("#{jobParameters['rules']}") String rules,
+                                                                   @Value("#{jobParameters['seek']}") String seek) {
+        log.info("LOADING FILE " + file);
+        return FileLoaderStep.readerOf(file, rules, seek, fileLoaderStep.lineMapper());
+    }
+
+    /**
+     * Task executor running our workers, it never loads more files at once than application.job.fileConcurrency.
+     *
+     * @return our task executor
+     */
+    @Bean("multiFileLoaderStepTaskExecutor")
+    public TaskExecutor taskExecutor() {
+        SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("multi-file-loader-");
+        taskExecutor.setConcurrencyLimit(Integer.valueOf(env.getProperty("application.job.fileConcurrency")));
+        return taskExecutor;
+    }
+}
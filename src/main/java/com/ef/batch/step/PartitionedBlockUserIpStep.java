@@ -0,0 +1,92 @@
+package com.ef.batch.step;
+
+import com.ef.batch.partition.IpBucketPartitioner;
+import com.ef.domain.BlockedUser;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.database.JdbcCursorItemReader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+
+/**
+ * <p>Configuration for the partitioned version of our step responsible of blocking IP addresses.
+ * The IP addresses are split into buckets by their hash and each bucket is queried, processed and written into BLOCKED_USER
+ * by its own worker step, all of them running at the same time with their own query and connection.</p>
+ * <p>Number of workers is set in application.properties as application.job.blockPartitions, 1 runs the sequential step instead.
+ * Each worker holds the connection of its cursor plus the one of its chunk, so twice the workers should stay below
+ * the size of the connection pool.</p>
+ * <p>Workers use the query, processor and writer of {@link BlockUserIpStep}.</p>
+ */
+@Configuration
+@PropertySource("classpath:/application.properties")
+public class PartitionedBlockUserIpStep {
+
+    private Environment env;
+    private BlockUserIpStep blockUserIpStep;
+
+    /**
+     * Injecting dependencies
+     *
+     * @param env             to read configuration properties
+     * @param blockUserIpStep to share the query of our sequential step
+     */
+    @Autowired
+    public PartitionedBlockUserIpStep(Environment env, BlockUserIpStep blockUserIpStep) {
+        this.env = env;
+        this.blockUserIpStep = blockUserIpStep;
+    }
+
+    /**
+     * Bean partitioner, it splits the IP addresses into one bucket for each worker.
+     *
+     * @return our partitioner
+     * @see IpBucketPartitioner
+     */
+    @Bean("blockedListLoaderStepPartitioner")
+    public Partitioner partitioner() {
+        return new IpBucketPartitioner();
+    }
+
+    /**
+     * Bean Reader of each worker. It queries the IP addresses of the bucket assigned to the worker by our partitioner
+     * that exceeded the threshold within a specific time.
+     *
+     * @param rules   rules to check, see {@link BlockUserIpStep#reader(String)}
+     * @param bucket  bucket of the worker
+     * @param buckets number of buckets
+     * @return our item reader of a bucket of IP addresses
+     * @see JdbcCursorItemReader
+     */
+    @Bean("partitionedBlockedListLoaderStepReader")
+    @StepScope
+    public JdbcCursorItemReader<BlockedUser> reader(@Value("#{jobParameters['rules']}") String rules,
+                                                    @Value("#{stepExecutionContext['bucket']}") Integer bucket,
+                                                    @Value("#{stepExecutionContext['buckets']}") Integer buckets) {
+        return blockUserIpStep.newReader(rules, bucket, buckets);
+    }
+
+    /**
+     * Task executor running our workers, it never runs more workers at once than our number of partitions.
+     *
+     * @return our task executor
+     */
+    @Bean("blockedListLoaderStepTaskExecutor")
+    public TaskExecutor taskExecutor() {
+        SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("block-ip-");
+        taskExecutor.setConcurrencyLimit(getPartitions());
+        return taskExecutor;
+    }
+
+    /**
+     * @return number of workers querying the IP addresses to block, application.job.blockPartitions
+     */
+    public int getPartitions() {
+        return Integer.valueOf(env.getProperty("application.job.blockPartitions"));
+    }
+}
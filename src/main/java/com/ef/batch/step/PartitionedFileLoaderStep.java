@@ -0,0 +1,119 @@
+package com.ef.batch.step;
+
+import com.ef.batch.partition.LogFilePartitioner;
+import com.ef.batch.reader.ByteRangeItemReader;
+import com.ef.domain.DetectionRule;
+import com.ef.domain.UserLog;
+import com.ef.parser.LogTimeIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * <p>Configuration for the partitioned version of our step responsible of loading a .log file.
+ * The file is split into byte ranges aligned to line breaks and each range is read, processed and written into USER_LOG
+ * by its own worker step, all of them running at the same time.</p>
+ * <p>Number of workers is set in application.properties as application.job.partitions. Each worker holds one connection
+ * while writing its chunk, so it should stay below the size of the connection pool.</p>
+ * <p>Workers use the processor and writer of {@link FileLoaderStep}.</p>
+ */
+@Configuration
+@PropertySource("classpath:/application.properties")
+@Slf4j
+public class PartitionedFileLoaderStep {
+
+    private Environment env;
+    private FileLoaderStep fileLoaderStep;
+
+    /**
+     * Injecting dependencies
+     *
+     * @param env            to read configuration properties
+     * @param fileLoaderStep to share the line mapper of our sequential step
+     */
+    @Autowired
+    public PartitionedFileLoaderStep(Environment env, FileLoaderStep fileLoaderStep) {
+        this.env = env;
+        this.fileLoaderStep = fileLoaderStep;
+    }
+
+    /**
+     * Bean partitioner, it splits our log file into one byte range for each worker.
+     * With seek it only splits the lines around the windows of our rules.
+     *
+     * @param fileUrl file url of our .log file passed at execution time
+     * @param rules   rules of the execution, see DetectionRule
+     * @param seek    "true" to split only the lines around the windows of the rules
+     * @return our partitioner
+     * @see LogFilePartitioner
+     * @see LogTimeIndex
+     */
+    @Bean("fileLoaderStepPartitioner")
+    @StepScope
+    public Partitioner partitioner(@Value("#{jobParameters['fileUrl']}") String fileUrl,
+                                   @Value("#{jobParameters['rules']}") String rules,
+                                   @Value("#{jobParameters['seek']}") String seek) {
+        Path path = Paths.get(fileUrl);
+        if (!Boolean.parseBoolean(seek)) {
+            return new LogFilePartitioner(path);
+        }
+        try {
+            long[] span = DetectionRule.span(DetectionRule.parseAll(rules));
+            long[] range = LogTimeIndex.of(path).range(span[0], span[1]);
+            log.info("SPLITTING BYTES " + range[0] + " TO " + range[1] + " OF " + fileUrl);
+            return new LogFilePartitioner(path, range[0], range[1]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Bean Reader of each worker. It reads the lines of the byte range assigned to the worker by our partitioner.
+     *
+     * @param fileUrl     file url of our .log file passed at execution time
+     * @param startOffset first byte of the range
+     * @param endOffset   byte following the last line of the range
+     * @return our item reader implementation to read a range of our .log file
+     * @see ByteRangeItemReader
+     */
+    @Bean("partitionedFileLoaderStepReader")
+    @StepScope
+    public ByteRangeItemReader<UserLog> reader(@Value("#{jobParameters['fileUrl']}") String fileUrl,
+                                               @Value("#{stepExecutionContext['startOffset']}") Long startOffset,
+                                               @Value("#{stepExecutionContext['endOffset']}") Long endOffset) {
+        log.info("LOADING BYTES " + startOffset + " TO " + endOffset);
+        return new ByteRangeItemReader<>(Paths.get(fileUrl), startOffset, endOffset, fileLoaderStep.lineMapper());
+    }
+
+    /**
+     * Task executor running our workers, it never runs more workers at once than our number of partitions.
+     *
+     * @return our task executor
+     */
+    @Bean("fileLoaderStepTaskExecutor")
+    public TaskExecutor taskExecutor() {
+        SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("file-loader-");
+        taskExecutor.setConcurrencyLimit(getPartitions());
+        return taskExecutor;
+    }
+
+    /**
+     * @return number of workers loading our file, application.job.partitions
+     */
+    public int getPartitions() {
+        return Integer.valueOf(env.getProperty("application.job.partitions"));
+    }
+}
@@ -0,0 +1,161 @@
+package com.ef.batch.writer;
+
+import com.ef.domain.UserLog;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.jdbc.JdbcUpdateAffectedIncorrectNumberOfRowsException;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+
+import javax.sql.DataSource;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * <p>Item writer inserting UserLog items into USER_LOG with MySQL's native bulk loader, LOAD DATA LOCAL INFILE,
+ * which is a lot faster than batched INSERT statements.</p>
+ * <p>No file is involved: the rows are handed to Connector/J as an input stream (setLocalInfileInputStream) that
+ * encodes each item as a tab separated line while the driver sends it to the server.
+ * The statement runs on the connection of the chunk transaction, so a chunk is still loaded or rolled back as a whole.</p>
+ * <p>It needs local_infile enabled in the server and allowLoadLocalInfile in the connection (Connector/J 5.1 default).</p>
+ */
+public class LoadDataItemWriter implements ItemWriter<UserLog> {
+
+    static final String LOAD_DATA = "LOAD DATA LOCAL INFILE 'user_log.tsv' INTO TABLE USER_LOG CHARACTER SET utf8" +
+            " FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n'" +
+            " (id, date, @ip, request_id, status, user_agent_id)" +
+            " SET ip = INET6_ATON(@ip)";
+
+    private final DataSource dataSource;
+
+    /**
+     * @param dataSource our Data source connection
+     */
+    public LoadDataItemWriter(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * It loads all items of the chunk with one LOAD DATA statement.
+     *
+     * @param items items of the chunk
+     * @throws Exception if the statement fails or it did not insert a row for each item
+     */
+    @Override
+    public void write(List<? extends UserLog> items) throws Exception {
+        if (items.isEmpty()) {
+            return;
+        }
+
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try (Statement statement = connection.createStatement()) {
+            statement.unwrap(com.mysql.jdbc.Statement.class).setLocalInfileInputStream(new UserLogInputStream(items.iterator()));
+
+            int rows = statement.executeUpdate(LOAD_DATA);
+            // LOAD DATA turns bad values into warnings, so a row that was skipped must be checked here
+            if (rows != items.size()) {
+                throw new JdbcUpdateAffectedIncorrectNumberOfRowsException(LOAD_DATA, items.size(), rows);
+            }
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    /**
+     * Input stream encoding UserLog items as LOAD DATA rows, one item at a time as the driver reads it.
+     */
+    static class UserLogInputStream extends InputStream {
+
+        private final Iterator<? extends UserLog> items;
+        private final StringBuilder row = new StringBuilder(512);
+        private byte[] bytes = new byte[0];
+        private int position;
+
+        UserLogInputStream(Iterator<? extends UserLog> items) {
+            this.items = items;
+        }
+
+        @Override
+        public int read() {
+            if (!nextRow()) {
+                return -1;
+            }
+            return bytes[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            int read = 0;
+            while (read < length && nextRow()) {
+                int count = Math.min(length - read, bytes.length - position);
+                System.arraycopy(bytes, position, buffer, offset + read, count);
+                position += count;
+                read += count;
+            }
+            return read == 0 ? -1 : read;
+        }
+
+        /**
+         * @return true if there are bytes left to read, encoding the next item if the current row was fully read
+         */
+        private boolean nextRow() {
+            while (position == bytes.length) {
+                if (!items.hasNext()) {
+                    return false;
+                }
+                UserLog item = items.next();
+                row.setLength(0);
+                row.append(item.getId()).append('\t');
+                append(item.getDate()).append('\t');
+                append(item.getIp()).append('\t');
+                row.append(item.getRequestId()).append('\t');
+                row.append(item.getStatus()).append('\t');
+                if (item.getUserAgentId() == null) {
+                    row.append("\\N\n");
+                } else {
+                    row.append(item.getUserAgentId()).append('\n');
+                }
+                bytes = row.toString().getBytes(StandardCharsets.UTF_8);
+                position = 0;
+            }
+            return true;
+        }
+
+        /**
+         * It appends a value escaping the chars LOAD DATA gives a meaning to.
+         */
+        private StringBuilder append(String value) {
+            if (value == null) {
+                return row.append("\\N");
+            }
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '\\':
+                        row.append("\\\\");
+                        break;
+                    case '\t':
+                        row.append("\\t");
+                        break;
+                    case '\n':
+                        row.append("\\n");
+                        break;
+                    case '\r':
+                        row.append("\\r");
+                        break;
+                    case '\0':
+                        row.append("\\0");
+                        break;
+                    default:
+                        row.append(c);
+                }
+            }
+            return row;
+        }
+    }
+}
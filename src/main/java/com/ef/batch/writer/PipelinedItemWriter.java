@@ -0,0 +1,149 @@
+package com.ef.batch.writer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Item writer that hands each chunk to a pool of writer threads and returns right away, so the step goes on reading and
+ * processing chunk N+1 while chunk N is being written. Each writer thread writes its chunk with the delegate in its own
+ * transaction, on its own connection of the pool.</p>
+ * <p>At most writers + queueCapacity chunks are in flight. When the database falls behind, {@link #write(List)} blocks
+ * until a writer is done (backpressure), so memory stays bounded no matter how fast the file is read.</p>
+ * <p>A chunk is committed when its writer commits, not with the step chunk. A failed write makes the next call to write
+ * fail, and the step is marked as FAILED after waiting for every pending write when the step ends.</p>
+ *
+ * @param <T> type of the items written
+ */
+@Slf4j
+public class PipelinedItemWriter<T> implements ItemWriter<T>, StepExecutionListener {
+
+    private final ItemWriter<T> delegate;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicInteger waits = new AtomicInteger();
+
+    /**
+     * @param delegate           writer used by each writer thread, it must not be step scoped since it runs outside of the step thread
+     * @param transactionManager transaction manager of our data source
+     * @param writers            number of writer threads, each one holds a connection while writing
+     * @param queueCapacity      number of chunks that can wait for a writer before the step blocks
+     */
+    public PipelinedItemWriter(ItemWriter<T> delegate, PlatformTransactionManager transactionManager, int writers, int queueCapacity) {
+        this.delegate = delegate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxInFlight = writers + queueCapacity;
+        this.inFlight = new Semaphore(maxInFlight);
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(writers, runnable -> {
+            Thread thread = new Thread(runnable, "pipelined-writer-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * It queues the chunk to be written by a writer thread, waiting if too many chunks are already in flight.
+     *
+     * @param items items of the chunk
+     * @throws Exception if a previous chunk could not be written
+     */
+    @Override
+    public void write(List<? extends T> items) throws Exception {
+        checkFailure();
+        if (items.isEmpty()) {
+            return;
+        }
+
+        if (!inFlight.tryAcquire()) {
+            waits.incrementAndGet();
+            inFlight.acquire();
+        }
+        // the step reuses its list of items, so the writer gets its own copy
+        List<T> chunk = new ArrayList<>(items);
+        try {
+            executor.execute(() -> {
+                try {
+                    transactionTemplate.execute(status -> {
+                        try {
+                            delegate.write(chunk);
+                        } catch (RuntimeException e) {
+                            throw e;
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                        return null;
+                    });
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    /**
+     * It waits for every pending chunk to be written and fails the step if any of them could not be.
+     *
+     * @param stepExecution our step execution
+     * @return FAILED if a chunk could not be written, null otherwise
+     */
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        try {
+            inFlight.acquire(maxInFlight);
+            inFlight.release(maxInFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } finally {
+            executor.shutdown();
+        }
+
+        log.info("PIPELINED WRITER WAITED FOR THE DATABASE " + waits.get() + " TIMES");
+
+        Throwable t = failure.get();
+        if (t != null) {
+            log.error("Pipelined write failed: " + t.getMessage());
+            stepExecution.setStatus(BatchStatus.FAILED);
+            stepExecution.addFailureException(t);
+            return ExitStatus.FAILED.addExitDescription(t);
+        }
+        return null;
+    }
+
+    private void checkFailure() throws Exception {
+        Throwable t = failure.get();
+        if (t instanceof Exception) {
+            throw (Exception) t;
+        }
+        if (t != null) {
+            throw new IllegalStateException("Pipelined write failed", t);
+        }
+    }
+}
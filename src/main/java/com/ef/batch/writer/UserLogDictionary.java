@@ -0,0 +1,130 @@
+package com.ef.batch.writer;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Dictionary table of the values of a USER_LOG column (ID, VALUE), ex: USER_LOG_REQUEST, so USER_LOG only holds the id
+ * of each value. Rows are only ever added, never updated nor deleted, so an id once read stays valid.</p>
+ * <p>The ids of the values used most recently are kept in a bounded cache shared by every writer. Values missing from it
+ * are inserted with one multi row INSERT IGNORE per {@value #BATCH_SIZE} values and their ids read back with one query,
+ * in a transaction of their own: entries are committed even if the chunk that added them is rolled back, so every id
+ * in the cache is visible to every other writer. It takes a second connection of the pool only while it runs,
+ * the pool is sized for it, see {@link com.ef.config.Configurations#dataSource()}.</p>
+ * <p>Values are stored as their UTF-8 bytes and compared byte by byte, so values differing only in trailing spaces
+ * or holding 4 byte characters get ids of their own.</p>
+ * <p>It is thread safe, the workers of the partitioned loaders and the writer threads of the pipelined one share it.</p>
+ */
+public class UserLogDictionary {
+
+    static final int BATCH_SIZE = 500;
+
+    private final String table;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<String, Integer> cache;
+
+    /**
+     * @param dataSource our Data source connection
+     * @param table      dictionary table
+     * @param capacity   number of ids kept in the cache
+     */
+    public UserLogDictionary(DataSource dataSource, String table, int capacity) {
+        this.table = table;
+        this.jdbcTemplate = new JdbcTemplate();
+        this.jdbcTemplate.setDataSource(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager();
+        transactionManager.setDataSource(dataSource);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.cache = new LruCache<>(capacity);
+    }
+
+    /**
+     * It gives the ids of some values, adding to the table the ones it does not have yet.
+     *
+     * @param values distinct values, not null
+     * @return id of each value
+     * @throws IllegalStateException if a value could not be added, ex: it is longer than the column
+     */
+    public Map<String, Integer> ids(Collection<String> values) {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        synchronized (cache) {
+            for (String value : values) {
+                Integer id = cache.get(value);
+                if (id == null) {
+                    missing.add(value);
+                } else {
+                    ids.put(value, id);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return ids;
+        }
+
+        // added in value order so writers adding the same values at the same time lock them in the same order
+        Collections.sort(missing);
+        Map<String, Integer> added = transactionTemplate.execute(status -> add(missing));
+        synchronized (cache) {
+            cache.putAll(added);
+        }
+        ids.putAll(added);
+        return ids;
+    }
+
+    private Map<String, Integer> add(List<String> values) {
+        Map<String, Integer> ids = new HashMap<>();
+        for (int from = 0; from < values.size(); from += BATCH_SIZE) {
+            List<String> batch = values.subList(from, Math.min(values.size(), from + BATCH_SIZE));
+            Object[] args = batch.stream().map(value -> value.getBytes(StandardCharsets.UTF_8)).toArray();
+
+            // values added meanwhile by another writer are ignored, the query reads their id
+            jdbcTemplate.update("INSERT IGNORE INTO " + table + " (value) VALUES "
+                    + String.join(",", Collections.nCopies(batch.size(), "(?)")), args);
+            jdbcTemplate.query("SELECT id, value FROM " + table + " WHERE value IN ("
+                    + String.join(",", Collections.nCopies(batch.size(), "?")) + ")", args, rs -> {
+                ids.put(new String(rs.getBytes(2), StandardCharsets.UTF_8), rs.getInt(1));
+            });
+        }
+        for (String value : values) {
+            if (!ids.containsKey(value)) {
+                throw new IllegalStateException("value could not be added to " + table + ": " + value);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Map that drops its least recently used entry once it holds more than capacity entries.
+     */
+    private static final class LruCache<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        LruCache(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > capacity;
+        }
+    }
+}
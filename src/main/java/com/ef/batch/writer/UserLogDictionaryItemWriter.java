@@ -0,0 +1,61 @@
+package com.ef.batch.writer;
+
+import com.ef.domain.UserLog;
+import org.springframework.batch.item.ItemWriter;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Item writer giving each UserLog of a chunk the ids of its request and user agent, adding the values that are new to
+ * USER_LOG_REQUEST and USER_LOG_USER_AGENT. It runs before the writer of USER_LOG, which only inserts the ids.</p>
+ * <p>A chunk only has a handful of distinct requests and user agents, and most of them are in the cache of the dictionary,
+ * so a chunk usually resolves its ids without going to the database.</p>
+ *
+ * @see UserLogDictionary
+ */
+public class UserLogDictionaryItemWriter implements ItemWriter<UserLog> {
+
+    private final UserLogDictionary requests;
+    private final UserLogDictionary userAgents;
+
+    /**
+     * @param requests   dictionary of USER_LOG_REQUEST
+     * @param userAgents dictionary of USER_LOG_USER_AGENT
+     */
+    public UserLogDictionaryItemWriter(UserLogDictionary requests, UserLogDictionary userAgents) {
+        this.requests = requests;
+        this.userAgents = userAgents;
+    }
+
+    /**
+     * It sets the request and user agent ids of the items of the chunk.
+     *
+     * @param items items of the chunk
+     */
+    @Override
+    public void write(List<? extends UserLog> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+
+        // interned values are the same String, so their hash is only computed once
+        Set<String> requestValues = new HashSet<>();
+        Set<String> userAgentValues = new HashSet<>();
+        for (UserLog item : items) {
+            requestValues.add(item.getRequest());
+            if (item.getUserAgent() != null) {
+                userAgentValues.add(item.getUserAgent());
+            }
+        }
+
+        Map<String, Integer> requestIds = requests.ids(requestValues);
+        Map<String, Integer> userAgentIds = userAgents.ids(userAgentValues);
+        for (UserLog item : items) {
+            item.setRequestId(requestIds.get(item.getRequest()));
+            item.setUserAgentId(item.getUserAgent() == null ? null : userAgentIds.get(item.getUserAgent()));
+        }
+    }
+}
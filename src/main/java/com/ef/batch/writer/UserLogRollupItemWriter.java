@@ -0,0 +1,97 @@
+package com.ef.batch.writer;
+
+import com.ef.domain.UserLog;
+import com.ef.parser.LogDates;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>Item writer keeping USER_LOG_ROLLUP up to date: the number of requests of each IP address in each minute.
+ * The items of a chunk are counted by (minute, IP) and each count is added to its row with one batched upsert,
+ * so the rollup grows with the number of distinct IP addresses per minute instead of the number of lines.</p>
+ * <p>It runs in the chunk transaction, next to the writer of USER_LOG. Rows are upserted in key order so writers
+ * of concurrent chunks (partitioned and pipelined loaders) lock them in the same order.</p>
+ */
+public class UserLogRollupItemWriter implements ItemWriter<UserLog> {
+
+    static final String UPSERT = "INSERT INTO USER_LOG_ROLLUP (bucket, ip, requests) VALUES (?, INET6_ATON(?), ?)" +
+            " ON DUPLICATE KEY UPDATE requests = requests + VALUES(requests)";
+
+    private static final long MINUTE = 60_000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param dataSource our Data source connection
+     */
+    public UserLogRollupItemWriter(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * It adds the requests of the chunk to the rollup.
+     *
+     * @param items items of the chunk
+     */
+    @Override
+    public void write(List<? extends UserLog> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+
+        Map<Bucket, int[]> counts = new TreeMap<>();
+        for (UserLog item : items) {
+            // minute of the date as stored in USER_LOG, rounded to the second
+            long bucket = Math.floorDiv(LogDates.roundToSecond(item.getTimestamp()), MINUTE) * MINUTE;
+            counts.computeIfAbsent(new Bucket(bucket, item.getIp()), key -> new int[1])[0]++;
+        }
+
+        List<Map.Entry<Bucket, int[]>> rows = new ArrayList<>(counts.entrySet());
+        jdbcTemplate.batchUpdate(UPSERT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Map.Entry<Bucket, int[]> row = rows.get(i);
+                ps.setString(1, LogDates.format(row.getKey().minute));
+                ps.setString(2, row.getKey().ip);
+                ps.setInt(3, row.getValue()[0]);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+    }
+
+    /**
+     * Minute and IP address of a rollup row, ordered by minute and then by IP address.
+     */
+    private static final class Bucket implements Comparable<Bucket> {
+
+        private static final Comparator<Bucket> ORDER = Comparator.<Bucket>comparingLong(bucket -> bucket.minute)
+                .thenComparing(bucket -> bucket.ip);
+
+        private final long minute;
+        private final String ip;
+
+        private Bucket(long minute, String ip) {
+            this.minute = minute;
+            this.ip = ip;
+        }
+
+        @Override
+        public int compareTo(Bucket other) {
+            return ORDER.compare(this, other);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.ef.config;
+
+import liquibase.integration.spring.SpringLiquibase;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ResourceLoaderAware;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.StreamUtils;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * It runs SpringLiquibase only when the changelog changed since it was last applied.
+ * <p>Liquibase scans the classpath for its services, parses the whole changelog and locks DATABASECHANGELOGLOCK on every run
+ * even when there is nothing to apply. Once it applies the changelog, the SHA-1 of its content is stored in SCHEMA_CHECKSUM;
+ * next runs compare it with the changelog they carry with a single query, and Liquibase is not even loaded when they match.</p>
+ *
+ * @see SpringLiquibase
+ */
+@Slf4j
+public class ChecksumLiquibase implements InitializingBean, ResourceLoaderAware {
+
+    private final DataSource dataSource;
+    private final String changeLog;
+    private ResourceLoader resourceLoader;
+
+    /**
+     * @param dataSource our Data source connection
+     * @param changeLog  location of the changelog, ex: classpath:changelog/changelog-master.sql
+     */
+    public ChecksumLiquibase(DataSource dataSource, String changeLog) {
+        this.dataSource = dataSource;
+        this.changeLog = changeLog;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setResourceLoader(ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
+
+    /**
+     * It applies the changelog with SpringLiquibase if its checksum is not the one stored.
+     *
+     * @throws Exception if the changelog could not be read or applied
+     */
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        long start = System.currentTimeMillis();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        String checksum = checksum();
+
+        if (checksum.equals(storedChecksum(jdbcTemplate))) {
+            log.info("SCHEMA IS CURRENT, LIQUIBASE SKIPPED");
+            StartupReport.mark("liquibase (skipped)", start);
+            return;
+        }
+
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(dataSource);
+        liquibase.setChangeLog(changeLog);
+        liquibase.setResourceLoader(resourceLoader);
+        liquibase.afterPropertiesSet();
+
+        jdbcTemplate.update("DELETE FROM SCHEMA_CHECKSUM WHERE CHANGELOG = ?", changeLog);
+        jdbcTemplate.update("INSERT INTO SCHEMA_CHECKSUM (CHANGELOG, CHECKSUM) VALUES (?, ?)", changeLog, checksum);
+        StartupReport.mark("liquibase", start);
+    }
+
+    /**
+     * @return checksum stored for our changelog, null if there is none or SCHEMA_CHECKSUM does not exist yet
+     */
+    private String storedChecksum(JdbcTemplate jdbcTemplate) {
+        try {
+            List<String> checksums = jdbcTemplate.queryForList("SELECT CHECKSUM FROM SCHEMA_CHECKSUM WHERE CHANGELOG = ?",
+                    String.class, changeLog);
+            return checksums.isEmpty() ? null : checksums.get(0);
+        } catch (DataAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return SHA-1 of the content of our changelog
+     */
+    private String checksum() throws IOException, NoSuchAlgorithmException {
+        try (InputStream content = resourceLoader.getResource(changeLog).getInputStream()) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(StreamUtils.copyToByteArray(content));
+            return String.format("%040x", new BigInteger(1, digest.digest()));
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.ef.config;
 
 import com.zaxxer.hikari.HikariDataSource;
 import liquibase.integration.spring.SpringLiquibase;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -21,6 +22,11 @@ import javax.sql.DataSource;
 @PropertySource("classpath:/application.properties")
 public class Configurations {
 
+    /**
+     * Location of our Liquibase changelog
+     */
+    public static final String CHANGELOG = "classpath:changelog/changelog-master.sql";
+
     @Value("${spring.datasource.url}")
     private String jdbcUrl;
 
@@ -35,6 +41,10 @@ public class Configurations {
 
     /**
      * Creation of data source. It reads url, username and password from our application.properties
+     * <p>Each worker of the loaders holds a connection for its chunk and takes a second one while it adds values
+     * to the dictionary tables, so the pool holds two connections for each worker that can run at the same time,
+     * for each job the server can run at the same time, plus one for the job repository of each job.
+     * It never holds less than the 10 connections of the Hikari default.</p>
      *
      * @return an instance of DataSource
      * @see DataSource
@@ -45,9 +55,22 @@ public class Configurations {
         ds.setJdbcUrl(env.getProperty("datasource.url"));
         ds.setUsername(env.getProperty("datasource.username"));
         ds.setPassword(env.getProperty("datasource.password"));
+        ds.setMaximumPoolSize(maximumPoolSize());
         return ds;
     }
 
+    /**
+     * @return connections our data source needs at most, see {@link #dataSource()}
+     */
+    private int maximumPoolSize() {
+        int workers = Math.max(Math.max(env.getProperty("application.job.partitions", Integer.class, 1),
+                env.getProperty("application.job.fileConcurrency", Integer.class, 1)),
+                Math.max(env.getProperty("application.job.blockPartitions", Integer.class, 1),
+                        env.getProperty("application.job.writerThreads", Integer.class, 0) + 1));
+        int jobs = Math.max(1, env.getProperty("application.server.threads", Integer.class, 1));
+        return Math.max(10, jobs * (2 * workers + 1));
+    }
+
     /**
      * Creation of JdbcTemplate. It simplifies the use of JDBC and helps to avoid common errors.
      *
@@ -63,17 +86,21 @@ public class Configurations {
 
     /**
      * Creation of SpringLiquibase. It loads a .sql file to run.
+     * With application.startup.fast it only runs when the changelog changed since it was last applied.
      *
      * @param dataSource an instance of our DataSource needed for the creation.
-     * @return an instance of SpringLiquibase
+     * @return an instance of SpringLiquibase, or of ChecksumLiquibase with application.startup.fast
      * @see SpringLiquibase
+     * @see ChecksumLiquibase
      */
     @Bean
-    public SpringLiquibase liquibase(DataSource dataSource) {
+    public InitializingBean liquibase(DataSource dataSource) {
+        if (env.getProperty("application.startup.fast", Boolean.class, false)) {
+            return new ChecksumLiquibase(dataSource, CHANGELOG);
+        }
         SpringLiquibase sl = new SpringLiquibase();
         sl.setDataSource(dataSource);
-        sl.setChangeLog("classpath:changelog/changelog-master.sql");
+        sl.setChangeLog(CHANGELOG);
         return sl;
     }
-}
-
+}
\ No newline at end of file
@@ -1,14 +1,37 @@
 package com.ef.config;
 
+import com.ef.batch.decider.LoaderModeDecider;
 import com.ef.batch.job.ParserJob;
+import com.ef.batch.listener.BlockedUserCollector;
 import com.ef.batch.listener.JobCompletionNotificationListener;
+import com.ef.batch.listener.StepMetricsListener;
 import com.ef.batch.step.BlockUserIpStep;
 import com.ef.batch.step.EmptyUserLogTableStep;
 import com.ef.batch.step.FileLoaderStep;
+import com.ef.batch.step.IncrementalFileLoaderStep;
+import com.ef.batch.step.MultiFileLoaderStep;
+import com.ef.batch.step.PartitionedBlockUserIpStep;
+import com.ef.batch.step.PartitionedFileLoaderStep;
+import com.ef.engine.ApproximateDetectionEngine;
+import com.ef.engine.MemoryDetectionEngine;
+import com.ef.engine.OffHeapDetectionEngine;
+import com.ef.engine.PipelineDetectionEngine;
+import com.ef.engine.SegmentDetectionEngine;
+import com.ef.engine.SlidingWindowDetectionEngine;
+import com.ef.index.BlockedAddressIndexLoader;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.io.support.ResourcePropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 /**
  * Here we register all of our spring configuration classes. It also contains a Spring context object.
+ * <p>With application.startup.fast every bean but our Liquibase one is created the first time it is used instead of on refresh,
+ * so a run only builds what it needs (ex: the memory engine never builds ParserJob), and Liquibase is skipped
+ * when the schema is current.</p>
  *
  * @author yinfante
  */
@@ -21,16 +44,51 @@ public class SpringRegistry {
      * Registering all our spring configuration classes.
      */
     static {
+        long start = System.currentTimeMillis();
         context = new AnnotationConfigApplicationContext();
+        ConfigurableEnvironment env = context.getEnvironment();
+        try {
+            // read before refresh, system properties (-D) still win over the file
+            env.getPropertySources().addLast(new ResourcePropertySource("classpath:/application.properties"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        StartupReport.setTargetMillis(env.getProperty("application.startup.targetMillis", Long.class, Long.MAX_VALUE));
+        if (env.getProperty("application.startup.fast", Boolean.class, false)) {
+            context.addBeanFactoryPostProcessor(beanFactory -> {
+                for (String name : beanFactory.getBeanDefinitionNames()) {
+                    BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                    // nothing depends on Liquibase, it would never run if it was lazy
+                    if (!"liquibase".equals(name)) {
+                        definition.setLazyInit(true);
+                    }
+                }
+            });
+        }
 
         context.register(EmptyUserLogTableStep.class);
         context.register(ParserJob.class);
         context.register(Configurations.class);
         context.register(JobCompletionNotificationListener.class);
+        context.register(BlockedUserCollector.class);
+        context.register(StepMetricsListener.class);
         context.register(BlockUserIpStep.class);
+        context.register(PartitionedBlockUserIpStep.class);
         context.register(FileLoaderStep.class);
+        context.register(PartitionedFileLoaderStep.class);
+        context.register(IncrementalFileLoaderStep.class);
+        context.register(MultiFileLoaderStep.class);
+        context.register(LoaderModeDecider.class);
+        context.register(MemoryDetectionEngine.class);
+        context.register(SlidingWindowDetectionEngine.class);
+        context.register(ApproximateDetectionEngine.class);
+        context.register(SegmentDetectionEngine.class);
+        context.register(PipelineDetectionEngine.class);
+        context.register(OffHeapDetectionEngine.class);
+        context.register(BlockedAddressIndexLoader.class);
 
         refreshContext();
+        StartupReport.mark("spring context", start);
     }
 
     /**
@@ -0,0 +1,80 @@
+package com.ef.config;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * It times the startup of the program until the first line of the log is read, and logs the breakdown once that line is read:
+ * ex: STARTUP: jvm 180 ms, liquibase (skipped) 25 ms, spring context 1400 ms, first line read 1650 ms after JVM start (target 3000 ms).
+ * <p>The target is application.startup.targetMillis, going over it is logged as a warning.</p>
+ */
+@Slf4j
+public final class StartupReport {
+
+    private static final long JVM_START = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+    // time taken by each phase, in the order they ended
+    private static final Map<String, Long> phases = new LinkedHashMap<>();
+    private static volatile boolean firstLineRead;
+    private static long targetMillis = Long.MAX_VALUE;
+
+    private StartupReport() {
+    }
+
+    /**
+     * It records the time taken by the JVM to get to our main method.
+     */
+    public static void mainStarted() {
+        mark("jvm", JVM_START);
+    }
+
+    /**
+     * It records the time taken by a phase of the startup.
+     *
+     * @param phase name of the phase, ex: spring context
+     * @param start System.currentTimeMillis() when the phase started
+     */
+    public static synchronized void mark(String phase, long start) {
+        if (!firstLineRead) {
+            phases.put(phase, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * @param targetMillis time from JVM start to the first line read over which a warning is logged
+     */
+    public static void setTargetMillis(long targetMillis) {
+        StartupReport.targetMillis = targetMillis;
+    }
+
+    /**
+     * It is called every time a reader reads the first line of a log, only the first call logs the breakdown.
+     */
+    public static void firstLineRead() {
+        if (firstLineRead) {
+            return;
+        }
+        synchronized (StartupReport.class) {
+            if (firstLineRead) {
+                return;
+            }
+            firstLineRead = true;
+
+            long elapsed = System.currentTimeMillis() - JVM_START;
+            StringBuilder report = new StringBuilder("STARTUP: ");
+            phases.forEach((phase, millis) -> report.append(phase).append(' ').append(millis).append(" ms, "));
+            report.append("first line read ").append(elapsed).append(" ms after JVM start");
+
+            if (targetMillis == Long.MAX_VALUE) {
+                log.info(report.toString());
+            } else if (elapsed <= targetMillis) {
+                log.info(report.append(" (target ").append(targetMillis).append(" ms)").toString());
+            } else {
+                log.warn(report.append(" OVER TARGET OF ").append(targetMillis).append(" ms").toString());
+            }
+        }
+    }
+}
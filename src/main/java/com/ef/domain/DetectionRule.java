@@ -0,0 +1,126 @@
+package com.ef.domain;
+
+import com.ef.parser.LogDates;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * One check of the IP addresses to block: more than threshold requests between startDate and 1 duration later.
+ * <p>Several rules can be checked with the same load of the log, they are written one per line or separated by ';',
+ * each one as startDate,duration,threshold, ex: 2017-01-01.13:00:00,hourly,100</p>
+ */
+@Data
+public class DetectionRule {
+
+    private final String startDate;
+    // as expected by DetectionWindow, ex: HOUR, DAY or 15m
+    private final String duration;
+    private final long threshold;
+
+    /**
+     * It parses a rule written as startDate,duration,threshold.
+     *
+     * @param rule the rule, ex: 2017-01-01.13:00:00,hourly,100
+     * @return the rule
+     */
+    public static DetectionRule parse(String rule) {
+        String[] fields = rule.split(",");
+        if (fields.length != 3) {
+            throw new IllegalArgumentException("rules must follow format startDate,duration,threshold: " + rule);
+        }
+        try {
+            return new DetectionRule(fields[0].trim(), durationOf(fields[1].trim()), Long.parseLong(fields[2].trim()));
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("threshold must be a number: " + rule);
+        }
+    }
+
+    /**
+     * It parses a list of rules separated by ';' or line breaks, empty lines and lines starting with # are skipped.
+     *
+     * @param rules the rules
+     * @return the rules in the same order
+     */
+    public static List<DetectionRule> parseAll(String rules) {
+        List<DetectionRule> parsed = new ArrayList<>();
+        for (String rule : rules.split("[;\\r\\n]+")) {
+            rule = rule.trim();
+            if (!rule.isEmpty() && !rule.startsWith("#")) {
+                parsed.add(parse(rule));
+            }
+        }
+        if (parsed.isEmpty()) {
+            throw new IllegalArgumentException("rules must have at least one rule");
+        }
+        return parsed;
+    }
+
+    /**
+     * It writes rules the way {@link #parseAll(String)} reads them, ex: to pass them as a job parameter.
+     *
+     * @param rules the rules
+     * @return the rules separated by ';'
+     */
+    public static String format(List<DetectionRule> rules) {
+        return rules.stream()
+                .map(rule -> rule.startDate + "," + rule.duration + "," + rule.threshold)
+                .collect(Collectors.joining(";"));
+    }
+
+    /**
+     * It gives the period of time covering the windows of several rules, ex: to read only the lines of the log they count.
+     *
+     * @param rules the rules
+     * @return wall clock epoch millis of the earliest start and of the latest end
+     */
+    public static long[] span(List<DetectionRule> rules) {
+        long[] span = {Long.MAX_VALUE, Long.MIN_VALUE};
+        for (DetectionRule rule : rules) {
+            DetectionWindow window = rule.window();
+            span[0] = Math.min(span[0], window.getStart());
+            span[1] = Math.max(span[1], window.getEnd());
+        }
+        return span;
+    }
+
+    /**
+     * It turns a duration passed as execution argument into the one DetectionWindow expects.
+     *
+     * @param duration "hourly", "daily" or any other duration DetectionWindow takes
+     * @return the duration, ex: HOUR for "hourly"
+     */
+    public static String durationOf(String duration) {
+        if (duration == null) {
+            return null;
+        }
+        switch (duration) {
+            case "hourly":
+                return "HOUR";
+            case "daily":
+                return "DAY";
+        }
+        return duration;
+    }
+
+    /**
+     * @return the period of time of this rule
+     */
+    public DetectionWindow window() {
+        return DetectionWindow.of(startDate, duration);
+    }
+
+    /**
+     * It gives the comment of the BLOCKED_USER rows of this rule.
+     *
+     * @param withStartDate true to tell apart the rules of a rule set that only differ in their start date
+     * @return the comment, ex: blocked because it exceeded the threshold of 100 requests in 1 HOUR
+     */
+    public String comment(boolean withStartDate) {
+        DetectionWindow window = window();
+        String comment = "blocked because it exceeded the threshold of " + threshold + " requests in " + window.describe();
+        return withStartDate ? comment + " from " + LogDates.format(window.getStart()) : comment;
+    }
+}
@@ -0,0 +1,149 @@
+package com.ef.domain;
+
+import com.ef.parser.LogDates;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Period of time in which requests are counted, from startDate to exactly 1 duration later (both included)
+ * the same way the query of BlockUserIpStep does with BETWEEN.
+ */
+@Data
+public class DetectionWindow {
+
+    // ex: 15m, 6h, 2d
+    private static final Pattern AMOUNT_OF_UNIT = Pattern.compile("(\\d{1,9})([smhdw])");
+
+    private final long start;
+    private final long end;
+    // amount and unit, ex: 1 HOUR or 15 MINUTE
+    private final String duration;
+
+    /**
+     * It creates a window from the job parameters.
+     *
+     * @param startDate start date time, ex: 2017-01-01.13:00:00
+     * @param duration  duration as returned by {@link ParserDTO#getDuration()}, ex: HOUR or DAY,
+     *                  or an amount followed by s, m, h, d or w, ex: 15m or 6h
+     * @return the window
+     */
+    public static DetectionWindow of(String startDate, String duration) {
+        long start = LogDates.parseMillis(startDate);
+        if (start == LogDates.INVALID) {
+            throw new IllegalArgumentException("startDate must follow format yyyy-MM-dd.HH:mm:ss");
+        }
+
+        Amount amount = Amount.of(duration);
+        LocalDateTime end = LogDates.toLocalDateTime(start).plus(amount.amount, amount.unit);
+        return new DetectionWindow(start, LogDates.toMillis(end), amount.toString());
+    }
+
+    /**
+     * It gives the length of a duration, for windows that do not have a fixed start.
+     *
+     * @param duration duration as returned by {@link ParserDTO#getDuration()}
+     * @return length of the duration in millis
+     */
+    public static long lengthOf(String duration) {
+        Amount amount = Amount.of(duration);
+        // log dates have no time zone, so days and weeks always last the same, months and years do not
+        if (amount.unit.compareTo(ChronoUnit.WEEKS) > 0) {
+            throw new IllegalArgumentException("duration must have a fixed length, " + duration + " does not");
+        }
+        return amount.unit.getDuration().multipliedBy(amount.amount).toMillis();
+    }
+
+    /**
+     * @param duration duration as returned by {@link ParserDTO#getDuration()}
+     * @return description of the duration used in BLOCKED_USER comment, ex: 1 HOUR
+     */
+    public static String describe(String duration) {
+        return Amount.of(duration).toString();
+    }
+
+    /**
+     * @param millis wall clock epoch millis of a log, already rounded to the second as stored in USER_LOG
+     * @return true if the log falls within the window
+     */
+    public boolean contains(long millis) {
+        return millis >= start && millis <= end;
+    }
+
+    /**
+     * @return description of the window used in BLOCKED_USER comment, ex: 1 HOUR
+     */
+    public String describe() {
+        return duration;
+    }
+
+    /**
+     * Amount of a unit, as in MySQL's INTERVAL.
+     */
+    private static final class Amount {
+
+        private final int amount;
+        private final String unitName;
+        private final ChronoUnit unit;
+
+        private Amount(int amount, String unitName) {
+            this.amount = amount;
+            this.unitName = unitName;
+            this.unit = unitOf(unitName);
+        }
+
+        private static Amount of(String duration) {
+            Matcher matcher = AMOUNT_OF_UNIT.matcher(duration);
+            if (!matcher.matches()) {
+                return new Amount(1, duration);
+            }
+            int amount = Integer.parseInt(matcher.group(1));
+            if (amount == 0) {
+                throw new IllegalArgumentException("duration must be greater than 0");
+            }
+            return new Amount(amount, unitName(matcher.group(2)));
+        }
+
+        @Override
+        public String toString() {
+            return amount + " " + unitName;
+        }
+    }
+
+    private static String unitName(String abbreviation) {
+        switch (abbreviation) {
+            case "s":
+                return "SECOND";
+            case "m":
+                return "MINUTE";
+            case "h":
+                return "HOUR";
+            case "d":
+                return "DAY";
+        }
+        return "WEEK";
+    }
+
+    private static ChronoUnit unitOf(String duration) {
+        switch (duration) {
+            case "SECOND":
+                return ChronoUnit.SECONDS;
+            case "MINUTE":
+                return ChronoUnit.MINUTES;
+            case "HOUR":
+                return ChronoUnit.HOURS;
+            case "DAY":
+                return ChronoUnit.DAYS;
+            case "WEEK":
+                return ChronoUnit.WEEKS;
+            case "MONTH":
+                return ChronoUnit.MONTHS;
+            case "YEAR":
+                return ChronoUnit.YEARS;
+        }
+        throw new IllegalArgumentException("duration must be \"hourly\", \"daily\" or an amount of s, m, h, d or w, ex: 15m");
+    }
+}
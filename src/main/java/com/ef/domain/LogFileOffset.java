@@ -0,0 +1,25 @@
+package com.ef.domain;
+
+import lombok.Data;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Entity representation of LOG_FILE_OFFSET table. It tells which log file USER_LOG holds and up to which byte it was loaded,
+ * so the incremental loader only loads the lines appended since then.
+ */
+@Data
+@Entity
+public class LogFileOffset {
+
+    @Id
+    private String fileUrl;
+    // file key of the file system (device and inode on unix), it changes when the log is rotated
+    private String fileKey;
+    // SHA-1 of the first line, it changes when the log is rotated in place (copytruncate)
+    private String firstLineHash;
+    // offset of the byte following the last line loaded into USER_LOG
+    private long byteOffset;
+
+}
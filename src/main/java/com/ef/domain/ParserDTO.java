@@ -2,6 +2,9 @@ package com.ef.domain;
 
 import lombok.Data;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * DTO object
  *
@@ -10,10 +13,24 @@ import lombok.Data;
 @Data
 public class ParserDTO {
 
+    public static final String BATCH_ENGINE = "batch";
+
     private String fileUrl;
     private String startDate;
     private String duration;
     private long threshold;
+    // "batch" runs ParserJob, any other value names the DetectionEngine to run
+    private String engine = BATCH_ENGINE;
+    // step loading the log when engine is "batch", see LoaderModeDecider
+    private String loader = "chunk";
+    // rules checked instead of startDate, duration and threshold, null when there is only one
+    private List<DetectionRule> rules;
+    // file where a snapshot of the blocked address index is written after the run, null for none
+    private String snapshot;
+    // restart the last run of the same log if it failed, instead of starting a new one
+    private boolean restart;
+    // read only the lines of the log around the windows of the rules, see LogTimeIndex
+    private boolean seek;
 
     public ParserDTO(String fileUrl, String startDate, String duration, long threshold) {
         this.fileUrl = fileUrl;
@@ -23,13 +40,24 @@ public class ParserDTO {
     }
 
     public String getDuration() {
-        switch (duration) {
-            case "hourly":
-                return "HOUR";
-            case "daily":
-                return "DAY";
+        return DetectionRule.durationOf(duration);
+    }
+
+    /**
+     * @return the rules to check, the one made of startDate, duration and threshold if no rule set was given
+     */
+    public List<DetectionRule> getRules() {
+        if (rules != null) {
+            return rules;
         }
-        return duration;
+        return Collections.singletonList(new DetectionRule(startDate, getDuration(), threshold));
+    }
+
+    /**
+     * @return true if this execution runs ParserJob, false if it runs a DetectionEngine
+     */
+    public boolean isBatchEngine() {
+        return BATCH_ENGINE.equals(engine);
     }
 
 }
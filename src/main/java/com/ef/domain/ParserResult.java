@@ -0,0 +1,26 @@
+package com.ef.domain;
+
+import lombok.Data;
+import org.springframework.batch.core.BatchStatus;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of one run of our Parser: its status and the IP addresses it blocked.
+ */
+@Data
+public class ParserResult {
+
+    private final BatchStatus status;
+    // rows inserted into BLOCKED_USER by the run, empty if it failed
+    private final List<BlockedUser> blockedUsers;
+
+    /**
+     * @param status status of a run that blocked nothing, ex: a failed one
+     * @return the result
+     */
+    public static ParserResult of(BatchStatus status) {
+        return new ParserResult(status, Collections.emptyList());
+    }
+}
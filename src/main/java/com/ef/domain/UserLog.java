@@ -4,6 +4,7 @@ import lombok.Data;
 
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Transient;
 
 /**
  * Entity representation of USER_LOG table. This table holds all logs read from the log file
@@ -17,9 +18,31 @@ public class UserLog {
     @Id
     private long id;
     private String date;
+    // stored as VARBINARY(16) with INET6_ATON
     private String ip;
+    // id of the request in USER_LOG_REQUEST
+    private int requestId;
+    private int status;
+    // id of the user agent in USER_LOG_USER_AGENT
+    private Integer userAgentId;
+
+    // request and user agent as read from the log, shared by the items of the same value, see StringInterner
+    @Transient
     private String request;
-    private String status;
+    @Transient
     private String userAgent;
 
+    // date parsed as wall clock epoch millis, see LogDates
+    @Transient
+    private long timestamp;
+    // ip packed in the lower 32 bits, or IpAddresses.NOT_IPV4 if it is not an IPv4 address
+    @Transient
+    private long ipv4;
+    // the line could not be parsed, it is counted and filtered instead of inserted
+    @Transient
+    private boolean malformed;
+    // chars of the line plus its line break, the bytes read for the ASCII lines of a web server log
+    @Transient
+    private int length;
+
 }
@@ -0,0 +1,192 @@
+package com.ef.engine;
+
+import com.ef.domain.BlockedUser;
+import com.ef.domain.DetectionRule;
+import com.ef.domain.DetectionWindow;
+import com.ef.domain.ParserDTO;
+import com.ef.parser.IpAddresses;
+import com.ef.parser.LogDates;
+import com.ef.parser.LogFiles;
+import com.ef.parser.LogLineScanner;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Detection engine with a fixed memory budget, for logs with too many distinct IP addresses to count each one of them.</p>
+ * <p>The log is read twice. The first pass counts the requests of each rule in a {@link CountMinSketch}, whose estimates are never
+ * below the real counts: every IP whose estimate reaches the threshold becomes a candidate, so no IP to block is missed.
+ * The second pass counts the requests of the candidates only, exactly, so no IP is blocked by mistake either.
+ * The IP addresses blocked are the same ones the memory engine blocks.</p>
+ * <p>Memory is width * depth * 4 bytes per rule (application.engine.sketchWidth and application.engine.sketchDepth) plus the candidates,
+ * at most application.engine.maxCandidates per rule.
+ * With probability 1 - e^-depth no estimate goes over its real count by more than e / width * N, N being the requests within the window,
+ * so every candidate has at least threshold - e / width * N requests and there are at most N / (threshold - e / width * N) of them.
+ * Both the bound and the number of candidates are logged.</p>
+ * <p>When e / width * N reaches the threshold the bound says nothing, any IP of the window can become a candidate, ex: 10^8 requests
+ * with the default width and a threshold of 200. A warning is logged, and the run is still exact as long as the candidates fit.
+ * If more than application.engine.maxCandidates IP addresses of a window become candidates, the run fails after the first pass
+ * instead of growing without limit, telling the width that keeps the candidates within it, see {@link #widthNeeded(long, long, int)}.</p>
+ */
+@Component("approximateDetectionEngine")
+@PropertySource("classpath:/application.properties")
+@Slf4j
+public class ApproximateDetectionEngine implements DetectionEngine {
+
+    private Environment env;
+
+    /**
+     * Injecting dependencies
+     *
+     * @param env to read the size of the sketch
+     */
+    @Autowired
+    public ApproximateDetectionEngine(Environment env) {
+        this.env = env;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<BlockedUser> detect(ParserDTO parserDTO) throws IOException {
+        List<Path> files = LogFiles.resolve(parserDTO.getFileUrl());
+        List<DetectionRule> rules = parserDTO.getRules();
+        // with --seek only the lines around the windows of the rules are read
+        long[] span = parserDTO.isSeek() ? DetectionRule.span(rules) : null;
+        int count = rules.size();
+
+        int width = Integer.valueOf(env.getProperty("application.engine.sketchWidth"));
+        int depth = Integer.valueOf(env.getProperty("application.engine.sketchDepth"));
+        int maxCandidates = Integer.valueOf(env.getProperty("application.engine.maxCandidates"));
+
+        DetectionWindow[] windows = new DetectionWindow[count];
+        CountMinSketch[] sketches = new CountMinSketch[count];
+        IntCounterMap[] ipv4Candidates = new IntCounterMap[count];
+        List<Map<String, Integer>> otherCandidates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            windows[i] = rules.get(i).window();
+            sketches[i] = new CountMinSketch(width, depth);
+            ipv4Candidates[i] = new IntCounterMap(1 << 10);
+            otherCandidates.add(new HashMap<>());
+        }
+
+        // rules with more candidates than allowed stop taking them
+        boolean[] overflowed = new boolean[count];
+
+        // first pass, candidates are the IP addresses whose estimate reaches the threshold
+        RequestLogReader.read(files, span, (millis, ipv4, scanner) -> {
+            String ip = null;
+            long key = ipv4;
+            if (ipv4 == IpAddresses.NOT_IPV4) {
+                ip = scanner.value(LogLineScanner.IP);
+                // hashed IP addresses never take the key of an IPv4 address
+                key = hash(ip) | Long.MIN_VALUE;
+            }
+            for (int i = 0; i < count; i++) {
+                if (!windows[i].contains(millis) || sketches[i].increment(key) < rules.get(i).getThreshold() || overflowed[i]) {
+                    continue;
+                }
+                // other keys can raise the estimate past the threshold at once, so it is not only checked when reached
+                boolean known = ip == null ? ipv4Candidates[i].containsKey((int) ipv4) : otherCandidates.get(i).containsKey(ip);
+                if (known) {
+                    continue;
+                }
+                if (ipv4Candidates[i].size() + otherCandidates.get(i).size() >= maxCandidates) {
+                    overflowed[i] = true;
+                } else if (ip == null) {
+                    ipv4Candidates[i].add((int) ipv4, 0);
+                } else {
+                    otherCandidates.get(i).put(ip, 0);
+                }
+            }
+        });
+
+        for (int i = 0; i < count; i++) {
+            CountMinSketch sketch = sketches[i];
+            long threshold = rules.get(i).getThreshold();
+            String window = windows[i].describe() + " FROM " + LogDates.format(windows[i].getStart());
+            if (overflowed[i]) {
+                long widthNeeded = widthNeeded(sketch.getTotal(), threshold, maxCandidates);
+                throw new IllegalStateException("more than " + maxCandidates + " candidates in window " + window + " with "
+                        + sketch.getTotal() + " requests, " + (widthNeeded > 0
+                        ? "application.engine.sketchWidth must be at least " + widthNeeded
+                        : "more IP addresses than application.engine.maxCandidates can reach the threshold of " + threshold
+                        + ", it must be at least " + (sketch.getTotal() / threshold + 1)));
+            }
+            if (sketch.getErrorBound() >= threshold) {
+                log.warn("SKETCH OF WINDOW " + window + " OVERESTIMATES BY UP TO " + String.format("%.1f", sketch.getErrorBound())
+                        + ", NOT BELOW THE THRESHOLD OF " + threshold + ": ANY IP CAN BE A CANDIDATE, application.engine.sketchWidth SHOULD BE AT LEAST "
+                        + CountMinSketch.widthFor(sketch.getTotal(), threshold));
+            }
+        }
+
+        // second pass, exact count of the candidates
+        long lines = RequestLogReader.read(files, span, (millis, ipv4, scanner) -> {
+            String ip = null;
+            for (int i = 0; i < count; i++) {
+                if (!windows[i].contains(millis)) {
+                    continue;
+                }
+                if (ipv4 != IpAddresses.NOT_IPV4) {
+                    if (ipv4Candidates[i].containsKey((int) ipv4)) {
+                        ipv4Candidates[i].increment((int) ipv4);
+                    }
+                } else {
+                    if (ip == null) {
+                        ip = scanner.value(LogLineScanner.IP);
+                    }
+                    otherCandidates.get(i).computeIfPresent(ip, (candidate, requests) -> requests + 1);
+                }
+            }
+        });
+
+        List<BlockedUser> blockedUsers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            CountMinSketch sketch = sketches[i];
+            log.info("LINES READ: " + lines + ", REQUESTS IN WINDOW " + windows[i].describe() + " FROM " + LogDates.format(windows[i].getStart())
+                    + ": " + sketch.getTotal() + ", SKETCH OF " + (sketch.getBytes() >> 10) + " KB OVERESTIMATES BY AT MOST "
+                    + String.format("%.1f", sketch.getErrorBound()) + " WITH PROBABILITY " + String.format("%.4f", sketch.getConfidence())
+                    + ", CANDIDATES: " + (ipv4Candidates[i].size() + otherCandidates.get(i).size()));
+
+            DetectionRule rule = rules.get(i);
+            blockedUsers.addAll(MemoryDetectionEngine.blockedUsers(ipv4Candidates[i], otherCandidates.get(i),
+                    rule.getThreshold(), rule.comment(count > 1)));
+        }
+        return blockedUsers;
+    }
+
+    /**
+     * It gives the width of the sketches that keeps the candidates of a window within a maximum: with an error bound of
+     * threshold - N / maxCandidates, at most N / (threshold - bound) = maxCandidates IP addresses can be candidates.
+     *
+     * @param total         requests within the window, N
+     * @param threshold     threshold of the rule
+     * @param maxCandidates candidates allowed
+     * @return width needed, or -1 if no width is enough because more than maxCandidates IP addresses can really reach the threshold
+     */
+    static long widthNeeded(long total, long threshold, int maxCandidates) {
+        double errorBound = threshold - (double) total / maxCandidates;
+        return errorBound <= 0 ? -1 : CountMinSketch.widthFor(total, errorBound);
+    }
+
+    /**
+     * 64 bits FNV-1a hash of an IP address that is not IPv4.
+     */
+    private static long hash(String ip) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < ip.length(); i++) {
+            hash = (hash ^ ip.charAt(i)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+}
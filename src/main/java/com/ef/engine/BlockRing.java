@@ -0,0 +1,185 @@
+package com.ef.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>Ring of preallocated blocks of bytes passed from one reader thread to several parser threads, for the pipeline engine.</p>
+ * <p>The reader claims the blocks in sequence, fills and publishes each one. Parsers take the published blocks in the same
+ * sequence, each block going to a single parser, and release them when done, in any order. The reader waits for a block
+ * to be released before filling it again, so at most size blocks are in flight and nothing is allocated while the log is read.</p>
+ * <p>Threads waiting spin a little, then yield and at last park for a while: blocks are expected to come and go fast,
+ * but a stage can fall behind for long, ex: the parsers when there are more threads than cores.</p>
+ */
+final class BlockRing {
+
+    private static final int SPINS = 100;
+    private static final int YIELDS = 100;
+    private static final long PARK_NANOS = 50_000;
+
+    private final byte[][] blocks;
+    private final int[] lengths;
+    // 1 while a block is published and not released yet
+    private final AtomicIntegerArray published;
+    private final int mask;
+
+    // written by the reader only
+    private long nextClaim;
+    private volatile long lastPublished = -1;
+    private volatile boolean closed;
+    private volatile Throwable failure;
+
+    private final AtomicLong nextTake = new AtomicLong();
+    private final AtomicLong readerWaits = new AtomicLong();
+
+    /**
+     * @param size      number of blocks, rounded up to a power of two
+     * @param blockSize bytes of each block, a block only grows to hold a line longer than that
+     */
+    BlockRing(int size, int blockSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, size) - 1) << 1;
+        this.blocks = new byte[capacity][blockSize];
+        this.lengths = new int[capacity];
+        this.published = new AtomicIntegerArray(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * It claims the next block for the reader, waiting for a parser to release it.
+     *
+     * @return sequence of the block
+     * @throws IllegalStateException if the pipeline failed meanwhile
+     */
+    long claim() {
+        long sequence = nextClaim++;
+        int slot = (int) sequence & mask;
+        if (published.get(slot) != 0) {
+            readerWaits.incrementAndGet();
+            for (int attempt = 0; published.get(slot) != 0; attempt++) {
+                checkFailure();
+                pause(attempt);
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * @param sequence sequence of a block claimed or taken
+     * @return bytes of the block
+     */
+    byte[] block(long sequence) {
+        return blocks[(int) sequence & mask];
+    }
+
+    /**
+     * It makes a block claimed by the reader larger, keeping its bytes.
+     *
+     * @param sequence sequence of the block claimed
+     * @param capacity bytes the block must hold at least
+     * @return bytes of the block
+     */
+    byte[] grow(long sequence, int capacity) {
+        int slot = (int) sequence & mask;
+        if (blocks[slot].length < capacity) {
+            blocks[slot] = Arrays.copyOf(blocks[slot], Math.max(capacity, blocks[slot].length << 1));
+        }
+        return blocks[slot];
+    }
+
+    /**
+     * It hands a block claimed by the reader to the parsers. Blocks are published in the order they were claimed.
+     *
+     * @param sequence sequence of the block claimed
+     * @param length   bytes of the block filled
+     */
+    void publish(long sequence, int length) {
+        int slot = (int) sequence & mask;
+        lengths[slot] = length;
+        published.set(slot, 1);
+        lastPublished = sequence;
+    }
+
+    /**
+     * It tells the parsers that no more blocks are coming, once the last one is published.
+     */
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * It takes the next block published for a parser, waiting for the reader to publish it.
+     *
+     * @return sequence of the block, -1 if the ring was closed and every block taken
+     * @throws IllegalStateException if the pipeline failed meanwhile
+     */
+    long take() {
+        long sequence = nextTake.getAndIncrement();
+        for (int attempt = 0; lastPublished < sequence; attempt++) {
+            checkFailure();
+            // the last block is published before the ring is closed
+            if (closed) {
+                return lastPublished < sequence ? -1 : sequence;
+            }
+            pause(attempt);
+        }
+        return sequence;
+    }
+
+    /**
+     * @param sequence sequence of a block taken
+     * @return bytes of the block filled
+     */
+    int length(long sequence) {
+        return lengths[(int) sequence & mask];
+    }
+
+    /**
+     * It gives a block taken by a parser back to the reader.
+     *
+     * @param sequence sequence of the block taken
+     */
+    void release(long sequence) {
+        published.set((int) sequence & mask, 0);
+    }
+
+    /**
+     * It stops every thread waiting on the ring, ex: when a stage failed. The first failure is kept.
+     *
+     * @param cause why the pipeline failed
+     */
+    synchronized void abort(Throwable cause) {
+        if (failure == null) {
+            failure = cause;
+        }
+    }
+
+    /**
+     * @throws IllegalStateException if the pipeline failed
+     */
+    void checkFailure() {
+        Throwable cause = failure;
+        if (cause != null) {
+            throw new IllegalStateException("pipeline failed", cause);
+        }
+    }
+
+    /**
+     * @return number of times the reader waited for the parsers to release a block
+     */
+    long readerWaits() {
+        return readerWaits.get();
+    }
+
+    static void pause(int attempt) {
+        if (attempt < SPINS) {
+            return;
+        }
+        if (attempt < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+}
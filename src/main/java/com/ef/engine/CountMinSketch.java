@@ -0,0 +1,120 @@
+package com.ef.engine;
+
+/**
+ * <p>Count-Min sketch of long keys: depth rows of width int counters, each key is counted in one counter of every row
+ * and its estimate is the smallest of them. Memory is fixed (width * depth * 4 bytes) no matter how many distinct keys are counted.</p>
+ * <p>An estimate is never below the real count. With conservative update (only the counters that hold the minimum grow)
+ * it goes over the real count by at most e / width * N with probability 1 - e^-depth, N being the total count added.</p>
+ * <p>It is not thread safe.</p>
+ */
+public class CountMinSketch {
+
+    private final int[][] counters;
+    private final int mask;
+    private final int[] slots;
+    private long total;
+
+    /**
+     * @param width number of counters of each row, rounded up to a power of 2
+     * @param depth number of rows
+     */
+    public CountMinSketch(int width, int depth) {
+        int capacity = Integer.highestOneBit(Math.max(2, width) - 1) << 1;
+        this.counters = new int[depth][capacity];
+        this.mask = capacity - 1;
+        this.slots = new int[depth];
+    }
+
+    /**
+     * It counts one more occurrence of a key.
+     *
+     * @param key the key
+     * @return estimate of the count of the key, including this occurrence
+     */
+    public int increment(long key) {
+        total++;
+        // two hashes give every row its own slot (Kirsch and Mitzenmacher)
+        long h1 = mix(key);
+        long h2 = mix(h1) | 1;
+
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < counters.length; row++) {
+            slots[row] = (int) ((h1 + row * h2) >>> 32) & mask;
+            min = Math.min(min, counters[row][slots[row]]);
+        }
+
+        int estimate = min == Integer.MAX_VALUE ? min : min + 1;
+        for (int row = 0; row < counters.length; row++) {
+            if (counters[row][slots[row]] < estimate) {
+                counters[row][slots[row]] = estimate;
+            }
+        }
+        return estimate;
+    }
+
+    /**
+     * It estimates the count of a key without counting it.
+     *
+     * @param key the key
+     * @return estimate of the count of the key, never below the real one
+     */
+    public int estimate(long key) {
+        long h1 = mix(key);
+        long h2 = mix(h1) | 1;
+
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < counters.length; row++) {
+            min = Math.min(min, counters[row][(int) ((h1 + row * h2) >>> 32) & mask]);
+        }
+        return min;
+    }
+
+    /**
+     * @return number of occurrences counted so far
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return maximum over estimation of a key, e / width * N, holding with probability {@link #getConfidence()}
+     */
+    public double getErrorBound() {
+        return Math.E / counters[0].length * total;
+    }
+
+    /**
+     * It gives the width whose error bound e / width * N stays below a given one.
+     *
+     * @param total      occurrences counted, N
+     * @param errorBound over estimation allowed, above 0
+     * @return width needed, a power of 2 as the sketch rounds it
+     */
+    public static long widthFor(long total, double errorBound) {
+        long width = (long) Math.floor(Math.E * total / errorBound) + 1;
+        return Long.highestOneBit(Math.max(2, width) - 1) << 1;
+    }
+
+    /**
+     * @return probability that no estimate goes over its real count by more than {@link #getErrorBound()}
+     */
+    public double getConfidence() {
+        return 1 - Math.exp(-counters.length);
+    }
+
+    /**
+     * @return memory held by the counters, in bytes
+     */
+    public long getBytes() {
+        return 4L * counters.length * counters[0].length;
+    }
+
+    /**
+     * It scrambles a 64 bits key (SplitMix64 finalizer).
+     */
+    static long mix(long key) {
+        key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+        key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+        return key ^ (key >>> 31);
+    }
+}
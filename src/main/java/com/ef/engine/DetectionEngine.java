@@ -0,0 +1,31 @@
+package com.ef.engine;
+
+import com.ef.domain.BlockedUser;
+import com.ef.domain.ParserDTO;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Alternative to ParserJob that finds the IP addresses to block without loading the log into USER_LOG.
+ * <p>Implementations are spring beans named after the value of --engine followed by "DetectionEngine",
+ * ex: --engine=memory runs the bean "memoryDetectionEngine".</p>
+ */
+public interface DetectionEngine {
+
+    /**
+     * Values of --engine whose engines read only the lines around the windows of the rules with --seek.
+     * The others need the whole log, ex: the sliding engine reports the busiest window anywhere in it.
+     */
+    List<String> SEEKING = Collections.unmodifiableList(Arrays.asList("memory", "approximate", "pipeline", "offheap"));
+
+    /**
+     * It reads the log file and finds the IP addresses that exceeded the threshold.
+     *
+     * @param parserDTO parameters of the execution
+     * @return IP addresses to block, ready to be inserted into BLOCKED_USER
+     * @throws Exception if the log file could not be read
+     */
+    List<BlockedUser> detect(ParserDTO parserDTO) throws Exception;
+}
@@ -0,0 +1,197 @@
+package com.ef.engine;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map of int keys to int counters. Keys and counters live in primitive arrays so counting
+ * does not box nor allocate anything per entry, which matters when counting millions of IPv4 addresses packed as int.
+ * <p>It is not thread safe.</p>
+ */
+public class IntCounterMap {
+
+    /**
+     * Receives each entry of the map.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(int key, int count);
+    }
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private int[] counts;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    // key 0 (0.0.0.0) is used to flag empty slots so its counter is kept apart
+    private boolean hasZeroKey;
+    private int zeroKeyCount;
+
+    public IntCounterMap() {
+        this(1 << 16);
+    }
+
+    /**
+     * @param expectedSize number of keys expected, the map grows if it gets more than that
+     */
+    public IntCounterMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * It adds one to the counter of a key.
+     *
+     * @param key the key
+     * @return the counter after incrementing it
+     */
+    public int increment(int key) {
+        return add(key, 1);
+    }
+
+    /**
+     * It adds a delta to the counter of a key, creating the counter if the key was not there.
+     *
+     * @param key   the key
+     * @param delta value to add
+     * @return the counter after adding the delta
+     */
+    public int add(int key, int delta) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            return zeroKeyCount += delta;
+        }
+
+        int slot = mix(key) & mask;
+        while (true) {
+            int current = keys[slot];
+            if (current == key) {
+                return counts[slot] += delta;
+            }
+            if (current == 0) {
+                keys[slot] = key;
+                counts[slot] = delta;
+                if (++size >= resizeAt) {
+                    rehash();
+                }
+                return delta;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return the counter of the key, 0 if the key is not in the map
+     */
+    public int get(int key) {
+        if (key == 0) {
+            return zeroKeyCount;
+        }
+        int slot = mix(key) & mask;
+        while (true) {
+            int current = keys[slot];
+            if (current == key) {
+                return counts[slot];
+            }
+            if (current == 0) {
+                return 0;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return true if the key has a counter
+     */
+    public boolean containsKey(int key) {
+        if (key == 0) {
+            return hasZeroKey;
+        }
+        int slot = mix(key) & mask;
+        while (true) {
+            int current = keys[slot];
+            if (current == key) {
+                return true;
+            }
+            if (current == 0) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return number of keys in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * It passes every key and its counter to the consumer, in no particular order.
+     *
+     * @param consumer receives each entry
+     */
+    public void forEach(EntryConsumer consumer) {
+        if (hasZeroKey) {
+            consumer.accept(0, zeroKeyCount);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                consumer.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    /**
+     * It removes every key keeping the allocated capacity.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(counts, 0);
+        hasZeroKey = false;
+        zeroKeyCount = 0;
+        size = 0;
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        allocate(keys.length << 1);
+        size = hasZeroKey ? 1 : 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key != 0) {
+                int slot = mix(key) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                counts[slot] = oldCounts[i];
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        counts = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Addresses of the same network share their upper bits, so they are scrambled before picking a slot.
+     */
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
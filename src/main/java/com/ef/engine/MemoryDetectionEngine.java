@@ -0,0 +1,113 @@
+package com.ef.engine;
+
+import com.ef.domain.BlockedUser;
+import com.ef.domain.DetectionRule;
+import com.ef.domain.DetectionWindow;
+import com.ef.domain.ParserDTO;
+import com.ef.parser.IpAddresses;
+import com.ef.parser.LogDates;
+import com.ef.parser.LogFiles;
+import com.ef.parser.LogLineScanner;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Detection engine that reads the log file once and counts the requests of each IP within the window in memory,
+ * so nothing but the blocked IP addresses is written to the database.</p>
+ * <p>IPv4 addresses are packed into an int and counted in an {@link IntCounterMap}, any other address is counted by its text.
+ * Each rule has its own counters, all of them are counted in the same pass over the log.
+ * Log dates are rounded to the second as MySQL does when storing them in USER_LOG, so the blocked IP addresses
+ * are the same ones the block IP addresses Step finds.</p>
+ */
+@Component("memoryDetectionEngine")
+@Slf4j
+public class MemoryDetectionEngine implements DetectionEngine {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<BlockedUser> detect(ParserDTO parserDTO) throws IOException {
+
+        List<DetectionRule> rules = parserDTO.getRules();
+        // with --seek only the lines around the windows of the rules are read
+        long[] span = parserDTO.isSeek() ? DetectionRule.span(rules) : null;
+        int count = rules.size();
+
+        DetectionWindow[] windows = new DetectionWindow[count];
+        IntCounterMap[] ipv4Requests = new IntCounterMap[count];
+        List<Map<String, Integer>> otherRequests = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            windows[i] = rules.get(i).window();
+            ipv4Requests[i] = new IntCounterMap();
+            otherRequests.add(new HashMap<>());
+        }
+
+        long lines = RequestLogReader.read(LogFiles.resolve(parserDTO.getFileUrl()), span, (millis, ipv4, scanner) -> {
+            String ip = null;
+            for (int i = 0; i < count; i++) {
+                if (!windows[i].contains(millis)) {
+                    continue;
+                }
+                if (ipv4 != IpAddresses.NOT_IPV4) {
+                    ipv4Requests[i].increment((int) ipv4);
+                } else {
+                    if (ip == null) {
+                        ip = scanner.value(LogLineScanner.IP);
+                    }
+                    otherRequests.get(i).merge(ip, 1, Integer::sum);
+                }
+            }
+        });
+
+        List<BlockedUser> blockedUsers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            log.info("LINES READ: " + lines + ", DISTINCT IP ADDRESSES IN WINDOW " + windows[i].describe() + " FROM "
+                    + LogDates.format(windows[i].getStart()) + ": " + (ipv4Requests[i].size() + otherRequests.get(i).size()));
+
+            DetectionRule rule = rules.get(i);
+            blockedUsers.addAll(blockedUsers(ipv4Requests[i], otherRequests.get(i), rule.getThreshold(), rule.comment(count > 1)));
+        }
+        return blockedUsers;
+    }
+
+    /**
+     * It builds the BLOCKED_USER rows of the IP addresses with at least threshold requests.
+     */
+    static List<BlockedUser> blockedUsers(IntCounterMap ipv4Requests, Map<String, Integer> otherRequests,
+                                          long threshold, String comment) {
+        Date blockedDate = new Date();
+        List<BlockedUser> blockedUsers = new ArrayList<>();
+
+        ipv4Requests.forEach((ip, requests) -> {
+            if (requests >= threshold) {
+                blockedUsers.add(blockedUser(IpAddresses.toString(ip), requests, blockedDate, comment));
+            }
+        });
+        otherRequests.forEach((ip, requests) -> {
+            if (requests >= threshold) {
+                blockedUsers.add(blockedUser(ip, requests, blockedDate, comment));
+            }
+        });
+
+        blockedUsers.sort(Comparator.comparing(BlockedUser::getIp));
+        return blockedUsers;
+    }
+
+    static BlockedUser blockedUser(String ip, int requests, Date blockedDate, String comment) {
+        BlockedUser blockedUser = new BlockedUser();
+        blockedUser.setIp(ip);
+        blockedUser.setRequests(requests);
+        blockedUser.setBlockedDate(blockedDate);
+        blockedUser.setComment(comment);
+        return blockedUser;
+    }
+}
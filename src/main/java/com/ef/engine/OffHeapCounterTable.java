@@ -0,0 +1,518 @@
+package com.ef.engine;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * <p>Open addressing hash table of counters whose keys are a fixed number of ints, ex: a rule and an IPv4 address (2 ints)
+ * or a rule and an IPv6 address (5 ints). Keys and counters live outside of the heap in a direct buffer of a fixed size,
+ * so counting millions of keys neither grows the heap nor gives the garbage collector anything to trace.</p>
+ * <p>When the table is as full as it can get, its entries are sorted by key in place and written to a run file
+ * of the spill directory, and the table starts again empty. {@link #drain(EntryConsumer)} merges the runs and the entries
+ * still in the table, so it gives every key once with its whole count, in key order. At most {@value #MERGE_FAN_IN} runs
+ * are merged at once: with more of them, the oldest ones are first merged into new runs, so the heap never holds more than
+ * {@value #MERGE_FAN_IN} read buffers and one write buffer while merging, and as many files are open, however many runs there are.</p>
+ * <p>The buffer is allocated with the first key, so a table that gets no key takes no memory. It is not thread safe.</p>
+ */
+@Slf4j
+public class OffHeapCounterTable implements Closeable {
+
+    /**
+     * Receives each key and its count.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+
+        /**
+         * @param key   ints of the key, only valid until the method returns
+         * @param count times the key was added
+         */
+        void accept(int[] key, long count);
+    }
+
+    // linear probing gets slow past it, and a spill sorts and writes the whole table
+    private static final float LOAD_FACTOR = 0.7f;
+    private static final int INSERTION_SORT_SIZE = 16;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    // runs merged at once, the table being one more source of the last merge
+    private static final int MERGE_FAN_IN = 64;
+
+    private final int keyInts;
+    // ints of each slot: the key followed by its count, 0 in empty slots
+    private final int slotInts;
+    private final int bytes;
+    private final Path spillDirectory;
+    private final List<Path> runs = new ArrayList<>();
+
+    private ByteBuffer buffer;
+    private IntBuffer slots;
+    private int capacity;
+    private int mask;
+    private int maxSize;
+    private int size;
+
+    /**
+     * @param keyInts        ints of each key
+     * @param bytes          bytes of memory of the table, outside of the heap
+     * @param spillDirectory directory of the run files, created if missing
+     * @throws IllegalArgumentException if the memory given cannot hold a few keys
+     */
+    public OffHeapCounterTable(int keyInts, int bytes, Path spillDirectory) {
+        this.keyInts = keyInts;
+        this.slotInts = keyInts + 1;
+        this.bytes = bytes;
+        this.spillDirectory = spillDirectory;
+        if (bytes / (slotInts * 4) < 4) {
+            throw new IllegalArgumentException(bytes + " bytes cannot hold a counter table of " + keyInts + " ints keys");
+        }
+    }
+
+    /**
+     * It adds one to the counter of a key, spilling the table to disk first if the key is new and the table is full.
+     *
+     * @param key ints of the key, keyInts of them
+     * @throws IOException if the table could not be spilled
+     */
+    public void increment(int[] key) throws IOException {
+        if (buffer == null) {
+            allocate();
+        }
+
+        int slot = hash(key) & mask;
+        while (true) {
+            int index = slot * slotInts;
+            int count = slots.get(index + keyInts);
+            if (count == 0) {
+                break;
+            }
+            if (equals(key, index)) {
+                slots.put(index + keyInts, count + 1);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == maxSize) {
+            spill();
+            slot = hash(key) & mask;
+            while (slots.get(slot * slotInts + keyInts) != 0) {
+                slot = (slot + 1) & mask;
+            }
+        }
+        int index = slot * slotInts;
+        for (int i = 0; i < keyInts; i++) {
+            slots.put(index + i, key[i]);
+        }
+        slots.put(index + keyInts, 1);
+        size++;
+    }
+
+    /**
+     * @return number of run files written so far
+     */
+    public int runs() {
+        return runs.size();
+    }
+
+    /**
+     * It passes every key and its whole count to the consumer in key order (ints compared as unsigned, one after the other),
+     * merging the runs spilled with the entries of the table. The table is left empty and its runs deleted.
+     *
+     * @param consumer receives each key
+     * @throws IOException if a run could not be read
+     */
+    public void drain(EntryConsumer consumer) throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        List<Source> sources = new ArrayList<>();
+        try {
+            while (runs.size() >= MERGE_FAN_IN) {
+                mergeRuns();
+            }
+            int entries = compact();
+            sort(0, entries);
+
+            sources.add(new TableSource(entries));
+            for (Path run : runs) {
+                sources.add(new RunSource(run));
+            }
+            merge(sources, consumer);
+        } finally {
+            close(sources);
+            clear();
+            deleteRuns();
+        }
+    }
+
+    /**
+     * It deletes the runs left, ex: when counting failed. The memory is given back once the table is collected.
+     */
+    @Override
+    public void close() {
+        deleteRuns();
+        buffer = null;
+        slots = null;
+    }
+
+    private void allocate() {
+        capacity = Integer.highestOneBit(bytes / (slotInts * 4));
+        mask = capacity - 1;
+        maxSize = (int) (capacity * LOAD_FACTOR);
+        buffer = ByteBuffer.allocateDirect(capacity * slotInts * 4).order(ByteOrder.nativeOrder());
+        slots = buffer.asIntBuffer();
+    }
+
+    /**
+     * It writes the entries of the table sorted by key to a new run and empties the table.
+     */
+    private void spill() throws IOException {
+        int entries = compact();
+        sort(0, entries);
+
+        Files.createDirectories(spillDirectory);
+        Path run = Files.createTempFile(spillDirectory, "counters-", ".run");
+        runs.add(run);
+        ByteBuffer sorted = buffer.duplicate();
+        sorted.position(0).limit(entries * slotInts * 4);
+        try (FileChannel channel = FileChannel.open(run, StandardOpenOption.WRITE)) {
+            while (sorted.hasRemaining()) {
+                channel.write(sorted);
+            }
+        }
+        log.info("COUNTER TABLE FULL, " + entries + " KEYS SPILLED TO " + run);
+        clear();
+    }
+
+    /**
+     * It merges the {@value #MERGE_FAN_IN} oldest runs into a new run, added last, and deletes them.
+     */
+    private void mergeRuns() throws IOException {
+        List<Path> merged = new ArrayList<>(runs.subList(0, MERGE_FAN_IN));
+        Path run = Files.createTempFile(spillDirectory, "counters-", ".run");
+        // added first so it is deleted with the others if the merge fails
+        runs.add(run);
+
+        List<Source> sources = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(run, StandardOpenOption.WRITE)) {
+            for (Path source : merged) {
+                sources.add(new RunSource(source));
+            }
+            ByteBuffer out = ByteBuffer.allocate(READ_BUFFER_SIZE / (slotInts * 4) * slotInts * 4).order(ByteOrder.nativeOrder());
+            try {
+                merge(sources, (key, count) -> {
+                    if (!out.hasRemaining()) {
+                        write(channel, out);
+                    }
+                    for (int i = 0; i < keyInts; i++) {
+                        out.putInt(key[i]);
+                    }
+                    out.putInt(Math.toIntExact(count));
+                });
+                write(channel, out);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } finally {
+            close(sources);
+        }
+
+        runs.removeAll(merged);
+        for (Path source : merged) {
+            Files.deleteIfExists(source);
+        }
+        log.info("COUNTER TABLE RUNS, " + merged.size() + " RUNS MERGED INTO " + run);
+    }
+
+    /**
+     * It writes the entries put in a buffer and empties it.
+     *
+     * @throws UncheckedIOException if they could not be written, as the entries are given by an {@link EntryConsumer}
+     */
+    private static void write(FileChannel channel, ByteBuffer entries) {
+        entries.flip();
+        try {
+            while (entries.hasRemaining()) {
+                channel.write(entries);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        entries.clear();
+    }
+
+    private static void close(List<Source> sources) throws IOException {
+        for (Source source : sources) {
+            source.close();
+        }
+    }
+
+    /**
+     * It moves the entries to the first slots of the table, which is no longer a hash table until cleared.
+     *
+     * @return number of entries
+     */
+    private int compact() {
+        int entries = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            int index = slot * slotInts;
+            if (slots.get(index + keyInts) != 0) {
+                if (slot != entries) {
+                    copy(index, entries * slotInts);
+                }
+                entries++;
+            }
+        }
+        return entries;
+    }
+
+    private void clear() {
+        for (int i = 0; i < capacity * slotInts; i++) {
+            slots.put(i, 0);
+        }
+        size = 0;
+    }
+
+    private void deleteRuns() {
+        for (Path run : runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException e) {
+                log.warn("Run " + run + " could not be deleted: " + e.getMessage());
+            }
+        }
+        runs.clear();
+    }
+
+    /**
+     * It sorts the entries between two positions by key, a quicksort whose recursion only takes the smaller side.
+     * Keys are unique, so the pivot is never found twice.
+     */
+    private void sort(int from, int to) {
+        while (to - from > INSERTION_SORT_SIZE) {
+            int pivot = partition(from, to);
+            if (pivot - from < to - pivot) {
+                sort(from, pivot);
+                from = pivot + 1;
+            } else {
+                sort(pivot + 1, to);
+                to = pivot;
+            }
+        }
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && compare(j - 1, j) > 0; j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    private int partition(int from, int to) {
+        // median of three as pivot, moved to the last position
+        int last = to - 1;
+        int middle = (from + last) >>> 1;
+        if (compare(middle, from) < 0) {
+            swap(middle, from);
+        }
+        if (compare(last, from) < 0) {
+            swap(last, from);
+        }
+        if (compare(middle, last) < 0) {
+            swap(middle, last);
+        }
+        int store = from;
+        for (int i = from; i < last; i++) {
+            if (compare(i, last) < 0) {
+                swap(i, store++);
+            }
+        }
+        swap(store, last);
+        return store;
+    }
+
+    private int compare(int entry, int other) {
+        int index = entry * slotInts;
+        int otherIndex = other * slotInts;
+        for (int i = 0; i < keyInts; i++) {
+            int c = Integer.compareUnsigned(slots.get(index + i), slots.get(otherIndex + i));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private void swap(int entry, int other) {
+        if (entry == other) {
+            return;
+        }
+        int index = entry * slotInts;
+        int otherIndex = other * slotInts;
+        for (int i = 0; i < slotInts; i++) {
+            int value = slots.get(index + i);
+            slots.put(index + i, slots.get(otherIndex + i));
+            slots.put(otherIndex + i, value);
+        }
+    }
+
+    private void copy(int from, int to) {
+        for (int i = 0; i < slotInts; i++) {
+            slots.put(to + i, slots.get(from + i));
+            slots.put(from + i, 0);
+        }
+    }
+
+    private boolean equals(int[] key, int index) {
+        for (int i = 0; i < keyInts; i++) {
+            if (slots.get(index + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(int[] key) {
+        int h = 0;
+        for (int word : key) {
+            h = 31 * h + word;
+        }
+        return IntCounterMap.mix(h);
+    }
+
+    private static int compareKeys(int[] key, int[] other) {
+        for (int i = 0; i < key.length; i++) {
+            int c = Integer.compareUnsigned(key[i], other[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * It merges sorted sources adding up the counts of the same key.
+     */
+    private void merge(List<Source> sources, EntryConsumer consumer) throws IOException {
+        PriorityQueue<Source> queue = new PriorityQueue<>(Math.max(1, sources.size()),
+                Comparator.comparing((Source source) -> source.key, OffHeapCounterTable::compareKeys));
+        for (Source source : sources) {
+            if (source.next()) {
+                queue.add(source);
+            }
+        }
+
+        int[] key = new int[keyInts];
+        long count = 0;
+        while (!queue.isEmpty()) {
+            Source source = queue.poll();
+            if (count > 0 && compareKeys(key, source.key) != 0) {
+                consumer.accept(key, count);
+                count = 0;
+            }
+            System.arraycopy(source.key, 0, key, 0, keyInts);
+            count += source.count;
+            if (source.next()) {
+                queue.add(source);
+            }
+        }
+        if (count > 0) {
+            consumer.accept(key, count);
+        }
+    }
+
+    /**
+     * Entries sorted by key, read one at a time.
+     */
+    private abstract class Source implements Closeable {
+
+        final int[] key = new int[keyInts];
+        int count;
+
+        /**
+         * @return false if there are no more entries
+         */
+        abstract boolean next() throws IOException;
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    /**
+     * Entries of the table, compacted and sorted.
+     */
+    private final class TableSource extends Source {
+
+        private final int entries;
+        private int entry;
+
+        TableSource(int entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        boolean next() {
+            if (entry == entries) {
+                return false;
+            }
+            int index = entry++ * slotInts;
+            for (int i = 0; i < keyInts; i++) {
+                key[i] = slots.get(index + i);
+            }
+            count = slots.get(index + keyInts);
+            return true;
+        }
+    }
+
+    /**
+     * Entries of a run, as written by spill.
+     */
+    private final class RunSource extends Source {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        RunSource(Path run) throws IOException {
+            this.channel = FileChannel.open(run, StandardOpenOption.READ);
+            this.buffer = ByteBuffer.allocate(READ_BUFFER_SIZE / (slotInts * 4) * slotInts * 4).order(ByteOrder.nativeOrder());
+            this.buffer.flip();
+        }
+
+        @Override
+        boolean next() throws IOException {
+            if (buffer.remaining() < slotInts * 4) {
+                buffer.compact();
+                while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                    // fills the buffer up
+                }
+                buffer.flip();
+                if (buffer.remaining() < slotInts * 4) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < keyInts; i++) {
+                key[i] = buffer.getInt();
+            }
+            count = buffer.getInt();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
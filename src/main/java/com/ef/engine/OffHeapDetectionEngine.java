@@ -0,0 +1,168 @@
+package com.ef.engine;
+
+import com.ef.domain.BlockedUser;
+import com.ef.domain.DetectionRule;
+import com.ef.domain.DetectionWindow;
+import com.ef.domain.ParserDTO;
+import com.ef.parser.IpAddresses;
+import com.ef.parser.LogDates;
+import com.ef.parser.LogFiles;
+import com.ef.parser.LogLineScanner;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * <p>Detection engine that counts the requests of each IP within the window as the memory engine does, but in
+ * {@link OffHeapCounterTable}s of application.engine.counterTableBytes each, outside of the heap: one keyed by rule and IPv4
+ * address and one keyed by rule and the 16 bytes of any other address. A table that fills up is spilled to
+ * application.engine.spillDirectory and merged at the end, so the heap used does not depend on the number of IP addresses,
+ * only the rows of the IP addresses blocked are kept in it.</p>
+ * <p>IPv6 addresses are counted by their bytes and written back as INET6_NTOA writes them, so addresses written in different
+ * ways are counted together as the GROUP BY of the block IP addresses Step does. The IP addresses blocked are the same ones,
+ * with the same text, as the ones the batch engine blocks. Addresses the database cannot parse are not counted.</p>
+ */
+@Component("offheapDetectionEngine")
+@PropertySource("classpath:/application.properties")
+@Slf4j
+public class OffHeapDetectionEngine implements DetectionEngine {
+
+    // rule followed by the address
+    private static final int IPV4_KEY_INTS = 2;
+    private static final int IPV6_KEY_INTS = 5;
+
+    private Environment env;
+
+    /**
+     * Injecting dependencies
+     *
+     * @param env to read the memory of the tables and the spill directory
+     */
+    @Autowired
+    public OffHeapDetectionEngine(Environment env) {
+        this.env = env;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<BlockedUser> detect(ParserDTO parserDTO) throws IOException {
+
+        List<DetectionRule> rules = parserDTO.getRules();
+        // with --seek only the lines around the windows of the rules are read
+        long[] span = parserDTO.isSeek() ? DetectionRule.span(rules) : null;
+        int count = rules.size();
+
+        int bytes = Integer.valueOf(env.getProperty("application.engine.counterTableBytes"));
+        Path spillDirectory = Paths.get(env.getProperty("application.engine.spillDirectory"));
+
+        DetectionWindow[] windows = new DetectionWindow[count];
+        for (int i = 0; i < count; i++) {
+            windows[i] = rules.get(i).window();
+        }
+
+        try (OffHeapCounterTable ipv4Requests = new OffHeapCounterTable(IPV4_KEY_INTS, bytes, spillDirectory);
+             OffHeapCounterTable ipv6Requests = new OffHeapCounterTable(IPV6_KEY_INTS, bytes, spillDirectory)) {
+
+            int[] ipv4Key = new int[IPV4_KEY_INTS];
+            int[] ipv6Key = new int[IPV6_KEY_INTS];
+            long lines;
+            try {
+                lines = RequestLogReader.read(LogFiles.resolve(parserDTO.getFileUrl()), span, (millis, ipv4, scanner) -> {
+                    byte[] ipv6 = null;
+                    for (int i = 0; i < count; i++) {
+                        if (!windows[i].contains(millis)) {
+                            continue;
+                        }
+                        if (ipv4 != IpAddresses.NOT_IPV4) {
+                            ipv4Key[0] = i;
+                            ipv4Key[1] = (int) ipv4;
+                            increment(ipv4Requests, ipv4Key);
+                            continue;
+                        }
+                        if (ipv6 == null && (ipv6 = IpAddresses.parseIpv6(scanner.value(LogLineScanner.IP))) == null) {
+                            return;
+                        }
+                        ipv6Key[0] = i;
+                        for (int word = 0; word < 4; word++) {
+                            ipv6Key[word + 1] = (ipv6[4 * word] & 0xff) << 24 | (ipv6[4 * word + 1] & 0xff) << 16
+                                    | (ipv6[4 * word + 2] & 0xff) << 8 | ipv6[4 * word + 3] & 0xff;
+                        }
+                        increment(ipv6Requests, ipv6Key);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (ipv4Requests.runs() + ipv6Requests.runs() > 0) {
+                log.info("COUNTER TABLES SPILLED " + (ipv4Requests.runs() + ipv6Requests.runs()) + " RUNS TO " + spillDirectory);
+            }
+
+            Date blockedDate = new Date();
+            List<List<BlockedUser>> blockedUsersByRule = new ArrayList<>(count);
+            long[] distinct = new long[count];
+            for (int i = 0; i < count; i++) {
+                blockedUsersByRule.add(new ArrayList<>());
+            }
+
+            // keys come sorted by rule, each rule's addresses one after the other
+            ipv4Requests.drain((key, requests) -> {
+                distinct[key[0]]++;
+                add(blockedUsersByRule.get(key[0]), rules.get(key[0]), count > 1, IpAddresses.toString(key[1]), requests, blockedDate);
+            });
+            byte[] ipv6 = new byte[16];
+            ipv6Requests.drain((key, requests) -> {
+                distinct[key[0]]++;
+                if (requests < rules.get(key[0]).getThreshold()) {
+                    return;
+                }
+                for (int word = 0; word < 4; word++) {
+                    for (int b = 0; b < 4; b++) {
+                        ipv6[4 * word + b] = (byte) (key[word + 1] >>> (24 - 8 * b));
+                    }
+                }
+                add(blockedUsersByRule.get(key[0]), rules.get(key[0]), count > 1, IpAddresses.toString(ipv6), requests, blockedDate);
+            });
+
+            List<BlockedUser> blockedUsers = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                log.info("LINES READ: " + lines + ", DISTINCT IP ADDRESSES IN WINDOW " + windows[i].describe() + " FROM "
+                        + LogDates.format(windows[i].getStart()) + ": " + distinct[i]);
+
+                List<BlockedUser> ruleBlockedUsers = blockedUsersByRule.get(i);
+                ruleBlockedUsers.sort(Comparator.comparing(BlockedUser::getIp));
+                blockedUsers.addAll(ruleBlockedUsers);
+            }
+            return blockedUsers;
+        }
+    }
+
+    private static void increment(OffHeapCounterTable table, int[] key) {
+        try {
+            table.increment(key);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * It adds the BLOCKED_USER row of an IP address if it has at least the threshold of its rule.
+     */
+    private static void add(List<BlockedUser> blockedUsers, DetectionRule rule, boolean ruleSet, String ip, long requests, Date blockedDate) {
+        if (requests >= rule.getThreshold()) {
+            blockedUsers.add(MemoryDetectionEngine.blockedUser(ip, (int) requests, blockedDate, rule.comment(ruleSet)));
+        }
+    }
+}
@@ -0,0 +1,498 @@
+package com.ef.engine;
+
+import com.ef.config.StartupReport;
+import com.ef.domain.BlockedUser;
+import com.ef.domain.DetectionRule;
+import com.ef.domain.DetectionWindow;
+import com.ef.domain.ParserDTO;
+import com.ef.parser.IpAddresses;
+import com.ef.parser.LogDates;
+import com.ef.parser.LogFiles;
+import com.ef.parser.LogLineScanner;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Detection engine that counts the requests of each IP within the window in memory, as the memory engine does,
+ * with the reading, the parsing and the counting of the log running at the same time on threads of their own.</p>
+ * <p>The calling thread reads the log in blocks of application.engine.pipelineBlockSize bytes, each one ending at a line break,
+ * into a {@link BlockRing} of application.engine.pipelineBlocks preallocated blocks. application.engine.pipelineParsers threads
+ * take the blocks, split their lines and turn each well formed request within the span of the rules into a record of its IP address
+ * and date. Records go in batches of {@value #BATCH_SIZE} to application.engine.pipelineAggregators threads, each one owning
+ * the IP addresses of one bucket of their hash: every IP is counted by a single thread, so counters need no lock.
+ * Batches are preallocated too and given back to the parsers once counted, so the stages only allocate the text of the addresses
+ * that are not IPv4.</p>
+ * <p>Lines are split and checked exactly as RequestLogReader does, so the IP addresses blocked are the same ones the memory engine blocks.</p>
+ *
+ * @see BlockRing
+ */
+@Component("pipelineDetectionEngine")
+@PropertySource("classpath:/application.properties")
+@Slf4j
+public class PipelineDetectionEngine implements DetectionEngine {
+
+    static final int BATCH_SIZE = 1024;
+    // batches of each aggregator for each parser, one being filled while the others are counted
+    private static final int BATCHES_PER_PARSER = 4;
+    private static final long WAIT_MILLIS = 10;
+
+    private Environment env;
+
+    /**
+     * Injecting dependencies
+     *
+     * @param env to read the size of the ring and the number of threads of each stage
+     */
+    @Autowired
+    public PipelineDetectionEngine(Environment env) {
+        this.env = env;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<BlockedUser> detect(ParserDTO parserDTO) throws IOException, InterruptedException {
+        List<Path> files = LogFiles.resolve(parserDTO.getFileUrl());
+        List<DetectionRule> rules = parserDTO.getRules();
+        // with --seek only the lines around the windows of the rules are read
+        long[] span = parserDTO.isSeek() ? DetectionRule.span(rules) : null;
+        int count = rules.size();
+
+        int blockSize = Integer.valueOf(env.getProperty("application.engine.pipelineBlockSize"));
+        int blocks = Integer.valueOf(env.getProperty("application.engine.pipelineBlocks"));
+        int parserThreads = Integer.valueOf(env.getProperty("application.engine.pipelineParsers"));
+        int aggregatorThreads = Integer.valueOf(env.getProperty("application.engine.pipelineAggregators"));
+
+        DetectionWindow[] windows = new DetectionWindow[count];
+        for (int i = 0; i < count; i++) {
+            windows[i] = rules.get(i).window();
+        }
+        // requests out of every window are dropped by the parsers
+        long[] windowsSpan = DetectionRule.span(rules);
+
+        BlockRing ring = new BlockRing(blocks, blockSize);
+        Aggregator[] aggregators = new Aggregator[aggregatorThreads];
+        for (int i = 0; i < aggregatorThreads; i++) {
+            aggregators[i] = new Aggregator(windows, parserThreads, ring);
+        }
+        Parser[] parsers = new Parser[parserThreads];
+        for (int i = 0; i < parserThreads; i++) {
+            parsers[i] = new Parser(ring, aggregators, windowsSpan);
+        }
+
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parserThreads + aggregatorThreads, runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long lines = 0;
+        try {
+            List<Future<?>> aggregating = new ArrayList<>();
+            for (Aggregator aggregator : aggregators) {
+                aggregating.add(executor.submit(aggregator));
+            }
+            List<Future<Long>> parsing = new ArrayList<>();
+            for (Parser parser : parsers) {
+                parsing.add(executor.submit(parser));
+            }
+
+            BlockReader reader = new BlockReader(ring);
+            for (Path path : files) {
+                reader.read(RequestLogReader.open(path, span));
+            }
+            reader.close();
+
+            for (Future<Long> parsed : parsing) {
+                lines += get(parsed);
+            }
+            for (Aggregator aggregator : aggregators) {
+                aggregator.end();
+            }
+            for (Future<?> aggregated : aggregating) {
+                get(aggregated);
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            ring.abort(e);
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long malformedLines = 0;
+        for (Parser parser : parsers) {
+            malformedLines += parser.malformedLines;
+        }
+        if (malformedLines > 0) {
+            log.warn(malformedLines + " MALFORMED LINES SKIPPED");
+        }
+        log.info("PIPELINE READER WAITED FOR THE PARSERS " + ring.readerWaits() + " TIMES");
+
+        List<BlockedUser> blockedUsers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // aggregators count disjoint IP addresses, so their counters are merged by adding them up
+            IntCounterMap ipv4Requests = new IntCounterMap();
+            Map<String, Integer> otherRequests = new HashMap<>();
+            for (Aggregator aggregator : aggregators) {
+                aggregator.ipv4Requests[i].forEach(ipv4Requests::add);
+                otherRequests.putAll(aggregator.otherRequests.get(i));
+            }
+
+            log.info("LINES READ: " + lines + ", DISTINCT IP ADDRESSES IN WINDOW " + windows[i].describe() + " FROM "
+                    + LogDates.format(windows[i].getStart()) + ": " + (ipv4Requests.size() + otherRequests.size()));
+
+            DetectionRule rule = rules.get(i);
+            blockedUsers.addAll(MemoryDetectionEngine.blockedUsers(ipv4Requests, otherRequests, rule.getThreshold(), rule.comment(count > 1)));
+        }
+        return blockedUsers;
+    }
+
+    /**
+     * It waits for a stage to end, giving back the exception that made it fail.
+     */
+    private static <T> T get(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * It waits for a batch of a queue, giving up if the pipeline failed meanwhile.
+     */
+    private static Batch take(BlockingQueue<Batch> queue, BlockRing ring) throws InterruptedException {
+        Batch batch;
+        while ((batch = queue.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+            ring.checkFailure();
+        }
+        return batch;
+    }
+
+    /**
+     * First stage, it fills the blocks of the ring with the lines of the logs, on the calling thread.
+     * A block is published up to its last line break, the partial line after it is carried to the next block.
+     * A block only grows when it cannot hold a whole line.
+     */
+    private static final class BlockReader {
+
+        private final BlockRing ring;
+        private long sequence = -1;
+        private byte[] block;
+        private int length;
+
+        BlockReader(BlockRing ring) {
+            this.ring = ring;
+        }
+
+        void read(InputStream log) throws IOException {
+            try (InputStream in = log) {
+                while (true) {
+                    if (sequence < 0) {
+                        sequence = ring.claim();
+                        block = ring.block(sequence);
+                    } else if (length == block.length) {
+                        block = ring.grow(sequence, length + 1);
+                    }
+
+                    int read = in.read(block, length, block.length - length);
+                    if (read == -1) {
+                        break;
+                    }
+                    length += read;
+                    if (length < block.length) {
+                        continue;
+                    }
+
+                    int end = length;
+                    while (end > 0 && block[end - 1] != '\n') {
+                        end--;
+                    }
+                    if (end > 0) {
+                        long next = ring.claim();
+                        byte[] nextBlock = ring.grow(next, length - end);
+                        System.arraycopy(block, end, nextBlock, 0, length - end);
+                        ring.publish(sequence, end);
+                        sequence = next;
+                        block = nextBlock;
+                        length = length - end;
+                    }
+                }
+            }
+            // the last line of a file ends with it, even without a line break
+            if (length > 0) {
+                ring.publish(sequence, length);
+                sequence = -1;
+                length = 0;
+            }
+        }
+
+        void close() {
+            if (sequence >= 0) {
+                // claimed but left empty
+                ring.publish(sequence, 0);
+            }
+            ring.close();
+        }
+    }
+
+    /**
+     * Second stage, it turns the lines of the blocks it takes into records of the requests within the span of the rules,
+     * batched by the aggregator of their IP address.
+     */
+    private static final class Parser implements Callable<Long> {
+
+        private final BlockRing ring;
+        private final Aggregator[] aggregators;
+        private final Batch[] batches;
+        private final long[] span;
+        private final LogLineScanner scanner = new LogLineScanner();
+        private final ByteLine line = new ByteLine();
+        private long lines;
+        private long malformedLines;
+
+        Parser(BlockRing ring, Aggregator[] aggregators, long[] span) {
+            this.ring = ring;
+            this.aggregators = aggregators;
+            this.batches = new Batch[aggregators.length];
+            for (int i = 0; i < aggregators.length; i++) {
+                batches[i] = new Batch();
+            }
+            this.span = span;
+        }
+
+        @Override
+        public Long call() throws InterruptedException {
+            try {
+                long sequence;
+                while ((sequence = ring.take()) >= 0) {
+                    parse(ring.block(sequence), ring.length(sequence));
+                    ring.release(sequence);
+                }
+                for (int i = 0; i < batches.length; i++) {
+                    if (batches[i].size > 0) {
+                        aggregators[i].queue.put(batches[i]);
+                    }
+                }
+                return lines;
+            } catch (InterruptedException | RuntimeException e) {
+                ring.abort(e);
+                throw e;
+            }
+        }
+
+        private void parse(byte[] block, int length) throws InterruptedException {
+            int start = 0;
+            for (int i = 0; i < length; i++) {
+                if (block[i] == '\n') {
+                    parse(block, start, i);
+                    start = i + 1;
+                }
+            }
+            if (start < length) {
+                parse(block, start, length);
+            }
+        }
+
+        private void parse(byte[] block, int start, int end) throws InterruptedException {
+            if (++lines == 1) {
+                StartupReport.firstLineRead();
+            }
+            if (end > start && block[end - 1] == '\r') {
+                end--;
+            }
+            line.wrap(block, start, end);
+
+            long millis;
+            long ipv4;
+            if (!scanner.scan(line) || (millis = scanner.millis()) == LogDates.INVALID || scanner.status() < 0
+                    || ((ipv4 = scanner.ipv4()) == IpAddresses.NOT_IPV4 && !scanner.isIpv6())) {
+                malformedLines++;
+                return;
+            }
+            millis = LogDates.roundToSecond(millis);
+            if (millis < span[0] || millis > span[1]) {
+                return;
+            }
+
+            String ip = null;
+            int hash;
+            if (ipv4 != IpAddresses.NOT_IPV4) {
+                hash = IntCounterMap.mix((int) ipv4);
+            } else {
+                ip = scanner.value(LogLineScanner.IP);
+                hash = IntCounterMap.mix(ip.hashCode());
+            }
+            int aggregator = (hash & Integer.MAX_VALUE) % aggregators.length;
+
+            Batch batch = batches[aggregator];
+            batch.add(millis, (int) ipv4, ip);
+            if (batch.size == BATCH_SIZE) {
+                aggregators[aggregator].queue.put(batch);
+                batches[aggregator] = take(aggregators[aggregator].free, ring);
+            }
+        }
+    }
+
+    /**
+     * Third stage, it counts the requests of the IP addresses of one bucket for each rule.
+     * Only its own thread touches the counters until it ends.
+     */
+    private static final class Aggregator implements Runnable {
+
+        // batch telling the aggregator that every parser ended
+        private static final Batch END = new Batch();
+
+        private final DetectionWindow[] windows;
+        private final IntCounterMap[] ipv4Requests;
+        private final List<Map<String, Integer>> otherRequests;
+        private final BlockingQueue<Batch> queue;
+        private final BlockingQueue<Batch> free;
+        private final BlockRing ring;
+
+        Aggregator(DetectionWindow[] windows, int parsers, BlockRing ring) {
+            this.windows = windows;
+            this.ipv4Requests = new IntCounterMap[windows.length];
+            this.otherRequests = new ArrayList<>(windows.length);
+            for (int i = 0; i < windows.length; i++) {
+                ipv4Requests[i] = new IntCounterMap();
+                otherRequests.add(new HashMap<>());
+            }
+            // every batch fits in the queue, so parsers only wait for a free batch
+            int batches = parsers * BATCHES_PER_PARSER;
+            this.queue = new ArrayBlockingQueue<>(parsers + batches + 1);
+            this.free = new ArrayBlockingQueue<>(batches);
+            for (int i = 0; i < batches; i++) {
+                free.add(new Batch());
+            }
+            this.ring = ring;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Batch batch;
+                while ((batch = take(queue, ring)) != END) {
+                    count(batch);
+                    batch.size = 0;
+                    // each parser started with a batch of its own, the free queue cannot hold them all
+                    free.offer(batch);
+                }
+            } catch (InterruptedException e) {
+                ring.abort(e);
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                ring.abort(e);
+                throw e;
+            }
+        }
+
+        private void count(Batch batch) {
+            for (int r = 0; r < batch.size; r++) {
+                long millis = batch.millis[r];
+                for (int i = 0; i < windows.length; i++) {
+                    if (!windows[i].contains(millis)) {
+                        continue;
+                    }
+                    String ip = batch.otherIps[r];
+                    if (ip == null) {
+                        ipv4Requests[i].increment(batch.ipv4s[r]);
+                    } else {
+                        otherRequests.get(i).merge(ip, 1, Integer::sum);
+                    }
+                }
+            }
+        }
+
+        void end() throws InterruptedException {
+            queue.put(END);
+        }
+    }
+
+    /**
+     * Records of the requests of a batch in primitive arrays: date and IPv4 address, or the text of any other address.
+     */
+    private static final class Batch {
+
+        private final long[] millis = new long[BATCH_SIZE];
+        private final int[] ipv4s = new int[BATCH_SIZE];
+        private final String[] otherIps = new String[BATCH_SIZE];
+        private int size;
+
+        void add(long millis, int ipv4, String otherIp) {
+            this.millis[size] = millis;
+            this.ipv4s[size] = ipv4;
+            this.otherIps[size] = otherIp;
+            size++;
+        }
+    }
+
+    /**
+     * Line of a block seen as chars without decoding it. Delimiters, quotes, dates, IP addresses and statuses are ASCII
+     * and no byte of a multi byte UTF-8 char is, so the scanner finds the same fields it finds in the decoded line.
+     */
+    private static final class ByteLine implements CharSequence {
+
+        private byte[] bytes;
+        private int start;
+        private int length;
+
+        void wrap(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.start = start;
+            this.length = end - start;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[start + index] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(bytes, this.start + start, end - start, StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, start, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
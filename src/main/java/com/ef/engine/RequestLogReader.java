@@ -0,0 +1,137 @@
+package com.ef.engine;
+
+import com.ef.config.StartupReport;
+import com.ef.domain.DetectionRule;
+import com.ef.parser.IpAddresses;
+import com.ef.parser.LogDates;
+import com.ef.parser.LogFiles;
+import com.ef.parser.LogLineScanner;
+import com.ef.parser.LogTimeIndex;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * It reads the requests of a log file for the detection engines, one line at a time. Gzip and zstd logs are decompressed as they are read.
+ * <p>Lines are split and checked exactly as in the file .log Loader Step, so the same lines are skipped as malformed,
+ * and dates are rounded to the second as stored in USER_LOG, so engines see the same requests the batch engine loads.</p>
+ */
+@Slf4j
+final class RequestLogReader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Receives each well formed request of the log.
+     */
+    @FunctionalInterface
+    interface RequestHandler {
+
+        /**
+         * @param millis  wall clock epoch millis of the request, rounded to the second
+         * @param ipv4    IP address packed in the lower 32 bits, or {@link IpAddresses#NOT_IPV4}
+         * @param scanner scanner holding the line, ex: to get the IP address of a request that is not IPv4
+         */
+        void accept(long millis, long ipv4, LogLineScanner scanner);
+    }
+
+    private RequestLogReader() {
+    }
+
+    /**
+     * It passes every well formed request of several log files to the handler, one file after the other.
+     *
+     * @param paths   log files, ex: the files of a directory as given by {@link LogFiles#resolve(String)}
+     * @param handler receives each request
+     * @return number of lines read
+     * @throws IOException if a log could not be read
+     */
+    static long read(List<Path> paths, RequestHandler handler) throws IOException {
+        return read(paths, null, handler);
+    }
+
+    /**
+     * It passes the well formed requests of several log files to the handler, one file after the other.
+     * Plain files are only read around the span given, see {@link LogTimeIndex}: the handler still gets some requests out of it.
+     *
+     * @param paths   log files, ex: the files of a directory as given by {@link LogFiles#resolve(String)}
+     * @param span    earliest and latest wall clock epoch millis of the requests needed, as {@link DetectionRule#span(List)} gives them,
+     *                or null to read every request
+     * @param handler receives each request
+     * @return number of lines read
+     * @throws IOException if a log could not be read
+     */
+    static long read(List<Path> paths, long[] span, RequestHandler handler) throws IOException {
+        long lines = 0;
+        for (Path path : paths) {
+            lines += read(open(path, span), handler);
+        }
+        return lines;
+    }
+
+    /**
+     * It opens a log file to be read around a span. Plain files are only read around it, see {@link LogTimeIndex},
+     * compressed ones are read whole.
+     *
+     * @param path log file
+     * @param span earliest and latest wall clock epoch millis of the requests needed, or null to read every request
+     * @return content of the log, decompressed
+     * @throws IOException if the log could not be opened
+     */
+    static InputStream open(Path path, long[] span) throws IOException {
+        if (span != null && !LogFiles.isCompressed(path)) {
+            long[] range = LogTimeIndex.of(path).range(span[0], span[1]);
+            log.info("READING BYTES " + range[0] + " TO " + range[1] + " OF " + path);
+            return LogFiles.open(path, range[0], range[1]);
+        }
+        return LogFiles.open(path);
+    }
+
+    /**
+     * It passes every well formed request of the log to the handler, in the order of the file.
+     *
+     * @param path    log file
+     * @param handler receives each request
+     * @return number of lines read
+     * @throws IOException if the log could not be read
+     */
+    static long read(Path path, RequestHandler handler) throws IOException {
+        return read(LogFiles.open(path), handler);
+    }
+
+    private static long read(InputStream in, RequestHandler handler) throws IOException {
+        long lines = 0;
+        long malformedLines = 0;
+        LogLineScanner scanner = new LogLineScanner();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (++lines == 1) {
+                    StartupReport.firstLineRead();
+                }
+
+                long millis;
+                long ipv4;
+                if (!scanner.scan(line) || (millis = scanner.millis()) == LogDates.INVALID || scanner.status() < 0
+                        || ((ipv4 = scanner.ipv4()) == IpAddresses.NOT_IPV4 && !scanner.isIpv6())) {
+                    malformedLines++;
+                    continue;
+                }
+                handler.accept(LogDates.roundToSecond(millis), ipv4, scanner);
+            }
+        }
+
+        if (malformedLines > 0) {
+            log.warn(malformedLines + " MALFORMED LINES SKIPPED");
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,124 @@
+package com.ef.engine;
+
+import com.ef.domain.BlockedUser;
+import com.ef.domain.DetectionRule;
+import com.ef.domain.DetectionWindow;
+import com.ef.domain.ParserDTO;
+import com.ef.parser.LogDates;
+import com.ef.parser.LogFiles;
+import com.ef.segment.Segment;
+import com.ef.segment.SegmentStore;
+import com.ef.segment.SegmentWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Detection engine that keeps a columnar copy of each log file on local disk instead of loading it into USER_LOG,
+ * for logs queried many times with different rules or thresholds.</p>
+ * <p>The first run of a log writes its {@link Segment} into application.segment.directory, the following ones only scan it:
+ * blocks outside the window of a rule are skipped and only the time and IP columns of the others are read, through memory
+ * mapped files. The segment is written again whenever the log changes.
+ * The IP addresses blocked are the same ones the memory engine blocks.</p>
+ *
+ * @see SegmentStore
+ */
+@Component("segmentDetectionEngine")
+@PropertySource("classpath:/application.properties")
+@Slf4j
+public class SegmentDetectionEngine implements DetectionEngine {
+
+    private Environment env;
+
+    /**
+     * Injecting dependencies
+     *
+     * @param env to read the directory of the segments
+     */
+    @Autowired
+    public SegmentDetectionEngine(Environment env) {
+        this.env = env;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<BlockedUser> detect(ParserDTO parserDTO) throws IOException {
+        SegmentStore store = new SegmentStore(Paths.get(env.getProperty("application.segment.directory")));
+        List<DetectionRule> rules = parserDTO.getRules();
+        int count = rules.size();
+
+        List<Segment> segments = new ArrayList<>();
+        try {
+            for (Path file : LogFiles.resolve(parserDTO.getFileUrl())) {
+                segments.add(segmentOf(store, file));
+            }
+
+            List<BlockedUser> blockedUsers = new ArrayList<>();
+            for (DetectionRule rule : rules) {
+                DetectionWindow window = rule.window();
+                IntCounterMap ipv4Requests = new IntCounterMap();
+                Map<String, Integer> otherRequests = new HashMap<>();
+
+                int blocksRead = 0;
+                int blocks = 0;
+                for (Segment segment : segments) {
+                    blocksRead += segment.count(window.getStart(), window.getEnd(), ipv4Requests, otherRequests);
+                    blocks += segment.getBlocks();
+                }
+                log.info("BLOCKS READ: " + blocksRead + " OF " + blocks + ", DISTINCT IP ADDRESSES IN WINDOW " + window.describe()
+                        + " FROM " + LogDates.format(window.getStart()) + ": " + (ipv4Requests.size() + otherRequests.size()));
+
+                blockedUsers.addAll(MemoryDetectionEngine.blockedUsers(ipv4Requests, otherRequests,
+                        rule.getThreshold(), rule.comment(count > 1)));
+            }
+            return blockedUsers;
+        } finally {
+            for (Segment segment : segments) {
+                segment.close();
+            }
+        }
+    }
+
+    /**
+     * It opens the segment of a log file, writing it first if there is none or the log changed.
+     */
+    private Segment segmentOf(SegmentStore store, Path file) throws IOException {
+        Segment segment = store.open(file);
+        if (segment != null) {
+            log.info("SEGMENT OF " + file + " IS CURRENT, " + segment.getRows() + " REQUESTS");
+            return segment;
+        }
+
+        long start = System.currentTimeMillis();
+        SegmentWriter writer = store.create(file);
+        try {
+            RequestLogReader.read(file, (millis, ipv4, scanner) -> {
+                try {
+                    writer.append(millis, ipv4, scanner);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.close();
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+        segment = Segment.open(store.segmentOf(file));
+        log.info("SEGMENT OF " + file + " WRITTEN IN " + (System.currentTimeMillis() - start) + " ms, " + segment.getRows() + " REQUESTS");
+        return segment;
+    }
+}
@@ -0,0 +1,210 @@
+package com.ef.engine;
+
+import com.ef.domain.BlockedUser;
+import com.ef.domain.DetectionRule;
+import com.ef.domain.DetectionWindow;
+import com.ef.domain.ParserDTO;
+import com.ef.parser.IpAddresses;
+import com.ef.parser.LogDates;
+import com.ef.parser.LogFiles;
+import com.ef.parser.LogLineScanner;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Detection engine that blocks the IP addresses exceeding the threshold in any period of the given duration,
+ * not only in the one starting at startDate, which is ignored. The log is read once.</p>
+ * <p>Each IP address keeps the dates of its requests of the last duration in a small ring, never more than threshold of them.
+ * When the ring is full the threshold was reached within one duration and the IP is blocked, the first such period is reported
+ * in the comment with every request of the IP within it. IP addresses without requests in the last duration are dropped
+ * from time to time, so memory is bounded by the number of IP addresses active within one duration.</p>
+ * <p>With a rule set, each distinct duration and threshold is checked in the same pass over the log.</p>
+ * <p>Lines are expected in chronological order as web servers write them, a few seconds apart is fine:
+ * a line older than the newest request of its IP by more than the duration is not counted.</p>
+ */
+@Component("slidingDetectionEngine")
+@Slf4j
+public class SlidingWindowDetectionEngine implements DetectionEngine {
+
+    // lines between two purges of inactive IP addresses
+    private static final int PURGE_INTERVAL = 1 << 16;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<BlockedUser> detect(ParserDTO parserDTO) throws IOException {
+
+        // startDate does not matter, rules with the same duration and threshold are the same check
+        Map<String, Check> checksByRule = new LinkedHashMap<>();
+        for (DetectionRule rule : parserDTO.getRules()) {
+            checksByRule.putIfAbsent(rule.getDuration() + "," + rule.getThreshold(), new Check(rule.getDuration(), rule.getThreshold()));
+        }
+        Check[] checks = checksByRule.values().toArray(new Check[0]);
+
+        long[] newest = {Long.MIN_VALUE};
+        int[] sincePurge = {0};
+
+        long lines = RequestLogReader.read(LogFiles.resolve(parserDTO.getFileUrl()), (millis, ipv4, scanner) -> {
+            // IPv4 addresses are keyed by their packed value, any other by its text
+            Object key = ipv4 != IpAddresses.NOT_IPV4 ? (Object) ipv4 : scanner.value(LogLineScanner.IP);
+            for (Check check : checks) {
+                check.requestsByIp.computeIfAbsent(key, ip -> new Requests()).add(millis, check.length, check.threshold);
+            }
+
+            newest[0] = Math.max(newest[0], millis);
+            if (++sincePurge[0] == PURGE_INTERVAL) {
+                sincePurge[0] = 0;
+                for (Check check : checks) {
+                    check.purge(newest[0]);
+                }
+            }
+        });
+
+        List<BlockedUser> blockedUsers = new ArrayList<>();
+        for (Check check : checks) {
+            log.info("LINES READ: " + lines + ", MOST IP ADDRESSES ACTIVE AT ONCE IN " + check.duration + ": "
+                    + Math.max(check.maxActive, check.requestsByIp.size()));
+            blockedUsers.addAll(check.blockedUsers());
+        }
+        return blockedUsers;
+    }
+
+    /**
+     * One duration and threshold checked, with the requests of each IP address.
+     */
+    private static final class Check {
+
+        private final String duration;
+        private final long length;
+        private final long threshold;
+        private final Map<Object, Requests> requestsByIp = new HashMap<>();
+        private int maxActive;
+
+        Check(String duration, long threshold) {
+            this.duration = DetectionWindow.describe(duration);
+            this.length = DetectionWindow.lengthOf(duration);
+            this.threshold = Math.max(1, Math.min(threshold, Integer.MAX_VALUE));
+        }
+
+        /**
+         * It drops the IP addresses not blocked without requests in the last duration.
+         */
+        void purge(long newest) {
+            maxActive = Math.max(maxActive, requestsByIp.size());
+            SlidingWindowDetectionEngine.purge(requestsByIp, newest - length);
+        }
+
+        List<BlockedUser> blockedUsers() {
+            return SlidingWindowDetectionEngine.blockedUsers(requestsByIp, threshold, duration);
+        }
+    }
+
+    /**
+     * It drops the IP addresses not blocked whose last request is older than the given date.
+     */
+    private static void purge(Map<Object, Requests> requestsByIp, long olderThan) {
+        Iterator<Requests> iterator = requestsByIp.values().iterator();
+        while (iterator.hasNext()) {
+            Requests requests = iterator.next();
+            if (!requests.isBlocked() && requests.newest() < olderThan) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static List<BlockedUser> blockedUsers(Map<Object, Requests> requestsByIp, long threshold, String duration) {
+        Date blockedDate = new Date();
+        List<BlockedUser> blockedUsers = new ArrayList<>();
+
+        requestsByIp.forEach((key, requests) -> {
+            if (requests.isBlocked()) {
+                String ip = key instanceof Long ? IpAddresses.toString(((Long) key).intValue()) : (String) key;
+                String comment = "blocked because it exceeded the threshold of " + threshold + " requests in " + duration
+                        + " from " + LogDates.format(requests.windowStart) + " to " + LogDates.format(requests.windowEnd);
+                blockedUsers.add(MemoryDetectionEngine.blockedUser(ip, requests.blockedRequests, blockedDate, comment));
+            }
+        });
+
+        blockedUsers.sort(Comparator.comparing(BlockedUser::getIp));
+        return blockedUsers;
+    }
+
+    /**
+     * Requests of one IP address: the dates of the last duration, sorted, until the IP is blocked,
+     * then the period it was blocked for and its requests within it.
+     */
+    private static final class Requests {
+
+        private long[] dates = new long[4];
+        private int head;
+        private int size;
+
+        private long windowStart;
+        private long windowEnd;
+        private int blockedRequests;
+
+        void add(long millis, long length, long threshold) {
+            if (isBlocked()) {
+                if (millis >= windowStart && millis <= windowEnd) {
+                    blockedRequests++;
+                }
+                return;
+            }
+
+            insert(millis);
+            // only the dates within one duration of the newest one matter
+            long newest = newest();
+            while (size > 0 && dates[head] < newest - length) {
+                head = (head + 1) % dates.length;
+                size--;
+            }
+
+            if (size >= threshold) {
+                windowStart = dates[head];
+                windowEnd = windowStart + length;
+                blockedRequests = size;
+                dates = null;
+            }
+        }
+
+        boolean isBlocked() {
+            return dates == null;
+        }
+
+        long newest() {
+            return dates[(head + size - 1) % dates.length];
+        }
+
+        /**
+         * It adds a date keeping them sorted, dates come almost always in order so it is appended.
+         */
+        private void insert(long millis) {
+            if (size == dates.length) {
+                long[] grown = new long[dates.length << 1];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = dates[(head + i) % dates.length];
+                }
+                dates = grown;
+                head = 0;
+            }
+            int i = size;
+            while (i > 0 && dates[(head + i - 1) % dates.length] > millis) {
+                dates[(head + i) % dates.length] = dates[(head + i - 1) % dates.length];
+                i--;
+            }
+            dates[(head + i) % dates.length] = millis;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package com.ef.index;
+
+import com.ef.parser.IpAddresses;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Immutable set of blocked IP addresses to check whether an address is blocked, ex: from an edge proxy.</p>
+ * <p>Addresses are first put in a binary radix trie, one bit of the address per level. When both halves of a prefix are blocked
+ * the prefix itself is blocked, so adjacent addresses collapse into the smallest set of CIDR prefixes
+ * (ex: 10.0.0.0 to 10.0.0.255 is a single 10.0.0.0/24) and duplicates take no room.</p>
+ * <p>Lookups go through a multibit trie built from those prefixes: the first 16 bits of the address index a root table and
+ * every level below takes 4 more bits, 16 children in one cache line. An IPv4 lookup reads at most 5 entries of a flat int array
+ * and allocates nothing. A prefix not ending at a level boundary fills every child it covers. It is thread safe
+ * as nothing changes once built.</p>
+ * <p>The index can be written to a snapshot file holding its CIDR prefixes and read back without a database.</p>
+ *
+ * @see BlockedAddressIndexLoader
+ */
+public final class BlockedAddressIndex {
+
+    // "IPBX", first bytes of a snapshot file
+    private static final int MAGIC = 0x49504258;
+    private static final int VERSION = 1;
+
+    private static final int ROOT_BITS = 16;
+    private static final int STRIDE = 4;
+
+    // child whose whole subtree is blocked, 0 is no child as the root is never a child
+    private static final int BLOCKED = -1;
+
+    // lookup tables, null when there is no address of that family
+    private final int[] ipv4Table;
+    private final int[] ipv6Table;
+    // CIDR prefixes, the address bytes followed by the length
+    private final List<byte[]> ipv4Prefixes;
+    private final List<byte[]> ipv6Prefixes;
+    private final int addresses;
+
+    private BlockedAddressIndex(Trie ipv4, Trie ipv6, int addresses) {
+        this.ipv4Prefixes = ipv4.prefixes(4);
+        this.ipv6Prefixes = ipv6.prefixes(16);
+        this.ipv4Table = table(ipv4Prefixes, 32);
+        this.ipv6Table = table(ipv6Prefixes, 128);
+        this.addresses = addresses;
+    }
+
+    /**
+     * It builds the index of a list of addresses, ex: the IP column of BLOCKED_USER.
+     * Text that is not an IPv4 nor an IPv6 address is ignored.
+     *
+     * @param ips IP addresses in their text form, duplicates are fine
+     * @return the index
+     */
+    public static BlockedAddressIndex of(Iterable<String> ips) {
+        Trie ipv4 = new Trie();
+        Trie ipv6 = new Trie();
+        int addresses = 0;
+
+        for (String ip : ips) {
+            if (ip == null) {
+                continue;
+            }
+            long address = IpAddresses.parseIpv4(ip);
+            if (address != IpAddresses.NOT_IPV4) {
+                ipv4.insert(ipv4Bytes((int) address), 32);
+                addresses++;
+                continue;
+            }
+            byte[] bytes = IpAddresses.parseIpv6(ip.trim());
+            if (bytes != null) {
+                if (IpAddresses.isIpv4Mapped(bytes)) {
+                    ipv4.insert(Arrays.copyOfRange(bytes, 12, 16), 32);
+                } else {
+                    ipv6.insert(bytes, 128);
+                }
+                addresses++;
+            }
+        }
+        return new BlockedAddressIndex(ipv4, ipv6, addresses);
+    }
+
+    /**
+     * It checks an IPv4 address.
+     *
+     * @param ipv4 address packed in an int, as {@link IpAddresses#parseIpv4(CharSequence)} gives it
+     * @return true if the address is blocked
+     */
+    public boolean isBlocked(int ipv4) {
+        int[] table = ipv4Table;
+        if (table == null) {
+            return false;
+        }
+        int node = table[ipv4 >>> ROOT_BITS];
+        for (int shift = ROOT_BITS - STRIDE; node > 0; shift -= STRIDE) {
+            node = table[node + ((ipv4 >>> shift) & 0xf)];
+        }
+        return node == BLOCKED;
+    }
+
+    /**
+     * It checks an IPv4 or IPv6 address. IPv4 mapped addresses (::ffff:a.b.c.d) are checked as the IPv4 address they map,
+     * as the index keeps them.
+     *
+     * @param address 4 bytes of an IPv4 or 16 bytes of an IPv6 address, in network order as InetAddress gives them
+     * @return true if the address is blocked
+     */
+    public boolean isBlocked(byte[] address) {
+        if (address.length == 4) {
+            return isBlocked(((address[0] & 0xff) << 24) | ((address[1] & 0xff) << 16) | ((address[2] & 0xff) << 8) | (address[3] & 0xff));
+        }
+        if (address.length != 16) {
+            return false;
+        }
+        if (IpAddresses.isIpv4Mapped(address)) {
+            return isBlocked(((address[12] & 0xff) << 24) | ((address[13] & 0xff) << 16) | ((address[14] & 0xff) << 8) | (address[15] & 0xff));
+        }
+        int[] table = ipv6Table;
+        if (table == null) {
+            return false;
+        }
+        int node = table[((address[0] & 0xff) << 8) | (address[1] & 0xff)];
+        for (int nibble = 4; node > 0; nibble++) {
+            int b = address[nibble >>> 1];
+            node = table[node + ((nibble & 1) == 0 ? (b >>> 4) & 0xf : b & 0xf)];
+        }
+        return node == BLOCKED;
+    }
+
+    /**
+     * It checks an address in its text form, it allocates so prefer the other lookups in hot paths.
+     *
+     * @param ip IPv4 or IPv6 address
+     * @return true if the address is blocked, false if it is not or it is not an address
+     */
+    public boolean isBlocked(String ip) {
+        long ipv4 = IpAddresses.parseIpv4(ip);
+        if (ipv4 != IpAddresses.NOT_IPV4) {
+            return isBlocked((int) ipv4);
+        }
+        byte[] address = IpAddresses.parseIpv6(ip.trim());
+        return address != null && isBlocked(address);
+    }
+
+    /**
+     * @return number of addresses the index was built from, duplicates included
+     */
+    public int getAddresses() {
+        return addresses;
+    }
+
+    /**
+     * @return the CIDR prefixes blocked, IPv4 first, ex: 192.168.0.0/24
+     */
+    public List<String> getPrefixes() {
+        List<String> cidrs = new ArrayList<>(ipv4Prefixes.size() + ipv6Prefixes.size());
+        for (byte[] prefix : ipv4Prefixes) {
+            cidrs.add(cidr(prefix));
+        }
+        for (byte[] prefix : ipv6Prefixes) {
+            cidrs.add(cidr(prefix));
+        }
+        return cidrs;
+    }
+
+    /**
+     * @return memory held by the lookup tables, in bytes
+     */
+    public long getBytes() {
+        return 4L * ((ipv4Table == null ? 0 : ipv4Table.length) + (ipv6Table == null ? 0 : ipv6Table.length));
+    }
+
+    /**
+     * It writes a snapshot of the index: a header followed by the prefixes, each one as its address bytes and its length.
+     *
+     * @param path snapshot file, it is replaced if it exists
+     * @throws IOException if the file could not be written
+     */
+    public void write(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(addresses);
+            out.writeInt(ipv4Prefixes.size());
+            for (byte[] prefix : ipv4Prefixes) {
+                out.write(prefix);
+            }
+            out.writeInt(ipv6Prefixes.size());
+            for (byte[] prefix : ipv6Prefixes) {
+                out.write(prefix);
+            }
+        }
+    }
+
+    /**
+     * It reads a snapshot written by {@link #write(Path)}.
+     *
+     * @param path snapshot file
+     * @return the index
+     * @throws IOException if the file could not be read or it is not a snapshot
+     */
+    public static BlockedAddressIndex read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not a blocked address snapshot: " + path);
+            }
+            int addresses = in.readInt();
+            Trie ipv4 = readTrie(in, 4);
+            Trie ipv6 = readTrie(in, 16);
+            return new BlockedAddressIndex(ipv4, ipv6, addresses);
+        }
+    }
+
+    private static Trie readTrie(DataInputStream in, int bytes) throws IOException {
+        Trie trie = new Trie();
+        byte[] address = new byte[bytes];
+        for (int prefixes = in.readInt(); prefixes > 0; prefixes--) {
+            in.readFully(address);
+            int length = in.readUnsignedByte();
+            if (length > bytes * 8) {
+                throw new IOException("prefix length out of range: " + length);
+            }
+            trie.insert(address, length);
+        }
+        return trie;
+    }
+
+    /**
+     * It builds the lookup table of a list of prefixes: the root table of 2^16 children followed by the nodes of 16 children,
+     * each child is 0, {@link #BLOCKED} or the index of its first child.
+     *
+     * @return the table, null if there is no prefix
+     */
+    private static int[] table(List<byte[]> prefixes, int bits) {
+        if (prefixes.isEmpty()) {
+            return null;
+        }
+        int[] table = new int[(1 << ROOT_BITS) + (1 << STRIDE) * 64];
+        int size = 1 << ROOT_BITS;
+
+        for (byte[] prefix : prefixes) {
+            int length = prefix[prefix.length - 1] & 0xff;
+            int node = 0;
+            int from = 0;
+            int levelBits = ROOT_BITS;
+            while (from + levelBits < length && from + levelBits < bits) {
+                int slot = node + bits(prefix, from, levelBits);
+                if (table[slot] == 0) {
+                    if (size + (1 << STRIDE) > table.length) {
+                        table = Arrays.copyOf(table, table.length << 1);
+                    }
+                    table[slot] = size;
+                    size += 1 << STRIDE;
+                }
+                node = table[slot];
+                from += levelBits;
+                levelBits = STRIDE;
+            }
+            // the prefix ends within this level, it blocks every child it covers
+            int first = node + bits(prefix, from, levelBits);
+            Arrays.fill(table, first, first + (1 << (from + levelBits - length)), BLOCKED);
+        }
+        return Arrays.copyOf(table, size);
+    }
+
+    /**
+     * @return count bits of the address starting at bit from, as an int
+     */
+    private static int bits(byte[] address, int from, int count) {
+        int value = 0;
+        for (int bit = from; bit < from + count; bit++) {
+            value = (value << 1) | bit(address, bit);
+        }
+        return value;
+    }
+
+    private static String cidr(byte[] prefix) {
+        try {
+            return InetAddress.getByAddress(Arrays.copyOf(prefix, prefix.length - 1)).getHostAddress() + "/" + (prefix[prefix.length - 1] & 0xff);
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] ipv4Bytes(int address) {
+        return new byte[]{(byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address};
+    }
+
+    private static int bit(byte[] address, int bit) {
+        return (address[bit >>> 3] >>> (7 - (bit & 7))) & 1;
+    }
+
+    private static void setBit(byte[] address, int bit, int value) {
+        int mask = 1 << (7 - (bit & 7));
+        address[bit >>> 3] = (byte) (value == 0 ? address[bit >>> 3] & ~mask : address[bit >>> 3] | mask);
+    }
+
+    /**
+     * Binary trie used while building the index to collapse the addresses into CIDR prefixes.
+     */
+    private static final class Trie {
+
+        private int[] nodes = new int[2 << 10];
+        private int size = 1;
+        // a /0 prefix, every address is blocked
+        private boolean all;
+
+        void insert(byte[] address, int length) {
+            if (length == 0) {
+                all = true;
+                return;
+            }
+            int node = 0;
+            for (int bit = 0; bit < length; bit++) {
+                int slot = (node << 1) | bit(address, bit);
+                int child = nodes[slot];
+                if (child == BLOCKED) {
+                    // a shorter prefix already blocks it
+                    return;
+                }
+                if (bit == length - 1) {
+                    // any longer prefix below is left unreachable
+                    nodes[slot] = BLOCKED;
+                } else {
+                    if (child == 0) {
+                        child = newNode();
+                        nodes[slot] = child;
+                    }
+                    node = child;
+                }
+            }
+        }
+
+        private int newNode() {
+            if ((size + 1) << 1 > nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length << 1);
+            }
+            return size++;
+        }
+
+        /**
+         * It collapses the prefixes whose both halves are blocked and lists the ones left.
+         *
+         * @param bytes bytes of an address, 4 or 16
+         * @return the prefixes in address order, the address bytes followed by the length
+         */
+        List<byte[]> prefixes(int bytes) {
+            List<byte[]> prefixes = new ArrayList<>();
+            if (all || collapse(0)) {
+                prefixes.add(new byte[bytes + 1]);
+            } else {
+                collect(0, new byte[bytes], 0, prefixes);
+            }
+            return prefixes;
+        }
+
+        /**
+         * @return true if the whole subtree of the node is blocked
+         */
+        private boolean collapse(int node) {
+            for (int bit = 0; bit < 2; bit++) {
+                int child = nodes[(node << 1) | bit];
+                if (child > 0 && collapse(child)) {
+                    nodes[(node << 1) | bit] = BLOCKED;
+                }
+            }
+            return nodes[node << 1] == BLOCKED && nodes[(node << 1) | 1] == BLOCKED;
+        }
+
+        /**
+         * It walks the trie depth first adding each blocked prefix, address holds the bits of the current node.
+         */
+        private void collect(int node, byte[] address, int depth, List<byte[]> prefixes) {
+            for (int bit = 0; bit < 2; bit++) {
+                int child = nodes[(node << 1) | bit];
+                if (child == 0) {
+                    continue;
+                }
+                setBit(address, depth, bit);
+                if (child == BLOCKED) {
+                    byte[] prefix = Arrays.copyOf(address, address.length + 1);
+                    prefix[address.length] = (byte) (depth + 1);
+                    prefixes.add(prefix);
+                } else {
+                    collect(child, address, depth + 1, prefixes);
+                }
+                setBit(address, depth, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.ef.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * It builds the {@link BlockedAddressIndex} of the IP addresses in BLOCKED_USER.
+ * <p>BLOCKED_USER gets one row for each time an IP is blocked, over any number of runs, so addresses are read once each.</p>
+ */
+@Component("blockedAddressIndexLoader")
+@Slf4j
+public class BlockedAddressIndexLoader {
+
+    private DataSource dataSource;
+
+    /**
+     * Injecting our dependencies
+     *
+     * @param dataSource our Data source connection
+     * @see DataSource
+     */
+    @Autowired
+    public BlockedAddressIndexLoader(DataSource dataSource) {
+        Assert.notNull(dataSource, "Data source was not initialized");
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * It reads BLOCKED_USER and builds the index of its IP addresses.
+     *
+     * @return the index
+     */
+    public BlockedAddressIndex load() {
+        List<String> ips = new JdbcTemplate(dataSource).queryForList("SELECT DISTINCT IP FROM BLOCKED_USER", String.class);
+        BlockedAddressIndex index = BlockedAddressIndex.of(ips);
+
+        log.info("BLOCKED ADDRESSES: " + index.getAddresses() + ", CIDR PREFIXES: " + index.getPrefixes().size()
+                + ", INDEX SIZE: " + index.getBytes() + " BYTES");
+        return index;
+    }
+}
@@ -0,0 +1,92 @@
+package com.ef.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Histogram of latencies in microseconds, safe to record into from several threads (ex: the workers of a partitioned step).</p>
+ * <p>Every power of two is split into 4 buckets, so a percentile is off by less than 25% of its value
+ * whatever the range of the latencies, in 256 counters. Recording takes no lock and allocates nothing.</p>
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param micros latency to record, negative values are recorded as 0
+     */
+    public void record(long micros) {
+        micros = Math.max(micros, 0);
+        buckets.incrementAndGet(bucketOf(micros));
+        count.increment();
+        sum.add(micros);
+        max.accumulate(micros);
+    }
+
+    /**
+     * @return number of latencies recorded
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return mean of the latencies recorded in microseconds, 0 if there is none
+     */
+    public double getMean() {
+        long recorded = count.sum();
+        return recorded == 0 ? 0 : (double) sum.sum() / recorded;
+    }
+
+    /**
+     * @return highest latency recorded in microseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile between 0 and 100, ex: 99
+     * @return highest value of the bucket holding the percentile in microseconds (never above the max), 0 if there is none
+     */
+    public long getPercentile(double percentile) {
+        long recorded = count.sum();
+        if (recorded == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+        long seen = 0;
+        for (int bucket = 0; bucket < buckets.length(); bucket++) {
+            seen += buckets.get(bucket);
+            if (seen >= rank) {
+                return Math.min(highestOf(bucket), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    // values below 4 get a bucket each, then 4 buckets for each power of two
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS * (exponent - 1) + subBucket;
+    }
+
+    private static long highestOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 2);
+        return lowest + (1L << (exponent - 2)) - 1;
+    }
+}
@@ -0,0 +1,211 @@
+package com.ef.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Throughput and latencies of an execution of a step: items (lines) read per second, bytes read per second, parse errors,
+ * latency of each chunk (read, process, write and commit) and latency of each write to the database.</p>
+ * <p>The workers of a partitioned step share the same metrics, so they add up to the throughput of the whole step.
+ * Its elapsed time goes from the start of the first worker to the end of the last one.</p>
+ *
+ * @see com.ef.batch.listener.StepMetricsListener
+ */
+public class StepMetrics implements StepMetricsMXBean {
+
+    private static final double MILLIS = 1000.0;
+
+    private final String stepName;
+    private final long startMillis = System.currentTimeMillis();
+    private volatile long endMillis;
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final LongAdder itemsRead = new LongAdder();
+    private final LongAdder itemsWritten = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder parseErrors = new LongAdder();
+    private final LatencyHistogram chunkLatency = new LatencyHistogram();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+
+    /**
+     * @param stepName name of the step
+     */
+    public StepMetrics(String stepName) {
+        this.stepName = stepName;
+    }
+
+    /**
+     * It is called when the step (or one of its workers) starts.
+     */
+    public void started() {
+        running.incrementAndGet();
+    }
+
+    /**
+     * It is called when the step (or one of its workers) ends.
+     */
+    public void ended() {
+        if (running.decrementAndGet() == 0) {
+            endMillis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @param bytes     bytes of the item read, 0 if unknown
+     * @param malformed the item could not be parsed
+     */
+    public void read(int bytes, boolean malformed) {
+        itemsRead.increment();
+        bytesRead.add(bytes);
+        if (malformed) {
+            parseErrors.increment();
+        }
+    }
+
+    /**
+     * @param items  items written
+     * @param micros time taken to write them
+     */
+    public void written(int items, long micros) {
+        itemsWritten.add(items);
+        writeLatency.record(micros);
+    }
+
+    /**
+     * @param micros time taken by a chunk, from its first read to its commit
+     */
+    public void chunk(long micros) {
+        chunkLatency.record(micros);
+    }
+
+    /**
+     * @return one line with the throughput and the latencies of the step, ex: to log it at the end of the job
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder(stepName).append(": ")
+                .append(getItemsRead()).append(" read in ").append(getElapsedMillis()).append(" ms (")
+                .append(Math.round(getItemsPerSecond())).append(" items/s");
+        if (getBytesRead() > 0) {
+            summary.append(", ").append(String.format("%.1f", getBytesPerSecond() / (1024 * 1024))).append(" MB/s");
+        }
+        summary.append("), ").append(getItemsWritten()).append(" written, ")
+                .append(getParseErrors()).append(" parse errors, ")
+                .append(getChunks()).append(" chunks");
+        appendLatency(summary, "chunk", chunkLatency);
+        appendLatency(summary, "write", writeLatency);
+        return summary.toString();
+    }
+
+    private static void appendLatency(StringBuilder summary, String name, LatencyHistogram histogram) {
+        if (histogram.getCount() > 0) {
+            summary.append(String.format(", %s ms p50 %.1f p95 %.1f p99 %.1f max %.1f", name,
+                    histogram.getPercentile(50) / MILLIS, histogram.getPercentile(95) / MILLIS,
+                    histogram.getPercentile(99) / MILLIS, histogram.getMax() / MILLIS));
+        }
+    }
+
+    @Override
+    public String getStepName() {
+        return stepName;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return endMillis == 0;
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        long end = endMillis;
+        return (end == 0 ? System.currentTimeMillis() : end) - startMillis;
+    }
+
+    @Override
+    public long getItemsRead() {
+        return itemsRead.sum();
+    }
+
+    @Override
+    public long getItemsWritten() {
+        return itemsWritten.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getParseErrors() {
+        return parseErrors.sum();
+    }
+
+    @Override
+    public double getItemsPerSecond() {
+        return perSecond(getItemsRead());
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return perSecond(getBytesRead());
+    }
+
+    @Override
+    public long getChunks() {
+        return chunkLatency.getCount();
+    }
+
+    @Override
+    public double getChunkLatencyMean() {
+        return chunkLatency.getMean() / MILLIS;
+    }
+
+    @Override
+    public double getChunkLatencyP50() {
+        return chunkLatency.getPercentile(50) / MILLIS;
+    }
+
+    @Override
+    public double getChunkLatencyP95() {
+        return chunkLatency.getPercentile(95) / MILLIS;
+    }
+
+    @Override
+    public double getChunkLatencyP99() {
+        return chunkLatency.getPercentile(99) / MILLIS;
+    }
+
+    @Override
+    public double getChunkLatencyMax() {
+        return chunkLatency.getMax() / MILLIS;
+    }
+
+    @Override
+    public double getWriteLatencyMean() {
+        return writeLatency.getMean() / MILLIS;
+    }
+
+    @Override
+    public double getWriteLatencyP50() {
+        return writeLatency.getPercentile(50) / MILLIS;
+    }
+
+    @Override
+    public double getWriteLatencyP95() {
+        return writeLatency.getPercentile(95) / MILLIS;
+    }
+
+    @Override
+    public double getWriteLatencyP99() {
+        return writeLatency.getPercentile(99) / MILLIS;
+    }
+
+    @Override
+    public double getWriteLatencyMax() {
+        return writeLatency.getMax() / MILLIS;
+    }
+
+    private double perSecond(long amount) {
+        return amount * MILLIS / Math.max(getElapsedMillis(), 1);
+    }
+}
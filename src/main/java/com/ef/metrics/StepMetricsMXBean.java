@@ -0,0 +1,50 @@
+package com.ef.metrics;
+
+/**
+ * Metrics of the last execution of a step exposed over JMX as com.ef:type=StepMetrics,name="step name".
+ * They are updated while the step runs, latencies are in milliseconds.
+ *
+ * @see StepMetrics
+ */
+public interface StepMetricsMXBean {
+
+    String getStepName();
+
+    boolean isRunning();
+
+    long getElapsedMillis();
+
+    long getItemsRead();
+
+    long getItemsWritten();
+
+    long getBytesRead();
+
+    long getParseErrors();
+
+    double getItemsPerSecond();
+
+    double getBytesPerSecond();
+
+    long getChunks();
+
+    double getChunkLatencyMean();
+
+    double getChunkLatencyP50();
+
+    double getChunkLatencyP95();
+
+    double getChunkLatencyP99();
+
+    double getChunkLatencyMax();
+
+    double getWriteLatencyMean();
+
+    double getWriteLatencyP50();
+
+    double getWriteLatencyP95();
+
+    double getWriteLatencyP99();
+
+    double getWriteLatencyMax();
+}
@@ -0,0 +1,213 @@
+package com.ef.parser;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * <p>It reads a BGZF file (bgzip, also used by samtools and tabix): a series of gzip members of up to 64 KB each, which size is written
+ * in the "BC" extra subfield of their header. Knowing where each member ends without inflating it, members are read ahead and
+ * inflated in parallel by a pool of threads, and handed out in the order of the file.</p>
+ * <p>The CRC and the size of every member are checked. At most twice the number of threads members are inflated ahead.
+ * It is not thread safe, as any InputStream.</p>
+ */
+final class BgzfInputStream extends InputStream {
+
+    static final int HEADER_SIZE = 12;
+    static final int BC_SUBFIELD_SIZE = 6;
+
+    private static final int FEXTRA = 4;
+    private static final int TRAILER_SIZE = 8;
+
+    private final InputStream in;
+    private final ExecutorService inflaters;
+    private final int readAhead;
+    private final Queue<Future<byte[]>> members = new ArrayDeque<>();
+    private final byte[] header = new byte[HEADER_SIZE];
+    private byte[] member = new byte[0];
+    private int position;
+    private boolean endOfFile;
+
+    /**
+     * @param in      content of the BGZF file, buffered
+     * @param threads threads inflating members
+     */
+    BgzfInputStream(InputStream in, int threads) {
+        this.in = in;
+        this.readAhead = 2 * threads;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.inflaters = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "bgzf-inflater-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param header first bytes of a file, at least {@link #HEADER_SIZE} + {@link #BC_SUBFIELD_SIZE}
+     * @return whether the first member starts with the header of a BGZF member
+     */
+    static boolean isBgzfHeader(byte[] header) {
+        return (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b && header[2] == 8 && (header[3] & FEXTRA) != 0
+                && unsignedShort(header, 10) >= BC_SUBFIELD_SIZE
+                && header[12] == 'B' && header[13] == 'C' && unsignedShort(header, 14) == 2;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return member[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(length, member.length - position);
+        System.arraycopy(member, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return member.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflaters.shutdownNow();
+        in.close();
+    }
+
+    /**
+     * @return false at the end of the file, else there is at least one byte left in the current member
+     */
+    private boolean fill() throws IOException {
+        while (position == member.length) {
+            while (!endOfFile && members.size() < readAhead) {
+                byte[] compressed = readMember();
+                if (compressed == null) {
+                    endOfFile = true;
+                } else {
+                    members.add(inflaters.submit(() -> inflate(compressed)));
+                }
+            }
+            Future<byte[]> next = members.poll();
+            if (next == null) {
+                return false;
+            }
+            try {
+                member = next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while inflating", e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+            position = 0;
+        }
+        return true;
+    }
+
+    /**
+     * @return the deflated data and the trailer of the next member, null at the end of the file
+     */
+    private byte[] readMember() throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+        header[0] = (byte) first;
+        readFully(header, 1, HEADER_SIZE - 1);
+        if ((header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b || header[2] != 8 || (header[3] & FEXTRA) == 0) {
+            throw new IOException("not a BGZF member, a gzip header with extra field was expected");
+        }
+
+        byte[] extra = new byte[unsignedShort(header, 10)];
+        readFully(extra, 0, extra.length);
+        int blockSize = -1;
+        for (int subfield = 0; subfield + 4 <= extra.length; subfield += 4 + unsignedShort(extra, subfield + 2)) {
+            if (extra[subfield] == 'B' && extra[subfield + 1] == 'C' && unsignedShort(extra, subfield + 2) == 2) {
+                // total size of the member minus 1
+                blockSize = unsignedShort(extra, subfield + 4) + 1;
+            }
+        }
+        if (blockSize < 0) {
+            throw new IOException("not a BGZF member, its BC extra subfield is missing");
+        }
+
+        byte[] data = new byte[blockSize - HEADER_SIZE - extra.length];
+        readFully(data, 0, data.length);
+        return data;
+    }
+
+    private static byte[] inflate(byte[] data) throws IOException {
+        int dataLength = data.length - TRAILER_SIZE;
+        int expectedCrc = littleEndianInt(data, dataLength);
+        int size = littleEndianInt(data, dataLength + 4);
+
+        byte[] inflated = new byte[size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data, 0, dataLength);
+            int count = 0;
+            while (count < size && !inflater.finished()) {
+                int inflatedNow = inflater.inflate(inflated, count, size - count);
+                if (inflatedNow == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                count += inflatedNow;
+            }
+            if (count != size) {
+                throw new IOException("corrupt BGZF member, " + count + " bytes inflated instead of " + size);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt BGZF member", e);
+        } finally {
+            inflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(inflated, 0, size);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("corrupt BGZF member, CRC does not match");
+        }
+        return inflated;
+    }
+
+    private void readFully(byte[] buffer, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = in.read(buffer, offset, length);
+            if (count == -1) {
+                throw new EOFException("truncated BGZF member");
+            }
+            offset += count;
+            length -= count;
+        }
+    }
+
+    private static int unsignedShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+    }
+
+    private static int littleEndianInt(byte[] bytes, int offset) {
+        return unsignedShort(bytes, offset) | unsignedShort(bytes, offset + 2) << 16;
+    }
+}
@@ -0,0 +1,204 @@
+package com.ef.parser;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Helpers to convert IPv4 addresses between their dotted text form and a packed int, and IPv6 addresses between their text
+ * form and their 16 bytes, as the database stores them in USER_LOG.
+ * <p>IPv4 parsing works directly over the characters of the log line so no intermediate String is created.</p>
+ */
+public final class IpAddresses {
+
+    /**
+     * Value returned by {@link #parseIpv4(CharSequence, int, int)} when the text is not an IPv4 address.
+     */
+    public static final long NOT_IPV4 = -1L;
+
+    private IpAddresses() {
+    }
+
+    /**
+     * It parses a dotted IPv4 address ("192.168.1.10") located between from (inclusive) and to (exclusive).
+     * Surrounding spaces are ignored.
+     *
+     * @param text text holding the address
+     * @param from start index
+     * @param to   end index
+     * @return the address packed in the lower 32 bits, or {@link #NOT_IPV4} if the text is not an IPv4 address
+     */
+    public static long parseIpv4(CharSequence text, int from, int to) {
+        while (from < to && text.charAt(from) == ' ') {
+            from++;
+        }
+        while (to > from && text.charAt(to - 1) == ' ') {
+            to--;
+        }
+
+        long address = 0;
+        int octets = 0;
+        int octet = 0;
+        int digits = 0;
+
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = octet * 10 + (c - '0');
+                if (++digits > 3 || octet > 255) {
+                    return NOT_IPV4;
+                }
+            } else if (c == '.' && digits > 0 && octets < 3) {
+                address = (address << 8) | octet;
+                octets++;
+                octet = 0;
+                digits = 0;
+            } else {
+                return NOT_IPV4;
+            }
+        }
+
+        if (octets != 3 || digits == 0) {
+            return NOT_IPV4;
+        }
+        return (address << 8) | octet;
+    }
+
+    /**
+     * It parses a whole dotted IPv4 address.
+     *
+     * @param text text holding the address
+     * @return the address packed in the lower 32 bits, or {@link #NOT_IPV4} if the text is not an IPv4 address
+     */
+    public static long parseIpv4(CharSequence text) {
+        return parseIpv4(text, 0, text.length());
+    }
+
+    /**
+     * It formats a packed IPv4 address in its dotted form.
+     *
+     * @param address packed address
+     * @return dotted address, ex: 192.168.1.10
+     */
+    public static String toString(int address) {
+        return ((address >>> 24) & 0xff) + "." + ((address >>> 16) & 0xff) + "." + ((address >>> 8) & 0xff) + "." + (address & 0xff);
+    }
+
+    /**
+     * It tells if the text between from (inclusive) and to (exclusive) looks like an IPv6 address: at least one ':',
+     * only hex digits, ':' and '.' (IPv4 mapped addresses), not starting with '.' and not longer than 45 characters.
+     * It does not check the address is valid, {@link #parseIpv6(String)} does.
+     *
+     * @param text text holding the address
+     * @param from start index
+     * @param to   end index
+     * @return true if the text can be an IPv6 address
+     */
+    public static boolean isIpv6(CharSequence text, int from, int to) {
+        if (from == to || to - from > 45 || text.charAt(from) == '.') {
+            return false;
+        }
+        boolean colon = false;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == ':') {
+                colon = true;
+            } else if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F' || c == '.')) {
+                return false;
+            }
+        }
+        return colon;
+    }
+
+    /**
+     * It parses an IPv6 address as INET6_ATON does, so addresses written in different ways get the same bytes,
+     * ex: 2001:db8::1 and 2001:0db8:0:0:0:0:0:1.
+     * <p>Text that does not look like an IPv6 address ({@link #isIpv6(CharSequence, int, int)}) is rejected first,
+     * so InetAddress only ever parses a literal and never looks a name up.</p>
+     *
+     * @param text IPv6 address, IPv4 mapped ones included, ex: ::ffff:192.168.1.10
+     * @return the 16 bytes of the address in network order, or null if the text is not an IPv6 address
+     */
+    public static byte[] parseIpv6(String text) {
+        if (!isIpv6(text, 0, text.length())) {
+            return null;
+        }
+        byte[] address;
+        try {
+            // starting with a hex digit or ':' and holding a ':', InetAddress parses it as a literal or fails
+            address = InetAddress.getByName(text).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+        if (address.length == 4) {
+            // InetAddress turns IPv4 mapped addresses into IPv4 ones, the database keeps their 16 bytes
+            byte[] mapped = new byte[16];
+            mapped[10] = (byte) 0xff;
+            mapped[11] = (byte) 0xff;
+            System.arraycopy(address, 0, mapped, 12, 4);
+            return mapped;
+        }
+        return address;
+    }
+
+    /**
+     * @param address the 16 bytes of an IPv6 address in network order
+     * @return true if it is an IPv4 mapped address, ::ffff:a.b.c.d
+     */
+    public static boolean isIpv4Mapped(byte[] address) {
+        for (int i = 0; i < 10; i++) {
+            if (address[i] != 0) {
+                return false;
+            }
+        }
+        return address[10] == (byte) 0xff && address[11] == (byte) 0xff;
+    }
+
+    /**
+     * It formats an IPv6 address as INET6_NTOA does: lower case words without leading zeros, the longest run of zero words
+     * (the first one of the longest) as "::", and IPv4 compatible and mapped addresses ending in their dotted form.
+     *
+     * @param address the 16 bytes of the address in network order
+     * @return text of the address, ex: 2001:db8::1 or ::ffff:192.168.1.10
+     */
+    public static String toString(byte[] address) {
+        int[] words = new int[8];
+        for (int i = 0; i < 8; i++) {
+            words[i] = (address[2 * i] & 0xff) << 8 | address[2 * i + 1] & 0xff;
+        }
+
+        int gapStart = -1;
+        int gapLength = 0;
+        for (int i = 0; i < 8; ) {
+            if (words[i] != 0) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < 8 && words[i] == 0) {
+                i++;
+            }
+            if (i - start > gapLength) {
+                gapStart = start;
+                gapLength = i - start;
+            }
+        }
+
+        StringBuilder text = new StringBuilder(39);
+        for (int i = 0; i < 8; i++) {
+            if (i == gapStart) {
+                text.append(i == 0 ? "::" : ":");
+                i += gapLength - 1;
+            } else if (i == 6 && gapStart == 0 && (gapLength == 6 || gapLength == 5 && words[5] == 0xffff)) {
+                int ipv4 = (words[6] << 16) | words[7];
+                text.append(toString(ipv4));
+                break;
+            } else {
+                text.append(Integer.toHexString(words[i]));
+                if (i != 7) {
+                    text.append(':');
+                }
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,185 @@
+package com.ef.parser;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Helpers to work with the date times found in the log file ("2017-01-01 00:00:11.763")
+ * and the ones passed as startDate ("2017-01-01.13:00:00").
+ * <p>Date times are handled as wall clock epoch millis, that is the millis the date time would have in UTC.
+ * The log has no time zone and neither has the DATETIME column of USER_LOG, so there is nothing to convert.</p>
+ */
+public final class LogDates {
+
+    /**
+     * Value returned by {@link #parseMillis(CharSequence, int, int)} when the text is not a date time.
+     */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final DateTimeFormatter DATABASE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private LogDates() {
+    }
+
+    /**
+     * It parses a date time located between from (inclusive) and to (exclusive).
+     * Expected layout is yyyy?MM?dd?HH?mm?ss[.SSS] where ? can be any separator, surrounding spaces are ignored.
+     *
+     * @param text text holding the date time
+     * @param from start index
+     * @param to   end index
+     * @return wall clock epoch millis, or {@link #INVALID} if the text is not a date time
+     */
+    public static long parseMillis(CharSequence text, int from, int to) {
+        while (from < to && text.charAt(from) == ' ') {
+            from++;
+        }
+        while (to > from && text.charAt(to - 1) == ' ') {
+            to--;
+        }
+        if (to - from < 19) {
+            return INVALID;
+        }
+
+        int year = digits(text, from, 4);
+        int month = digits(text, from + 5, 2);
+        int day = digits(text, from + 8, 2);
+        int hour = digits(text, from + 11, 2);
+        int minute = digits(text, from + 14, 2);
+        int second = digits(text, from + 17, 2);
+
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return INVALID;
+        }
+
+        int millis = 0;
+        int fraction = from + 19;
+        if (fraction < to) {
+            if (text.charAt(fraction) != '.') {
+                return INVALID;
+            }
+            int scale = 100;
+            for (int i = fraction + 1; i < to; i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') {
+                    return INVALID;
+                }
+                millis += (c - '0') * scale;
+                scale /= 10;
+            }
+        }
+
+        long seconds = epochDay(year, month, day) * 86400L + hour * 3600L + minute * 60L + second;
+        return seconds * 1000L + millis;
+    }
+
+    /**
+     * It parses a whole date time.
+     *
+     * @param text text holding the date time
+     * @return wall clock epoch millis, or {@link #INVALID} if the text is not a date time
+     */
+    public static long parseMillis(CharSequence text) {
+        return parseMillis(text, 0, text.length());
+    }
+
+    /**
+     * It rounds millis to the nearest second, same way MySQL does when a date time with fraction
+     * is stored in a DATETIME column without fractional precision.
+     *
+     * @param millis wall clock epoch millis
+     * @return millis rounded to the second
+     */
+    public static long roundToSecond(long millis) {
+        return Math.floorDiv(millis + 500, 1000) * 1000;
+    }
+
+    /**
+     * It formats millis the way MySQL prints a DATETIME, the fraction of second is dropped.
+     *
+     * @param millis wall clock epoch millis
+     * @return formatted date time, ex: 2017-01-01 13:00:00
+     */
+    public static String format(long millis) {
+        long seconds = Math.floorDiv(millis, 1000);
+        long epochDay = Math.floorDiv(seconds, 86400);
+        int secondOfDay = (int) Math.floorMod(seconds, 86400);
+
+        // Howard Hinnant's civil_from_days
+        long z = epochDay + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            return DATABASE_FORMAT.format(toLocalDateTime(millis));
+        }
+
+        char[] chars = new char[19];
+        digits(chars, 0, (int) year, 4);
+        chars[4] = '-';
+        digits(chars, 5, month, 2);
+        chars[7] = '-';
+        digits(chars, 8, day, 2);
+        chars[10] = ' ';
+        digits(chars, 11, secondOfDay / 3600, 2);
+        chars[13] = ':';
+        digits(chars, 14, secondOfDay / 60 % 60, 2);
+        chars[16] = ':';
+        digits(chars, 17, secondOfDay % 60, 2);
+        return new String(chars);
+    }
+
+    /**
+     * @param millis wall clock epoch millis
+     * @return the same date time as a LocalDateTime
+     */
+    public static LocalDateTime toLocalDateTime(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), (int) Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    /**
+     * @param dateTime a date time
+     * @return wall clock epoch millis of the date time
+     */
+    public static long toMillis(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1000L + dateTime.getNano() / 1_000_000;
+    }
+
+    private static void digits(char[] chars, int from, int value, int count) {
+        for (int i = from + count - 1; i >= from; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static int digits(CharSequence text, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic gregorian date (Howard Hinnant's days_from_civil).
+     */
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
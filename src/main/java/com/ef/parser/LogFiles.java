@@ -0,0 +1,240 @@
+package com.ef.parser;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>It opens log files, compressed or not, so rotated logs (access.log.1.gz) are read without decompressing them to disk first.
+ * The compression is told by the first bytes of the file, not by its name:</p>
+ * <ul>
+ * <li>BGZF (bgzip) and any gzip file whose members carry their size: members are inflated in parallel on every core,
+ * see {@link BgzfInputStream}.</li>
+ * <li>any other gzip file (single or multi member) and zstd: decompressed by a thread of its own while the lines are parsed,
+ * see {@link ReadAheadInputStream}.</li>
+ * <li>anything else is read as plain text.</li>
+ * </ul>
+ * <p>Compressed files have no byte offsets of their lines, they cannot be split by the partitioned loader nor resumed
+ * by the incremental one.</p>
+ * <p>Plain log files can also be read from a byte range, see {@link LogTimeIndex}.</p>
+ * <p>A log can also be given as a directory (every file in it) or a glob (ex: /var/log/web/access-*.log.gz), see {@link #resolve(String)}.</p>
+ */
+public final class LogFiles {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int GZIP_MAGIC = 0x1f8b;
+    private static final int ZSTD_MAGIC = 0x28b52ffd;
+
+    private static final String GLOB_CHARS = "*?[{";
+
+    private LogFiles() {
+    }
+
+    /**
+     * @param accessLog location of a log as given with --accesslog
+     * @return whether it names several files: a directory or a glob
+     */
+    public static boolean isMultiple(String accessLog) {
+        return isGlob(accessLog) || Files.isDirectory(Paths.get(accessLog));
+    }
+
+    /**
+     * It finds the files of a log given as a file, a directory or a glob.
+     * <p>A directory gives every regular file directly in it that is not hidden. A glob is matched against the paths of the files
+     * under the directory it starts with, ex: /var/log/web/*.gz or /var/log/web/**&#47;access.log (* does not cross directories, ** does).</p>
+     *
+     * @param accessLog location of a log as given with --accesslog
+     * @return the files sorted by path, a single file as is even if it does not exist
+     * @throws IOException if the directory could not be listed
+     */
+    public static List<Path> resolve(String accessLog) throws IOException {
+        Path path;
+        PathMatcher matcher;
+        int depth;
+        if (isGlob(accessLog)) {
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + accessLog);
+            int firstGlob = indexOfGlob(accessLog);
+            int separator = Math.max(accessLog.lastIndexOf('/', firstGlob), accessLog.lastIndexOf(File.separatorChar, firstGlob));
+            path = Paths.get(separator < 0 ? "." : accessLog.substring(0, separator + 1));
+            depth = accessLog.contains("**") ? Integer.MAX_VALUE : Paths.get(accessLog.substring(separator + 1)).getNameCount();
+            if (separator < 0) {
+                // relative glob, files are matched without the ./ of their directory
+                Path base = path;
+                PathMatcher relative = matcher;
+                matcher = file -> relative.matches(base.relativize(file));
+            }
+        } else if (Files.isDirectory(Paths.get(accessLog))) {
+            path = Paths.get(accessLog);
+            matcher = file -> true;
+            depth = 1;
+        } else {
+            return Collections.singletonList(Paths.get(accessLog));
+        }
+
+        PathMatcher filesMatcher = matcher;
+        try (Stream<Path> files = Files.walk(path, depth)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> !file.getFileName().toString().startsWith("."))
+                    .filter(filesMatcher::matches)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @param path log file
+     * @return whether the log file is compressed with gzip or zstd
+     * @throws IOException if the file could not be read
+     */
+    public static boolean isCompressed(Path path) throws IOException {
+        return compressionOf(path) != Compression.NONE;
+    }
+
+    /**
+     * It opens a log file, the stream returned gives the decompressed content of compressed ones.
+     *
+     * @param path log file
+     * @return content of the log
+     * @throws IOException if the file could not be opened
+     */
+    public static InputStream open(Path path) throws IOException {
+        Compression compression = compressionOf(path);
+        InputStream file = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE);
+        try {
+            switch (compression) {
+                case BGZF:
+                    return new BgzfInputStream(file, Runtime.getRuntime().availableProcessors());
+                case GZIP:
+                    return new ReadAheadInputStream(new GZIPInputStream(file, BUFFER_SIZE), path.getFileName().toString());
+                case ZSTD:
+                    return new ReadAheadInputStream(new ZstdInputStream(file), path.getFileName().toString());
+                default:
+                    return file;
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * It opens the lines of a plain log file found between two byte offsets, ex: as given by {@link LogTimeIndex#range(long, long)}.
+     *
+     * @param path plain log file
+     * @param from offset of the first byte of the range (inclusive)
+     * @param to   offset of the last byte of the range (exclusive)
+     * @return content of the range
+     * @throws IOException if the file could not be opened
+     */
+    public static InputStream open(Path path, long from, long to) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            channel.position(from);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new BufferedInputStream(new RangeInputStream(Channels.newInputStream(channel), to - from), BUFFER_SIZE);
+    }
+
+    private static boolean isGlob(String accessLog) {
+        return indexOfGlob(accessLog) >= 0;
+    }
+
+    private static int indexOfGlob(String accessLog) {
+        for (int i = 0; i < accessLog.length(); i++) {
+            if (GLOB_CHARS.indexOf(accessLog.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Compression compressionOf(Path path) throws IOException {
+        byte[] header = new byte[BgzfInputStream.HEADER_SIZE + BgzfInputStream.BC_SUBFIELD_SIZE];
+        int read = 0;
+        try (InputStream in = Files.newInputStream(path)) {
+            int count;
+            while (read < header.length && (count = in.read(header, read, header.length - read)) != -1) {
+                read += count;
+            }
+        }
+        if (read >= 4 && ((header[0] & 0xff) << 24 | (header[1] & 0xff) << 16 | (header[2] & 0xff) << 8 | header[3] & 0xff) == ZSTD_MAGIC) {
+            return Compression.ZSTD;
+        }
+        if (read >= 2 && ((header[0] & 0xff) << 8 | header[1] & 0xff) == GZIP_MAGIC) {
+            return read == header.length && BgzfInputStream.isBgzfHeader(header) ? Compression.BGZF : Compression.GZIP;
+        }
+        return Compression.NONE;
+    }
+
+    private enum Compression {
+        NONE, GZIP, BGZF, ZSTD
+    }
+
+    /**
+     * Stream that ends after a number of bytes of the stream it reads.
+     */
+    private static final class RangeInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        private RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.ef.parser;
+
+/**
+ * <p>It finds the fields of a log line (Date, IP, Request, Status, User Agent, pipe delimited) without creating any String,
+ * only the start and end index of each field are kept. Values can then be parsed straight from the line,
+ * ex: {@link #millis()} or {@link #ipv4()}, or copied into a String with {@link #value(int)} when really needed.</p>
+ * <p>Fields are split the same way a DelimitedLineTokenizer with '|' as delimiter does: a delimiter between quotes
+ * does not split, surrounding spaces are trimmed and quoted fields lose their quotes.</p>
+ * <p>An instance is meant to be reused line after line, so it is not thread safe.</p>
+ */
+public class LogLineScanner {
+
+    public static final int DATE = 0;
+    public static final int IP = 1;
+    public static final int REQUEST = 2;
+    public static final int STATUS = 3;
+    public static final int USER_AGENT = 4;
+
+    private static final int FIELDS = 5;
+    private static final char DELIMITER = '|';
+    private static final char QUOTE = '"';
+
+    private final int[] starts = new int[FIELDS];
+    private final int[] ends = new int[FIELDS];
+    // bit i is set if field i was quoted
+    private int quotedFields;
+    private CharSequence line;
+
+    /**
+     * It scans a line looking for its fields.
+     *
+     * @param line the line, without line break
+     * @return true if the line has exactly the fields expected
+     */
+    public boolean scan(CharSequence line) {
+        this.line = line;
+        quotedFields = 0;
+
+        int length = line.length();
+        int field = 0;
+        int fieldStart = 0;
+        boolean inQuotes = false;
+
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? line.charAt(i) : DELIMITER;
+            if (c == QUOTE) {
+                inQuotes = !inQuotes;
+            } else if (c == DELIMITER && (!inQuotes || i == length)) {
+                if (field == FIELDS) {
+                    return false;
+                }
+                bounds(field++, fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+        return field == FIELDS;
+    }
+
+    /**
+     * @param field one of DATE, IP, REQUEST, STATUS or USER_AGENT
+     * @return index of the first char of the field in the line
+     */
+    public int start(int field) {
+        return starts[field];
+    }
+
+    /**
+     * @param field one of DATE, IP, REQUEST, STATUS or USER_AGENT
+     * @return index following the last char of the field in the line
+     */
+    public int end(int field) {
+        return ends[field];
+    }
+
+    /**
+     * It copies the value of a field into a String, the only allocation this class does.
+     *
+     * @param field one of DATE, IP, REQUEST, STATUS or USER_AGENT
+     * @return value of the field
+     */
+    public String value(int field) {
+        String value = line.subSequence(starts[field], ends[field]).toString();
+        if ((quotedFields & (1 << field)) != 0 && value.indexOf(QUOTE) >= 0) {
+            // a quote inside a quoted field is escaped doubling it
+            value = value.replace("\"\"", "\"");
+        }
+        return value;
+    }
+
+    /**
+     * It gives the value of a field through an interner, so a value already cached is not copied again.
+     *
+     * @param field    one of DATE, IP, REQUEST, STATUS or USER_AGENT
+     * @param interner cache of the values of the field
+     * @return value of the field
+     */
+    public String value(int field, StringInterner interner) {
+        if ((quotedFields & (1 << field)) != 0) {
+            // escaped quotes are only known once the value is copied
+            for (int i = starts[field]; i < ends[field]; i++) {
+                if (line.charAt(i) == QUOTE) {
+                    return value(field);
+                }
+            }
+        }
+        return interner.intern(line, starts[field], ends[field]);
+    }
+
+    /**
+     * @return wall clock epoch millis of the DATE field, or {@link LogDates#INVALID}
+     */
+    public long millis() {
+        return LogDates.parseMillis(line, starts[DATE], ends[DATE]);
+    }
+
+    /**
+     * @return IP field packed in the lower 32 bits, or {@link IpAddresses#NOT_IPV4}
+     */
+    public long ipv4() {
+        return IpAddresses.parseIpv4(line, starts[IP], ends[IP]);
+    }
+
+    /**
+     * It tells if the IP field looks like an IPv6 address, only hex digits, ':' and '.' (IPv4 mapped addresses).
+     * The database (INET6_ATON) has the last word on it.
+     *
+     * @return true if the IP field can be an IPv6 address
+     */
+    public boolean isIpv6() {
+        return IpAddresses.isIpv6(line, starts[IP], ends[IP]);
+    }
+
+    /**
+     * @return the STATUS field as a number, or -1 if it is not a number fitting in a SMALLINT
+     */
+    public int status() {
+        int start = starts[STATUS];
+        int end = ends[STATUS];
+        if (start == end || end - start > 5) {
+            return -1;
+        }
+        int status = 0;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            status = status * 10 + (c - '0');
+        }
+        return status <= Short.MAX_VALUE ? status : -1;
+    }
+
+    /**
+     * It sets the bounds of a field trimming spaces and surrounding quotes.
+     */
+    private void bounds(int field, int start, int end) {
+        while (start < end && line.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (end - start >= 2 && line.charAt(start) == QUOTE && line.charAt(end - 1) == QUOTE) {
+            start++;
+            end--;
+            quotedFields |= 1 << field;
+        }
+        starts[field] = start;
+        ends[field] = end;
+    }
+}
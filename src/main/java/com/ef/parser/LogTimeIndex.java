@@ -0,0 +1,215 @@
+package com.ef.parser;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Sparse index of a log file written in time order, as web servers write them: it maps minutes to the byte offset of the first
+ * line of the minute, so a reader seeks straight to the window of a rule instead of reading the log from its first line.</p>
+ * <p>The offset of a minute is found by binary search over the memory mapped file, reading the date of a single line at each step,
+ * and it is kept for the next searches (ex: the next runs of a server) until the log changes. The file is only mapped while
+ * a search runs and the index only keeps the offsets found, so the mapping of a log since rotated or deleted is released
+ * once collected and does not hold its disk space. Lines can be out of order by up to
+ * {@link #SLACK_MILLIS}, ex: requests finishing in another order than they started, so a range always starts that much before
+ * the window and ends that much after it. A log found further out of order cannot be read this way.</p>
+ * <p>Only plain log files can be indexed, compressed ones have no byte offsets of their lines.</p>
+ */
+public final class LogTimeIndex {
+
+    public static final long SLACK_MILLIS = 60_000;
+
+    private static final long MINUTE = 60_000;
+    private static final int REGION_SIZE = 1 << 30;
+    // longest date field read from a line, ex: "2017-01-01 00:00:00.663"
+    private static final int DATE_LENGTH = 64;
+    private static final long END_OF_FILE = Long.MAX_VALUE;
+
+    private static final Map<Path, LogTimeIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final long size;
+    private final long modified;
+    // minute as wall clock epoch millis -> offset of its first line
+    private final NavigableMap<Long, Long> offsets = new TreeMap<>();
+    // offset of a line read while searching -> its date, to tell a log that is out of order
+    private final NavigableMap<Long, Long> probes = new TreeMap<>();
+    private MappedByteBuffer[] regions;
+
+    private LogTimeIndex(Path path, long size, long modified) {
+        this.path = path;
+        this.size = size;
+        this.modified = modified;
+    }
+
+    /**
+     * It gives the index of a log file, the one kept from a previous run if the log did not change since.
+     *
+     * @param path plain log file
+     * @return its index
+     * @throws IOException if the file could not be read
+     */
+    public static LogTimeIndex of(Path path) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        long size = Files.size(key);
+        long modified = Files.getLastModifiedTime(key).toMillis();
+        return INDEXES.compute(key, (file, index) ->
+                index != null && index.size == size && index.modified == modified ? index : new LogTimeIndex(file, size, modified));
+    }
+
+    /**
+     * It finds the lines of the log that can fall between start and end, {@link #SLACK_MILLIS} included on both sides.
+     *
+     * @param start wall clock epoch millis of the start of the window
+     * @param end   wall clock epoch millis of the end of the window
+     * @return offset of the first line of the range (inclusive) and offset following its last line (exclusive)
+     * @throws IOException           if the file could not be read
+     * @throws IllegalStateException if the lines of the log are not in time order
+     */
+    public synchronized long[] range(long start, long end) throws IOException {
+        try {
+            // the minute following end + slack starts after every line that can fall within the window
+            return new long[]{find(start - SLACK_MILLIS), find(end + SLACK_MILLIS + MINUTE)};
+        } finally {
+            unmap();
+        }
+    }
+
+    /**
+     * It finds the first line of the minute of a date, or the first one after it if there is none in that minute.
+     *
+     * @param millis wall clock epoch millis
+     * @return offset of the line, the size of the file if every line is older
+     * @throws IOException           if the file could not be read
+     * @throws IllegalStateException if the lines of the log are not in time order
+     */
+    public synchronized long offsetOf(long millis) throws IOException {
+        try {
+            return find(millis);
+        } finally {
+            unmap();
+        }
+    }
+
+    private long find(long millis) throws IOException {
+        long minute = Math.floorDiv(millis, MINUTE) * MINUTE;
+        Long offset = offsets.get(minute);
+        if (offset != null) {
+            return offset;
+        }
+        if (regions == null) {
+            map();
+        }
+
+        // minutes already found bound the search
+        Map.Entry<Long, Long> before = offsets.lowerEntry(minute);
+        Map.Entry<Long, Long> after = offsets.higherEntry(minute);
+        long low = before == null ? 0 : before.getValue();
+        long high = after == null ? size : after.getValue();
+
+        // first position whose next line is not older than the minute
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (dateAt(middle) >= minute) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        offset = lineStart(low);
+        offsets.put(minute, offset);
+        return offset;
+    }
+
+    /**
+     * It lets the mapped regions be collected, the offsets found are kept.
+     */
+    private void unmap() {
+        regions = null;
+    }
+
+    private void map() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            regions = new MappedByteBuffer[(int) ((size + REGION_SIZE - 1) / REGION_SIZE)];
+            for (int i = 0; i < regions.length; i++) {
+                long position = (long) i * REGION_SIZE;
+                // mapped buffers stay valid once the channel is closed
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(REGION_SIZE, size - position));
+            }
+        }
+    }
+
+    /**
+     * @return date of the first well formed line starting at or after the position, {@link #END_OF_FILE} if there is none
+     */
+    private long dateAt(long position) {
+        long line = lineStart(position);
+        while (line < size) {
+            long date = parseDate(line);
+            if (date != LogDates.INVALID) {
+                check(line, date);
+                return date;
+            }
+            line = lineStart(line + 1);
+        }
+        return END_OF_FILE;
+    }
+
+    /**
+     * It checks that a line read is in order with the lines read before it, give or take our slack.
+     */
+    private void check(long line, long date) {
+        probes.put(line, date);
+        Map.Entry<Long, Long> before = probes.lowerEntry(line);
+        Map.Entry<Long, Long> after = probes.higherEntry(line);
+        if (before != null && before.getValue() > date + SLACK_MILLIS || after != null && after.getValue() < date - SLACK_MILLIS) {
+            throw new IllegalStateException("lines of " + path + " are not in time order, the log cannot be read by its window");
+        }
+    }
+
+    /**
+     * @return offset of the first line starting at or after the position, the size of the file if there is none
+     */
+    private long lineStart(long position) {
+        if (position == 0) {
+            return 0;
+        }
+        // the line starts at position if the previous byte is a line break
+        for (long i = position - 1; i < size; i++) {
+            if (byteAt(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return date of the line starting at the offset, or {@link LogDates#INVALID}
+     */
+    private long parseDate(long line) {
+        byte[] date = new byte[DATE_LENGTH];
+        int length = 0;
+        for (long i = line; i < size && length < DATE_LENGTH; i++) {
+            byte b = byteAt(i);
+            if (b == '|' || b == '\n' || b == '\r') {
+                break;
+            }
+            if (b != '"') {
+                date[length++] = b;
+            }
+        }
+        return LogDates.parseMillis(new String(date, 0, length, StandardCharsets.US_ASCII));
+    }
+
+    private byte byteAt(long position) {
+        return regions[(int) (position / REGION_SIZE)].get((int) (position % REGION_SIZE));
+    }
+}
@@ -1,13 +1,26 @@
 package com.ef.parser;
 
+import com.ef.batch.decider.LoaderModeDecider;
+import com.ef.batch.listener.BlockedUserCollector;
 import com.ef.config.SpringRegistry;
+import com.ef.domain.BlockedUser;
+import com.ef.domain.DetectionRule;
 import com.ef.domain.ParserDTO;
+import com.ef.domain.ParserResult;
+import com.ef.engine.DetectionEngine;
+import com.ef.index.BlockedAddressIndexLoader;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.*;
+import org.springframework.batch.core.explore.JobExplorer;
 import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.item.ItemWriter;
 import org.springframework.context.ApplicationContext;
 
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
 
 /**
  * Responsible of launching our Parser job.
@@ -15,6 +28,14 @@ import java.util.Date;
 @Slf4j
 public class ParserInvoker {
 
+    /**
+     * Longest rules job parameter, the size of STRING_VAL in BATCH_JOB_EXECUTION_PARAMS, see {@link DetectionRule#format(List)}.
+     */
+    public static final int MAX_RULES_LENGTH = 2500;
+
+    // job instances looked at when searching the run to restart
+    private static final int MAX_RUNS_SEARCHED = 100;
+
     private ApplicationContext context;
 
     /**
@@ -34,33 +55,70 @@ public class ParserInvoker {
      * @return batch status
      * @see BatchStatus
      * @see ParserDTO
+     * @see #run(ParserDTO)
+     */
+    public BatchStatus invoke(ParserDTO parserDTO) {
+        return run(parserDTO).getStatus();
+    }
+
+    /**
+     * It creates and invokes our ParserJob, or the DetectionEngine chosen, and gives back the IP addresses blocked.
+     * It can be called by several threads at once, ex: from our ParserServer.
+     *
+     * @param parserDTO on intance of ParserDTO containing parameters needed for the invoker
+     * @return batch status and the rows inserted into BLOCKED_USER
+     * @see ParserResult
      * @see JobLauncher
      * @see Job
      * @see JobParametersBuilder
      * @see JobExecution
      */
-    public BatchStatus invoke(ParserDTO parserDTO) {
+    public ParserResult run(ParserDTO parserDTO) {
 
         // start time of job
         Date jobStartTime = new Date();
 
         try {
+            if (!parserDTO.isBatchEngine()) {
+                ParserResult result = detect(parserDTO);
+                writeSnapshot(parserDTO, result.getStatus());
+
+                log.info("Job started at : " + jobStartTime.toString());
+                log.info("Job ended at : " + new Date().toString());
+
+                return result;
+            }
+
             // get JobLauncher instance
             JobLauncher jobLauncher = (JobLauncher) context.getBean("jobLauncher");
             // get ParserJob instance
             Job job = (Job) context.getBean("ParserJob");
 
-            // sets parameters needed for the execution of ParserJob
-            JobParametersBuilder jobBuilder = new JobParametersBuilder();
-            jobBuilder.addString("fileUrl", parserDTO.getFileUrl());
-            jobBuilder.addString("startDate", parserDTO.getStartDate());
-            jobBuilder.addString("duration", parserDTO.getDuration());
-            jobBuilder.addLong("threshold", parserDTO.getThreshold());
-            jobBuilder.addString("date", new Date().toString());
+            JobParameters jobParameters;
+            if (parserDTO.isRestart()) {
+                // same parameters as the failed run, so the job repository restarts its instance
+                jobParameters = failedRunOf(job, parserDTO);
+                log.info("RESTARTING RUN OF " + jobParameters.getDate("date") + " FOR " + parserDTO.getFileUrl());
+            } else {
+                // sets parameters needed for the execution of ParserJob
+                JobParametersBuilder jobBuilder = new JobParametersBuilder();
+                jobBuilder.addString("fileUrl", parserDTO.getFileUrl());
+                // startDate, duration and threshold of each rule, see DetectionRule
+                jobBuilder.addString("rules", DetectionRule.format(parserDTO.getRules()));
+                jobBuilder.addString("loader", parserDTO.getLoader());
+                jobBuilder.addString("seek", String.valueOf(parserDTO.isSeek()));
+                // identifies the job instance, with millis so runs started within the same second are different instances.
+                // A long, as date job parameters are stored without millis and a restart must find the same instance
+                jobBuilder.addLong("time", jobStartTime.getTime());
+                jobBuilder.addDate("date", jobStartTime, false);
+                jobParameters = jobBuilder.toJobParameters();
+            }
 
-            JobParameters jobParameters = jobBuilder.toJobParameters();
             // launch Parser job with the specified parameters
             JobExecution execution = jobLauncher.run(job, jobParameters);
+            BlockedUserCollector collector = context.getBean(BlockedUserCollector.class);
+            ParserResult result = new ParserResult(execution.getStatus(), collector.remove(execution.getId()));
+            writeSnapshot(parserDTO, execution.getStatus());
 
             // end time of job
             Date jobEndTime = new Date();
@@ -68,7 +126,7 @@ public class ParserInvoker {
             log.info("Job started at : " + jobStartTime.toString());
             log.info("Job ended at : " + jobEndTime.toString());
 
-            return execution.getStatus();
+            return result;
 
         } catch (Exception e) {
             Date jobEndTime = new Date();
@@ -78,8 +136,86 @@ public class ParserInvoker {
 
             log.error(e.getMessage());
             e.printStackTrace();
-            return BatchStatus.FAILED;
+            return ParserResult.of(BatchStatus.FAILED);
+        }
+
+    }
+
+    /**
+     * It finds the last run of our ParserJob for the same log, to restart it.
+     * Only runs of the loaders in {@link LoaderModeDecider#RESTARTABLE} can be restarted: they go on from their last chunk committed.
+     *
+     * @param job       our ParserJob
+     * @param parserDTO on intance of ParserDTO containing the log of the run
+     * @return parameters of the run to restart
+     * @throws IllegalArgumentException if the last run of the log did not fail or its loader cannot be restarted
+     * @see JobExplorer
+     */
+    private JobParameters failedRunOf(Job job, ParserDTO parserDTO) {
+        JobExplorer jobExplorer = (JobExplorer) context.getBean("jobExplorer");
+        // instances come newest first
+        for (JobInstance instance : jobExplorer.getJobInstances(job.getName(), 0, MAX_RUNS_SEARCHED)) {
+            List<JobExecution> executions = jobExplorer.getJobExecutions(instance);
+            if (executions.isEmpty()) {
+                continue;
+            }
+            JobExecution last = Collections.max(executions, Comparator.comparing(JobExecution::getId));
+            JobParameters jobParameters = last.getJobParameters();
+            if (!parserDTO.getFileUrl().equals(jobParameters.getString("fileUrl"))) {
+                continue;
+            }
+            String loader = jobParameters.getString("loader");
+            if (!LoaderModeDecider.RESTARTABLE.contains(loader)) {
+                throw new IllegalArgumentException("runs of --loader=" + loader + " cannot be restarted, only runs of " + LoaderModeDecider.RESTARTABLE);
+            }
+            if (last.getStatus() != BatchStatus.FAILED && last.getStatus() != BatchStatus.STOPPED) {
+                throw new IllegalArgumentException("last run of " + parserDTO.getFileUrl() + " is " + last.getStatus() + ", nothing to restart");
+            }
+            return jobParameters;
+        }
+        throw new IllegalArgumentException("no run of " + parserDTO.getFileUrl() + " to restart");
+    }
+
+    /**
+     * It writes the snapshot of the blocked address index if one was asked for and the run completed.
+     *
+     * @param parserDTO on intance of ParserDTO containing the snapshot file
+     * @param status    status of the run
+     * @throws Exception if BLOCKED_USER could not be read or the snapshot could not be written
+     * @see com.ef.index.BlockedAddressIndex
+     */
+    private void writeSnapshot(ParserDTO parserDTO, BatchStatus status) throws Exception {
+        if (parserDTO.getSnapshot() == null || status != BatchStatus.COMPLETED) {
+            return;
+        }
+        BlockedAddressIndexLoader loader = (BlockedAddressIndexLoader) context.getBean("blockedAddressIndexLoader");
+        loader.load().write(Paths.get(parserDTO.getSnapshot()));
+        log.info("Blocked address index written to " + parserDTO.getSnapshot());
+    }
+
+    /**
+     * It runs the DetectionEngine chosen in parserDTO instead of our ParserJob
+     * and inserts the IP addresses it found into BLOCKED_USER.
+     *
+     * @param parserDTO on intance of ParserDTO containing parameters needed for the engine
+     * @return batch status and the rows inserted into BLOCKED_USER
+     * @throws Exception if the engine could not read the log or BLOCKED_USER could not be written
+     * @see DetectionEngine
+     */
+    @SuppressWarnings("unchecked")
+    private ParserResult detect(ParserDTO parserDTO) throws Exception {
+        // get the engine instance, ex: memoryDetectionEngine
+        DetectionEngine engine = (DetectionEngine) context.getBean(parserDTO.getEngine() + "DetectionEngine");
+        ItemWriter<BlockedUser> writer = (ItemWriter<BlockedUser>) context.getBean("blockedUserWriter");
+
+        List<BlockedUser> blockedUsers = engine.detect(parserDTO);
+        writer.write(blockedUsers);
+
+        for (BlockedUser blockedUser : blockedUsers) {
+            System.out.println("IP BLOCKED " + blockedUser.getIp());
         }
+        log.info("You can see the list of blocked users in BLOCKED_USER table");
 
+        return new ParserResult(BatchStatus.COMPLETED, blockedUsers);
     }
 }
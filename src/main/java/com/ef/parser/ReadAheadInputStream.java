@@ -0,0 +1,141 @@
+package com.ef.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <p>It reads another stream in a thread of its own, so decompressing a log (gzip that is not BGZF, zstd) takes a core
+ * while the lines are parsed on another one. Up to {@link #BUFFERS} buffers of {@link #BUFFER_SIZE} bytes are read ahead.</p>
+ * <p>Errors of the thread reading, the runtime exceptions of a decompressor included, are thrown by the next read.
+ * It is not thread safe, as any InputStream.</p>
+ */
+final class ReadAheadInputStream extends InputStream {
+
+    private static final int BUFFER_SIZE = 1 << 18;
+    private static final int BUFFERS = 4;
+    // put after the last buffer
+    private static final byte[] END = new byte[0];
+
+    private final InputStream in;
+    private final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(BUFFERS);
+    private final Thread reader;
+    // IOException, RuntimeException or Error of the thread reading
+    private volatile Throwable error;
+    private byte[] buffer = new byte[0];
+    private int position;
+    private boolean ended;
+
+    /**
+     * @param in   stream to read ahead
+     * @param name name of what is read, for the name of the thread
+     */
+    ReadAheadInputStream(InputStream in, String name) {
+        this.in = in;
+        this.reader = new Thread(this::readAhead, "read-ahead-" + name);
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.length - position);
+        System.arraycopy(buffer, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.interrupt();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        in.close();
+    }
+
+    private boolean fill() throws IOException {
+        while (position == buffer.length) {
+            if (ended) {
+                return false;
+            }
+            try {
+                buffer = buffers.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while reading ahead", e);
+            }
+            position = 0;
+            if (buffer == END) {
+                ended = true;
+                rethrow(error);
+            }
+        }
+        return true;
+    }
+
+    private static void rethrow(Throwable error) throws IOException {
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+    }
+
+    private void readAhead() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                byte[] next = new byte[BUFFER_SIZE];
+                int count = 0;
+                int read = 0;
+                while (count < next.length && (read = in.read(next, count, next.length - count)) != -1) {
+                    count += read;
+                }
+                if (count > 0) {
+                    buffers.put(count == next.length ? next : Arrays.copyOf(next, count));
+                }
+                if (read == -1) {
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            // END is still put, or the next read would wait for it forever
+            error = e;
+        } catch (InterruptedException e) {
+            // closed before the end
+            return;
+        }
+        try {
+            buffers.put(END);
+        } catch (InterruptedException e) {
+            // closed before the end
+        }
+    }
+}
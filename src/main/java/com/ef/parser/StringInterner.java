@@ -0,0 +1,60 @@
+package com.ef.parser;
+
+/**
+ * <p>Bounded cache of the Strings of a field that repeats line after line, ex: the requests and user agents of a log.
+ * A value found in the cache is compared right over the chars of the line and the cached String is returned,
+ * so a repeated value allocates nothing and every item holding it shares the same String.</p>
+ * <p>It is a direct mapped table of {@code capacity} Strings: a value takes the slot of its hash, evicting the value that
+ * was there. Memory stays bounded no matter how many distinct values the log has, a value evicted is only copied again.</p>
+ * <p>It is not thread safe, each line mapper gets its own instance.</p>
+ */
+public class StringInterner {
+
+    private final String[] table;
+    private final int mask;
+
+    /**
+     * @param capacity number of Strings kept, rounded up to a power of two
+     */
+    public StringInterner(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.table = new String[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * It gives the String of the chars between start and end, the cached one if it holds the same chars.
+     *
+     * @param chars chars holding the value, ex: a line
+     * @param start index of the first char of the value
+     * @param end   index following the last char of the value
+     * @return the value
+     */
+    public String intern(CharSequence chars, int start, int end) {
+        // hash of the chars as String.hashCode computes it
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+        int slot = (hash ^ hash >>> 16) & mask;
+        String cached = table[slot];
+        if (cached != null && matches(cached, chars, start, end)) {
+            return cached;
+        }
+        String value = chars.subSequence(start, end).toString();
+        table[slot] = value;
+        return value;
+    }
+
+    private static boolean matches(String value, CharSequence chars, int start, int end) {
+        if (value.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != chars.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,298 @@
+package com.ef.segment;
+
+import com.ef.engine.IntCounterMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * <p>Immutable columnar copy of the requests of a log file, read through memory mapped columns.</p>
+ * <p>Requests are stored in blocks of {@link #BLOCK_ROWS}. Each block holds its columns one after the other:</p>
+ * <ul>
+ * <li>time, as the seconds since the earliest request of the block (dates are rounded to the second as in USER_LOG)</li>
+ * <li>IP, the IPv4 address packed in an int</li>
+ * <li>request, status and user agent, as ids of the dictionaries of the segment</li>
+ * <li>the requests whose address is not IPv4, as their row and the id of their address in the IP dictionary</li>
+ * </ul>
+ * <p>The directory of blocks keeps the earliest and latest request of each block, so a query reads the directory and
+ * skips every block outside its window without touching its pages. Within a block only the time and IP columns are read,
+ * the dictionaries of requests and user agents never are. When the times of a block are in order, as web servers write them,
+ * the rows of the window are found by binary search and counted without comparing their times.</p>
+ * <p>File layout, little endian: a header of {@value #HEADER_SIZE} bytes (magic, version, size and last modified time of the log,
+ * rows, blocks, offset of the directory, offset of the dictionaries), the blocks, the directory (offset, earliest and latest
+ * millis, rows, requests not IPv4 and flags of each block) and the IP, request, status and user agent dictionaries.</p>
+ * <p>Counting is not thread safe, every thread opens its own instance.</p>
+ *
+ * @see SegmentWriter
+ * @see SegmentStore
+ */
+public class Segment implements Closeable {
+
+    public static final int BLOCK_ROWS = 1 << 16;
+
+    static final int MAGIC = 0x45465347;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int DIRECTORY_ENTRY_SIZE = 40;
+    // time, IP, request, status and user agent
+    static final int COLUMNS = 5;
+    // the times of the block are in order
+    static final int SORTED = 1;
+
+    static final int DICTIONARIES = 4;
+    static final int IP = 0;
+    static final int REQUEST = 1;
+    static final int STATUS = 2;
+    static final int USER_AGENT = 3;
+
+    private final FileChannel channel;
+    private final long sourceSize;
+    private final long sourceModified;
+    private final long rows;
+
+    private final long[] offsets;
+    private final long[] minMillis;
+    private final long[] maxMillis;
+    private final int[] blockRows;
+    private final int[] otherCounts;
+    private final int[] flags;
+    private final String[] otherIps;
+
+    // time and IP columns of each block, mapped the first time the block is read
+    private final IntBuffer[] columns;
+    private final IntBuffer[] others;
+
+    private Segment(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = read(0, HEADER_SIZE);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("not a segment file or written by another version");
+        }
+        sourceSize = header.getLong();
+        sourceModified = header.getLong();
+        rows = header.getLong();
+        int blocks = header.getInt();
+        header.getInt();
+        long directoryOffset = header.getLong();
+        long dictionariesOffset = header.getLong();
+
+        offsets = new long[blocks];
+        minMillis = new long[blocks];
+        maxMillis = new long[blocks];
+        blockRows = new int[blocks];
+        otherCounts = new int[blocks];
+        flags = new int[blocks];
+        ByteBuffer directory = read(directoryOffset, blocks * DIRECTORY_ENTRY_SIZE);
+        for (int block = 0; block < blocks; block++) {
+            offsets[block] = directory.getLong();
+            minMillis[block] = directory.getLong();
+            maxMillis[block] = directory.getLong();
+            blockRows[block] = directory.getInt();
+            otherCounts[block] = directory.getInt();
+            flags[block] = directory.getInt();
+            directory.getInt();
+        }
+        columns = new IntBuffer[blocks];
+        others = new IntBuffer[blocks];
+
+        // the IP dictionary comes first, the others are not needed to count requests
+        ByteBuffer dictionary = channel.map(FileChannel.MapMode.READ_ONLY, dictionariesOffset,
+                Math.min(channel.size() - dictionariesOffset, Integer.MAX_VALUE)).order(ByteOrder.LITTLE_ENDIAN);
+        otherIps = new String[dictionary.getInt()];
+        for (int id = 0; id < otherIps.length; id++) {
+            byte[] bytes = new byte[dictionary.getInt()];
+            dictionary.get(bytes);
+            otherIps[id] = new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * It opens a segment file written by a {@link SegmentWriter}.
+     *
+     * @param path segment file
+     * @return the segment, to be closed once counted
+     * @throws IOException if the file could not be read or it is not a segment
+     */
+    public static Segment open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new Segment(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return size of the log file the segment was written from
+     */
+    public long getSourceSize() {
+        return sourceSize;
+    }
+
+    /**
+     * @return last modified time in millis of the log file the segment was written from
+     */
+    public long getSourceModified() {
+        return sourceModified;
+    }
+
+    /**
+     * @return requests in the segment
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return blocks in the segment
+     */
+    public int getBlocks() {
+        return offsets.length;
+    }
+
+    /**
+     * It counts the requests of each IP address between start and end, both included, as a DetectionWindow does.
+     *
+     * @param start         wall clock epoch millis of the start of the window
+     * @param end           wall clock epoch millis of the end of the window
+     * @param ipv4Requests  receives the requests of each IPv4 address
+     * @param otherRequests receives the requests of any other address, by its text
+     * @return blocks read, the others were skipped
+     * @throws IOException if a block could not be mapped
+     */
+    public int count(long start, long end, IntCounterMap ipv4Requests, Map<String, Integer> otherRequests) throws IOException {
+        int blocksRead = 0;
+        for (int block = 0; block < offsets.length; block++) {
+            if (maxMillis[block] < start || minMillis[block] > end) {
+                continue;
+            }
+            blocksRead++;
+
+            int rows = blockRows[block];
+            IntBuffer column = columns(block);
+            // a request at minMillis + time seconds is within the window when low <= time <= high
+            long base = minMillis[block];
+            int low = (int) Math.max(0, Math.floorDiv(start - base + 999, 1000));
+            int high = (int) Math.min(Integer.MAX_VALUE, Math.floorDiv(end - base, 1000));
+
+            int from = 0;
+            int to = rows;
+            boolean compare = true;
+            if ((flags[block] & SORTED) != 0) {
+                from = search(column, rows, low);
+                to = search(column, rows, high + 1L);
+                compare = false;
+            } else if (minMillis[block] >= start && maxMillis[block] <= end) {
+                compare = false;
+            }
+
+            // IPv4 addresses are counted in runs between the requests that are not IPv4
+            IntBuffer other = others(block);
+            int row = from;
+            for (int i = 0; i < otherCounts[block]; i++) {
+                int otherRow = other.get(2 * i);
+                if (otherRow < from) {
+                    continue;
+                }
+                if (otherRow >= to) {
+                    break;
+                }
+                countIpv4(column, rows, row, otherRow, compare, low, high, ipv4Requests);
+                int time = column.get(otherRow);
+                if (!compare || time >= low && time <= high) {
+                    otherRequests.merge(otherIps[other.get(2 * i + 1)], 1, Integer::sum);
+                }
+                row = otherRow + 1;
+            }
+            countIpv4(column, rows, row, to, compare, low, high, ipv4Requests);
+        }
+        return blocksRead;
+    }
+
+    /**
+     * It releases the file, mapped blocks are released once they are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * It counts the IPv4 addresses of rows [from, to) in the IP column, the one following the time column.
+     */
+    private static void countIpv4(IntBuffer column, int rows, int from, int to, boolean compare, int low, int high,
+                                  IntCounterMap ipv4Requests) {
+        if (!compare) {
+            for (int row = from; row < to; row++) {
+                ipv4Requests.increment(column.get(rows + row));
+            }
+            return;
+        }
+        for (int row = from; row < to; row++) {
+            int time = column.get(row);
+            if (time >= low && time <= high) {
+                ipv4Requests.increment(column.get(rows + row));
+            }
+        }
+    }
+
+    /**
+     * @return first row of a sorted time column whose time is at least the one given, rows if there is none
+     */
+    private static int search(IntBuffer column, int rows, long time) {
+        int low = 0;
+        int high = rows;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (column.get(middle) < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private IntBuffer columns(int block) throws IOException {
+        if (columns[block] == null) {
+            columns[block] = map(offsets[block], 8L * blockRows[block]);
+        }
+        return columns[block];
+    }
+
+    private IntBuffer others(int block) throws IOException {
+        if (others[block] == null) {
+            others[block] = otherCounts[block] == 0 ? IntBuffer.allocate(0)
+                    : map(offsets[block] + 4L * COLUMNS * blockRows[block], 8L * otherCounts[block]);
+        }
+        return others[block];
+    }
+
+    private IntBuffer map(long offset, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, size).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    private ByteBuffer read(long offset, int size) throws IOException {
+        ByteBuffer buffer = allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("segment file is truncated");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
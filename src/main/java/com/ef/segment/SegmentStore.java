@@ -0,0 +1,82 @@
+package com.ef.segment;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <p>Directory holding one segment file for each log file loaded, named after the SHA-1 of the absolute path of the log.</p>
+ * <p>A segment is current while the log keeps the size and last modified time it had when the segment was written.
+ * Once the log changes (ex: lines were appended) its segment is written again from scratch, segments are never updated.</p>
+ *
+ * @see Segment
+ */
+public class SegmentStore {
+
+    private static final String EXTENSION = ".seg";
+
+    private final Path directory;
+
+    /**
+     * @param directory where segment files are kept, it is created when the first segment is written
+     */
+    public SegmentStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * It opens the segment of a log file if it is current.
+     *
+     * @param log log file
+     * @return the segment, or null if there is none, it cannot be read or the log changed since it was written
+     * @throws IOException if the log could not be read
+     */
+    public Segment open(Path log) throws IOException {
+        Path path = segmentOf(log);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        Segment segment;
+        try {
+            segment = Segment.open(path);
+        } catch (IOException e) {
+            // ex: written by another version, it is written again
+            return null;
+        }
+        if (segment.getSourceSize() != Files.size(log) || segment.getSourceModified() != Files.getLastModifiedTime(log).toMillis()) {
+            segment.close();
+            return null;
+        }
+        return segment;
+    }
+
+    /**
+     * It starts writing the segment of a log file, it replaces the current one when the writer is closed.
+     *
+     * @param log log file
+     * @return the writer, to be closed once every request of the log is appended
+     * @throws IOException if the segment could not be created
+     */
+    public SegmentWriter create(Path log) throws IOException {
+        Files.createDirectories(directory);
+        return new SegmentWriter(segmentOf(log), Files.size(log), Files.getLastModifiedTime(log).toMillis());
+    }
+
+    /**
+     * @param log log file
+     * @return segment file of the log
+     */
+    public Path segmentOf(Path log) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(log.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(String.format("%040x", new BigInteger(1, digest.digest())) + EXTENSION);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.ef.segment;
+
+import com.ef.parser.IpAddresses;
+import com.ef.parser.LogLineScanner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>It writes the requests of a log file into a segment file, see {@link Segment} for its layout.
+ * Requests are buffered until a block is full, then its columns are encoded and appended to the file.</p>
+ * <p>The segment is written to a temporary file and moved to its place on {@link #close()}, so a segment file is either
+ * complete or missing, never half written, and nobody reading it sees it change.</p>
+ */
+public class SegmentWriter implements Closeable {
+
+    private final Path path;
+    private final Path temporary;
+    private final long sourceSize;
+    private final long sourceModified;
+    private final FileChannel channel;
+
+    private final long[] millis = new long[Segment.BLOCK_ROWS];
+    private final int[] ips = new int[Segment.BLOCK_ROWS];
+    private final int[] requests = new int[Segment.BLOCK_ROWS];
+    private final int[] statuses = new int[Segment.BLOCK_ROWS];
+    private final int[] userAgents = new int[Segment.BLOCK_ROWS];
+    // row and IP dictionary id of each request of the block whose address is not IPv4
+    private final List<int[]> otherIps = new ArrayList<>();
+    private int rows;
+
+    private final Dictionary[] dictionaries = new Dictionary[Segment.DICTIONARIES];
+    private ByteBuffer directory = Segment.allocate(Segment.DIRECTORY_ENTRY_SIZE * 64);
+    private long totalRows;
+    private int blocks;
+    private boolean closed;
+
+    /**
+     * @param path           segment file, it is replaced on {@link #close()} if it exists
+     * @param sourceSize     size of the log file the segment is written from
+     * @param sourceModified last modified time of the log file in millis
+     * @throws IOException if the temporary file could not be created
+     */
+    public SegmentWriter(Path path, long sourceSize, long sourceModified) throws IOException {
+        this.path = path;
+        this.sourceSize = sourceSize;
+        this.sourceModified = sourceModified;
+        for (int i = 0; i < dictionaries.length; i++) {
+            dictionaries[i] = new Dictionary();
+        }
+        temporary = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+        // the header is written last, once the offsets are known
+        channel.position(Segment.HEADER_SIZE);
+    }
+
+    /**
+     * It appends a request, with the arguments a RequestHandler of the detection engines receives.
+     *
+     * @param millis  wall clock epoch millis of the request, rounded to the second
+     * @param ipv4    IP address packed in the lower 32 bits, or {@link IpAddresses#NOT_IPV4}
+     * @param scanner scanner holding the line of the request
+     * @throws IOException if a full block could not be written
+     */
+    public void append(long millis, long ipv4, LogLineScanner scanner) throws IOException {
+        if (ipv4 == IpAddresses.NOT_IPV4) {
+            otherIps.add(new int[]{rows, dictionaries[Segment.IP].id(scanner.value(LogLineScanner.IP))});
+        }
+        this.millis[rows] = millis;
+        ips[rows] = (int) ipv4;
+        requests[rows] = dictionaries[Segment.REQUEST].id(scanner.value(LogLineScanner.REQUEST));
+        statuses[rows] = dictionaries[Segment.STATUS].id(scanner.value(LogLineScanner.STATUS));
+        userAgents[rows] = dictionaries[Segment.USER_AGENT].id(scanner.value(LogLineScanner.USER_AGENT));
+        if (++rows == Segment.BLOCK_ROWS) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * It writes the block left, the directory of blocks, the dictionaries and the header, then moves the segment to its place.
+     *
+     * @throws IOException if the segment could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (rows > 0) {
+                writeBlock();
+            }
+            long directoryOffset = channel.position();
+            directory.flip();
+            write(directory);
+
+            long dictionariesOffset = channel.position();
+            for (Dictionary dictionary : dictionaries) {
+                dictionary.write(this);
+            }
+
+            ByteBuffer header = Segment.allocate(Segment.HEADER_SIZE);
+            header.putInt(Segment.MAGIC).putInt(Segment.VERSION)
+                    .putLong(sourceSize).putLong(sourceModified)
+                    .putLong(totalRows).putInt(blocks).putInt(0)
+                    .putLong(directoryOffset).putLong(dictionariesOffset);
+            header.clear();
+            channel.position(0);
+            write(header);
+            channel.force(false);
+            channel.close();
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            channel.close();
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * It gives up the segment, ex: when the log could not be read to the end. Nothing is moved to the place of the segment.
+     *
+     * @throws IOException if the temporary file could not be deleted
+     */
+    public void abort() throws IOException {
+        closed = true;
+        channel.close();
+        Files.deleteIfExists(temporary);
+    }
+
+    /**
+     * It encodes the buffered requests as a block: each time as the seconds since the earliest one of the block,
+     * then the IP, request, status and user agent columns, then the requests whose address is not IPv4.
+     */
+    private void writeBlock() throws IOException {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        boolean sorted = true;
+        for (int row = 0; row < rows; row++) {
+            min = Math.min(min, millis[row]);
+            max = Math.max(max, millis[row]);
+            sorted &= row == 0 || millis[row] >= millis[row - 1];
+        }
+        if ((max - min) / 1000 > Integer.MAX_VALUE) {
+            throw new IOException("requests of a block are more than " + Integer.MAX_VALUE + " seconds apart");
+        }
+
+        ByteBuffer block = Segment.allocate(Segment.COLUMNS * 4 * rows + otherIps.size() * 8);
+        for (int row = 0; row < rows; row++) {
+            block.putInt((int) ((millis[row] - min) / 1000));
+        }
+        for (int[] column : new int[][]{ips, requests, statuses, userAgents}) {
+            block.asIntBuffer().put(column, 0, rows);
+            block.position(block.position() + rows * 4);
+        }
+        for (int[] otherIp : otherIps) {
+            block.putInt(otherIp[0]).putInt(otherIp[1]);
+        }
+        block.flip();
+
+        if (directory.remaining() < Segment.DIRECTORY_ENTRY_SIZE) {
+            ByteBuffer larger = Segment.allocate(directory.capacity() * 2);
+            directory.flip();
+            directory = larger.put(directory);
+        }
+        directory.putLong(channel.position()).putLong(min).putLong(max)
+                .putInt(rows).putInt(otherIps.size()).putInt(sorted ? Segment.SORTED : 0).putInt(0);
+        write(block);
+
+        totalRows += rows;
+        blocks++;
+        rows = 0;
+        otherIps.clear();
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Ids of the distinct values of a column, in the order they first appear.
+     */
+    private static final class Dictionary {
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        private int id(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        /**
+         * It writes the number of values, then each one as its length and its UTF-8 bytes.
+         */
+        private void write(SegmentWriter writer) throws IOException {
+            ByteBuffer buffer = Segment.allocate(1 << 16);
+            buffer.putInt(values.size());
+            for (String value : values) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                if (buffer.remaining() < 4 + bytes.length) {
+                    buffer.flip();
+                    writer.write(buffer);
+                    buffer = Segment.allocate(Math.max(1 << 16, 4 + bytes.length));
+                }
+                buffer.putInt(bytes.length).put(bytes);
+            }
+            buffer.flip();
+            writer.write(buffer);
+        }
+    }
+}
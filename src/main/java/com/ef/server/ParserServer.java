@@ -0,0 +1,188 @@
+package com.ef.server;
+
+import com.ef.Parser;
+import com.ef.config.SpringRegistry;
+import com.ef.domain.ParserDTO;
+import com.ef.domain.ParserResult;
+import com.ef.parser.ParserInvoker;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>It keeps our Spring context (and the JVM) warm and takes runs of our Parser over HTTP, so frequent small runs
+ * do not pay for starting the JVM, refreshing the context and checking the Liquibase changelog every time.</p>
+ * <p>POST /jobs takes the same arguments as the command line without the leading dashes, in the query string or
+ * as a form (application/x-www-form-urlencoded), ex: accesslog=/path/to/access.log&amp;startDate=2017-01-01.13:00:00&amp;duration=hourly&amp;threshold=100.
+ * It answers once the run is over with its status and the IP addresses it blocked, as JSON.</p>
+ * <p>Runs are handed to a bounded pool of application.server.threads threads, up to application.server.queueCapacity runs wait
+ * for one and any other is rejected with 503. Runs of the batch engine go one at a time as all of them empty and load USER_LOG.
+ * It only listens on the loopback address.</p>
+ *
+ * @see ParserInvoker
+ */
+@Slf4j
+public class ParserServer {
+
+    private final ParserInvoker parserInvoker;
+    private final int port;
+    private final ThreadPoolExecutor jobExecutor;
+    private final ExecutorService requestExecutor = Executors.newCachedThreadPool();
+    // ParserJob empties and loads USER_LOG, two of them cannot run at once
+    private final ReentrantLock batchLock = new ReentrantLock();
+    private final ObjectMapper objectMapper = new ObjectMapper().setDateFormat(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"));
+    private HttpServer httpServer;
+
+    /**
+     * @param parserInvoker runs each job
+     * @param port          port of the loopback address to listen on
+     * @param threads       runs at the same time
+     * @param queueCapacity runs waiting for a thread, more are rejected
+     */
+    public ParserServer(ParserInvoker parserInvoker, int port, int threads, int queueCapacity) {
+        this.parserInvoker = parserInvoker;
+        this.port = port;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.jobExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "parser-job-" + threadCount.incrementAndGet()));
+    }
+
+    /**
+     * It starts listening, the server runs until the JVM is stopped. Running jobs are let finish on shutdown.
+     *
+     * @throws IOException if the port could not be bound
+     */
+    public void start() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext("/jobs", this::handleJob);
+        httpServer.setExecutor(requestExecutor);
+        httpServer.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "parser-server-shutdown"));
+        log.info("PARSER SERVER LISTENING ON " + httpServer.getAddress());
+    }
+
+    /**
+     * It stops taking runs, waits for the ones accepted and closes our Spring context.
+     */
+    public void stop() {
+        httpServer.stop(0);
+        jobExecutor.shutdown();
+        try {
+            jobExecutor.awaitTermination(1, TimeUnit.HOURS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        requestExecutor.shutdown();
+        SpringRegistry.getContext().close();
+    }
+
+    private void handleJob(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Allow", "POST");
+                respond(exchange, 405, error("only POST is allowed"));
+                return;
+            }
+
+            Map<String, String> argsMap = new HashMap<>();
+            addParameters(exchange.getRequestURI().getRawQuery(), argsMap);
+            addParameters(new String(readBody(exchange.getRequestBody()), StandardCharsets.UTF_8), argsMap);
+            ParserDTO parserDTO = Parser.toParserDTO(argsMap);
+
+            Future<ParserResult> result = jobExecutor.submit(() -> run(parserDTO));
+            respond(exchange, 200, result.get());
+
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException included
+            respond(exchange, 400, error(e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            respond(exchange, 503, error("too many runs waiting, try again later"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, error("server is stopping"));
+        } catch (ExecutionException | IOException e) {
+            log.error(e.getMessage(), e);
+            respond(exchange, 500, error(String.valueOf(e.getMessage())));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private ParserResult run(ParserDTO parserDTO) {
+        if (!parserDTO.isBatchEngine()) {
+            return parserInvoker.run(parserDTO);
+        }
+        batchLock.lock();
+        try {
+            return parserInvoker.run(parserDTO);
+        } finally {
+            batchLock.unlock();
+        }
+    }
+
+    /**
+     * It adds the parameters of a query string or a form as command line arguments, ex: accesslog to --accesslog.
+     */
+    private static void addParameters(String query, Map<String, String> argsMap) throws UnsupportedEncodingException {
+        if (query == null || query.isEmpty()) {
+            return;
+        }
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0) {
+                argsMap.put("--" + URLDecoder.decode(parameter.substring(0, equals), "UTF-8").trim(),
+                        URLDecoder.decode(parameter.substring(equals + 1), "UTF-8").trim());
+            }
+        }
+    }
+
+    private static byte[] readBody(InputStream body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Map<String, String> error(String message) {
+        return Collections.singletonMap("error", message);
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+}
@@ -130,3 +130,105 @@ CREATE TABLE BATCH_JOB_SEQ (
 
 INSERT INTO BATCH_JOB_SEQ (ID, UNIQUE_KEY) select * from (select 0 as ID, '0' as UNIQUE_KEY) as tmp where not exists(select * from BATCH_JOB_SEQ);
 
+
+
+--changeset yinfante:4
+--comment compact typed IP and STATUS columns in USER_LOG and (DATE, IP) covering index, USER_LOG is emptied on every run so it is truncated instead of converting its rows
+TRUNCATE TABLE USER_LOG;
+
+ALTER TABLE USER_LOG
+  MODIFY IP     VARBINARY(16) NOT NULL,
+  MODIFY STATUS SMALLINT      NOT NULL,
+  ADD INDEX USER_LOG_DATE_IP_IDX (DATE, IP);
+
+
+--changeset yinfante:5
+--comment creation of table LOG_FILE_OFFSET, log file loaded into USER_LOG by the incremental loader and how far it got
+CREATE TABLE LOG_FILE_OFFSET
+(
+  FILE_URL        VARCHAR(255) NOT NULL
+    PRIMARY KEY,
+  FILE_KEY        VARCHAR(255) NOT NULL,
+  FIRST_LINE_HASH CHAR(40)     NOT NULL,
+  BYTE_OFFSET     BIGINT       NOT NULL
+);
+
+
+--changeset yinfante:6
+--comment creation of table USER_LOG_ROLLUP, requests of each IP in each minute kept by the loaders, filled from the rows already in USER_LOG
+CREATE TABLE USER_LOG_ROLLUP
+(
+  BUCKET   DATETIME      NOT NULL,
+  IP       VARBINARY(16) NOT NULL,
+  REQUESTS INT           NOT NULL,
+  PRIMARY KEY (BUCKET, IP)
+);
+
+INSERT INTO USER_LOG_ROLLUP (BUCKET, IP, REQUESTS)
+SELECT DATE_FORMAT(DATE, '%Y-%m-%d %H:%i:00'), IP, COUNT(*)
+FROM USER_LOG
+GROUP BY DATE_FORMAT(DATE, '%Y-%m-%d %H:%i:00'), IP;
+
+
+--changeset yinfante:7
+--comment longer string job parameters, the rules job parameter holds every rule of a rule set
+ALTER TABLE BATCH_JOB_EXECUTION_PARAMS
+  MODIFY STRING_VAL VARCHAR(2500);
+
+
+--changeset yinfante:8
+--comment creation of table SCHEMA_CHECKSUM, checksum of this changelog once applied so later runs can skip Liquibase
+CREATE TABLE SCHEMA_CHECKSUM
+(
+  CHANGELOG VARCHAR(255) NOT NULL
+    PRIMARY KEY,
+  CHECKSUM  CHAR(40)     NOT NULL
+);
+
+
+--changeset yinfante:9
+--comment creation of dictionary tables USER_LOG_REQUEST and USER_LOG_USER_AGENT, USER_LOG keeps the ids of its request and user agent instead of their text
+CREATE TABLE USER_LOG_REQUEST
+(
+  ID    INT                                         NOT NULL AUTO_INCREMENT
+    PRIMARY KEY,
+  VALUE VARCHAR(20) CHARACTER SET utf8 COLLATE utf8_bin NOT NULL,
+  constraint USER_LOG_REQUEST_UN unique (VALUE)
+);
+
+CREATE TABLE USER_LOG_USER_AGENT
+(
+  ID    INT                                          NOT NULL AUTO_INCREMENT
+    PRIMARY KEY,
+  VALUE VARCHAR(255) CHARACTER SET utf8 COLLATE utf8_bin NOT NULL,
+  constraint USER_LOG_USER_AGENT_UN unique (VALUE)
+);
+
+INSERT IGNORE INTO USER_LOG_REQUEST (VALUE)
+SELECT CONVERT(REQUEST USING utf8) FROM USER_LOG;
+
+INSERT IGNORE INTO USER_LOG_USER_AGENT (VALUE)
+SELECT CONVERT(USER_AGENT USING utf8) FROM USER_LOG WHERE USER_AGENT IS NOT NULL;
+
+ALTER TABLE USER_LOG
+  ADD REQUEST_ID    INT NULL,
+  ADD USER_AGENT_ID INT NULL;
+
+UPDATE USER_LOG
+  JOIN USER_LOG_REQUEST ON USER_LOG_REQUEST.VALUE = CONVERT(USER_LOG.REQUEST USING utf8) COLLATE utf8_bin
+  LEFT JOIN USER_LOG_USER_AGENT ON USER_LOG_USER_AGENT.VALUE = CONVERT(USER_LOG.USER_AGENT USING utf8) COLLATE utf8_bin
+SET USER_LOG.REQUEST_ID = USER_LOG_REQUEST.ID, USER_LOG.USER_AGENT_ID = USER_LOG_USER_AGENT.ID;
+
+ALTER TABLE USER_LOG
+  DROP REQUEST,
+  DROP USER_AGENT,
+  MODIFY REQUEST_ID INT NOT NULL;
+
+
+--changeset yinfante:10
+--comment values of USER_LOG_REQUEST and USER_LOG_USER_AGENT compared byte by byte: utf8_bin ignores trailing spaces and utf8 cannot hold 4 byte characters
+ALTER TABLE USER_LOG_REQUEST
+  MODIFY VALUE VARBINARY(60) NOT NULL;
+
+ALTER TABLE USER_LOG_USER_AGENT
+  MODIFY VALUE VARBINARY(765) NOT NULL;
@@ -1,15 +1,44 @@
 SELECT
   count(*)                                                             AS requests,
-  ip,
+  INET6_NTOA(ip)                                                       AS ip,
   current_timestamp                                                    AS blockedDate,
   'blocked because it exceeded the threshold of 500 requests in 1 DAY' AS comment
 FROM USER_LOG
 WHERE date BETWEEN '2017-01-01.00:00:00' AND adddate(date_format('2017-01-01.00:00:00', '%Y-%m-%d.%H:%i:%s'),
                                                      INTERVAL 1 DAY)
-GROUP BY ip
+GROUP BY USER_LOG.ip
 HAVING requests >= 500;
 
 
 SELECT count(*)
 FROM USER_LOG
-WHERE ip = '192.168.129.191';
\ No newline at end of file
+WHERE ip = INET6_ATON('192.168.129.191');
+
+SELECT
+  sum(requests)                                                            AS requests,
+  INET6_NTOA(ip)                                                           AS ip,
+  current_timestamp                                                        AS blockedDate,
+  'blocked because it exceeded the threshold of 200 requests in 15 MINUTE' AS comment
+FROM (
+       SELECT ip, requests
+       FROM USER_LOG_ROLLUP
+       WHERE bucket >= '2017-01-01 13:00:00' AND bucket < '2017-01-01 13:15:00'
+       UNION ALL
+       SELECT ip, count(*) AS requests
+       FROM USER_LOG
+       WHERE date = '2017-01-01 13:15:00'
+       GROUP BY ip
+     ) period
+GROUP BY ip
+HAVING requests >= 200;
+
+
+SELECT
+  user_agent.value AS userAgent,
+  request.value    AS request,
+  count(*)         AS requests
+FROM USER_LOG
+  JOIN USER_LOG_REQUEST request ON request.id = USER_LOG.request_id
+  LEFT JOIN USER_LOG_USER_AGENT user_agent ON user_agent.id = USER_LOG.user_agent_id
+WHERE USER_LOG.ip = INET6_ATON('192.168.129.191')
+GROUP BY user_agent.value, request.value;
@@ -7,10 +7,29 @@ CREATE TABLE USER_LOG
   ID         BIGINT       NOT NULL
     PRIMARY KEY,
   DATE       DATETIME     NOT NULL,
-  IP         VARCHAR(20)  NOT NULL,
-  REQUEST    VARCHAR(20)  NOT NULL,
-  STATUS     VARCHAR(10)  NOT NULL,
-  USER_AGENT VARCHAR(255) NULL
+  IP         VARBINARY(16) NOT NULL,
+  STATUS     SMALLINT     NOT NULL,
+  REQUEST_ID    INT       NOT NULL,
+  USER_AGENT_ID INT       NULL,
+  INDEX USER_LOG_DATE_IP_IDX (DATE, IP)
+);
+
+
+CREATE TABLE USER_LOG_REQUEST
+(
+  ID    INT                                         NOT NULL AUTO_INCREMENT
+    PRIMARY KEY,
+  VALUE VARBINARY(60) NOT NULL,
+  constraint USER_LOG_REQUEST_UN unique (VALUE)
+);
+
+
+CREATE TABLE USER_LOG_USER_AGENT
+(
+  ID    INT                                          NOT NULL AUTO_INCREMENT
+    PRIMARY KEY,
+  VALUE VARBINARY(765) NOT NULL,
+  constraint USER_LOG_USER_AGENT_UN unique (VALUE)
 );
 
 
@@ -26,6 +45,34 @@ CREATE TABLE BLOCKED_USER
 
 
 
+CREATE TABLE USER_LOG_ROLLUP
+(
+  BUCKET   DATETIME      NOT NULL,
+  IP       VARBINARY(16) NOT NULL,
+  REQUESTS INT           NOT NULL,
+  PRIMARY KEY (BUCKET, IP)
+);
+
+
+CREATE TABLE LOG_FILE_OFFSET
+(
+  FILE_URL        VARCHAR(255) NOT NULL
+    PRIMARY KEY,
+  FILE_KEY        VARCHAR(255) NOT NULL,
+  FIRST_LINE_HASH CHAR(40)     NOT NULL,
+  BYTE_OFFSET     BIGINT       NOT NULL
+);
+
+
+CREATE TABLE SCHEMA_CHECKSUM
+(
+  CHANGELOG VARCHAR(255) NOT NULL
+    PRIMARY KEY,
+  CHECKSUM  CHAR(40)     NOT NULL
+);
+
+
+
 CREATE TABLE BATCH_JOB_INSTANCE  (
 	JOB_INSTANCE_ID BIGINT  NOT NULL PRIMARY KEY ,
 	VERSION BIGINT ,
@@ -54,7 +101,7 @@ CREATE TABLE BATCH_JOB_EXECUTION_PARAMS  (
 	JOB_EXECUTION_ID BIGINT NOT NULL ,
 	TYPE_CD VARCHAR(6) NOT NULL ,
 	KEY_NAME VARCHAR(100) NOT NULL ,
-	STRING_VAL VARCHAR(250) ,
+	STRING_VAL VARCHAR(2500) ,
 	DATE_VAL DATETIME DEFAULT NULL ,
 	LONG_VAL BIGINT ,
 	DOUBLE_VAL DOUBLE PRECISION ,
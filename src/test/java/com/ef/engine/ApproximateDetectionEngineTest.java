@@ -0,0 +1,134 @@
+package com.ef.engine;
+
+import com.ef.domain.BlockedUser;
+import com.ef.domain.DetectionRule;
+import com.ef.domain.ParserDTO;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The approximate engine must block exactly what the memory engine blocks, whatever the size of its sketch.
+ */
+public class ApproximateDetectionEngineTest {
+
+    private static final String START_DATE = "2017-01-01.13:00:00";
+    private static final int LINES = 60_000;
+    private static final long THRESHOLD = 60;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File log;
+
+    /**
+     * It writes a log of three hours around the window, with a few busy IP addresses among many quiet ones,
+     * IPv6 addresses and malformed lines.
+     */
+    @Before
+    public void writeLog() throws Exception {
+        log = folder.newFile("access.log");
+        Random random = new Random(2017);
+        try (BufferedWriter writer = Files.newBufferedWriter(log.toPath(), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < LINES; i++) {
+                int second = random.nextInt(3 * 3600);
+                String date = String.format("2017-01-01 %02d:%02d:%02d.%03d", 12 + second / 3600, second / 60 % 60, second % 60, random.nextInt(1000));
+                int address = (int) (Math.pow(random.nextDouble(), 3) * 4000);
+                String ip = address % 10 == 0 ? "2001:db8::" + Integer.toHexString(address) : "192.168." + address / 256 + "." + address % 256;
+                if (random.nextInt(500) == 0) {
+                    writer.write(date + "|" + ip + "|\"GET / HTTP/1.1\"|not a status|\"ua\"\n");
+                } else {
+                    writer.write(date + "|" + ip + "|\"GET / HTTP/1.1\"|200|\"swcd (unknown version) CFNetwork/808.2.16 Darwin/15.6.0\"\n");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void blocksTheSameIpAddressesAsTheMemoryEngine() throws Exception {
+        ParserDTO parserDTO = new ParserDTO(log.getPath(), START_DATE, "hourly", THRESHOLD);
+
+        List<String> expected = rows(new MemoryDetectionEngine().detect(parserDTO));
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, rows(engine(1 << 20, 4, 1_000_000).detect(parserDTO)));
+    }
+
+    @Test
+    public void blocksTheSameIpAddressesWithAnUndersizedSketch() throws Exception {
+        ParserDTO parserDTO = new ParserDTO(log.getPath(), START_DATE, "hourly", THRESHOLD);
+
+        // e / 16 * N is far above the threshold, so almost every IP of the window is a candidate
+        assertEquals(rows(new MemoryDetectionEngine().detect(parserDTO)), rows(engine(16, 1, 1_000_000).detect(parserDTO)));
+    }
+
+    @Test
+    public void blocksTheSameIpAddressesForEachRuleOfASet() throws Exception {
+        ParserDTO parserDTO = new ParserDTO(log.getPath(), null, null, 0);
+        parserDTO.setRules(DetectionRule.parseAll("2017-01-01.12:00:00,hourly,50;2017-01-01.12:30:00,90m,80;2017-01-01.12:00:00,daily,150"));
+
+        List<String> expected = rows(new MemoryDetectionEngine().detect(parserDTO));
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, rows(engine(1 << 10, 2, 1_000_000).detect(parserDTO)));
+    }
+
+    @Test
+    public void failsWhenTheCandidatesExceedTheMaximum() throws Exception {
+        ParserDTO parserDTO = new ParserDTO(log.getPath(), START_DATE, "hourly", THRESHOLD);
+
+        try {
+            // about 3000 IP addresses in the window, every one of them a candidate
+            engine(16, 1, 1000).detect(parserDTO);
+            fail("more than 1000 candidates were kept");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("application.engine.sketchWidth must be at least"));
+        }
+    }
+
+    @Test
+    public void widthNeededKeepsTheCandidatesWithinTheMaximum() {
+        // 10^8 requests against a threshold of 200: the bound must stay within 200 - 10^8 / 10^6 = 100
+        long width = ApproximateDetectionEngine.widthNeeded(100_000_000, 200, 1_000_000);
+        assertTrue(Math.E / width * 100_000_000 <= 100);
+        assertTrue(Math.E / (width / 2) * 100_000_000 > 100);
+
+        // 10^6 IP addresses can really have 100 requests each
+        assertEquals(-1, ApproximateDetectionEngine.widthNeeded(100_000_000, 100, 1_000_000));
+    }
+
+    private static ApproximateDetectionEngine engine(int width, int depth, int maxCandidates) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("application.engine.sketchWidth", String.valueOf(width));
+        properties.put("application.engine.sketchDepth", String.valueOf(depth));
+        properties.put("application.engine.maxCandidates", String.valueOf(maxCandidates));
+        StandardEnvironment env = new StandardEnvironment();
+        env.getPropertySources().addFirst(new MapPropertySource("test", properties));
+        return new ApproximateDetectionEngine(env);
+    }
+
+    /**
+     * BLOCKED_USER rows without their blocked date, which is the time of the run.
+     */
+    private static List<String> rows(List<BlockedUser> blockedUsers) {
+        return blockedUsers.stream()
+                .map(blockedUser -> blockedUser.getIp() + " " + blockedUser.getRequests() + " " + blockedUser.getComment())
+                .collect(Collectors.toList());
+    }
+}
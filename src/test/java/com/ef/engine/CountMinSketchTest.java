@@ -0,0 +1,86 @@
+package com.ef.engine;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Error bounds of {@link CountMinSketch} over seeded random streams of skewed keys, as IP addresses of a log are.
+ */
+public class CountMinSketchTest {
+
+    private static final int WIDTH = 1 << 8;
+    private static final int DEPTH = 4;
+    private static final int KEYS = 50_000;
+    private static final int OCCURRENCES = 300_000;
+    private static final long[] SEEDS = {1, 7, 42, 2017, 31337};
+
+    @Test
+    public void estimateIsNeverBelowTheRealCount() {
+        for (long seed : SEEDS) {
+            CountMinSketch sketch = new CountMinSketch(WIDTH, DEPTH);
+            Map<Long, Integer> counts = new HashMap<>();
+            Random random = new Random(seed);
+            for (int i = 0; i < OCCURRENCES; i++) {
+                long key = nextKey(random);
+                int count = counts.merge(key, 1, Integer::sum);
+                int estimate = sketch.increment(key);
+                assertTrue("estimate " + estimate + " of key " + key + " below its count " + count, estimate >= count);
+            }
+
+            counts.forEach((key, count) -> assertTrue("estimate of key " + key + " below its count " + count,
+                    sketch.estimate(key) >= count));
+        }
+    }
+
+    @Test
+    public void overestimateStaysWithinTheErrorBoundAtTheConfiguredConfidence() {
+        for (long seed : SEEDS) {
+            CountMinSketch sketch = new CountMinSketch(WIDTH, DEPTH);
+            Map<Long, Integer> counts = count(sketch, new Random(seed));
+
+            double errorBound = sketch.getErrorBound();
+            long keysOverBound = counts.entrySet().stream()
+                    .filter(entry -> sketch.estimate(entry.getKey()) - entry.getValue() > errorBound)
+                    .count();
+
+            // each key goes over the bound with probability e^-depth at most
+            double allowed = (1 - sketch.getConfidence()) * counts.size();
+            assertTrue("seed " + seed + ": " + keysOverBound + " of " + counts.size() + " keys over the bound of " + errorBound,
+                    keysOverBound <= allowed);
+        }
+    }
+
+    @Test
+    public void widthForKeepsTheErrorBoundBelowTheOneAsked() {
+        for (double errorBound : new double[]{0.5, 10, 100, 2500}) {
+            CountMinSketch sketch = new CountMinSketch((int) CountMinSketch.widthFor(OCCURRENCES, errorBound), DEPTH);
+            count(sketch, new Random(SEEDS[0]));
+
+            assertTrue(sketch.getErrorBound() + " not below " + errorBound, sketch.getErrorBound() < errorBound);
+        }
+    }
+
+    private static Map<Long, Integer> count(CountMinSketch sketch, Random random) {
+        Map<Long, Integer> counts = new HashMap<>();
+        for (int i = 0; i < OCCURRENCES; i++) {
+            long key = nextKey(random);
+            counts.merge(key, 1, Integer::sum);
+            sketch.increment(key);
+        }
+        return counts;
+    }
+
+    /**
+     * Few keys take most of the occurrences, as the busiest IP addresses of a log do.
+     */
+    private static long nextKey(Random random) {
+        double skewed = Math.pow(random.nextDouble(), 4);
+        // spread over the whole long range, as packed IPv4 addresses and hashed IPv6 ones are
+        return CountMinSketch.mix((long) (skewed * KEYS));
+    }
+}